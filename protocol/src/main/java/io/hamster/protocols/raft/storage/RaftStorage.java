@@ -276,7 +276,11 @@ public class RaftStorage {
      * Deleting log files does not involve rebuilding indexes or reading any logs into memory.
      */
     public void deleteLog() {
-        deleteFiles(f -> JournalSegmentFile.isSegmentFile(prefix, f));
+        deleteFiles(f -> RaftLog.isTermsFile(prefix, f)
+                || JournalSegmentFile.isSegmentFile(prefix, f)
+                || JournalSegmentFile.isIndexFile(prefix, f)
+                || JournalSegmentFile.isStandbyFile(prefix, f)
+                || JournalSegmentFile.isFreeFile(prefix, f));
     }
 
     /**
@@ -2,9 +2,14 @@ package io.hamster.protocols.raft.storage.log;
 
 import io.hamster.storage.StorageLevel;
 import io.hamster.storage.journal.DelegatingJournal;
+import io.hamster.storage.journal.FlushPolicy;
+import io.hamster.storage.journal.RawEntry;
 import io.hamster.storage.journal.SegmentedJournal;
 
 import java.io.File;
+import java.util.concurrent.CompletableFuture;
+
+import static com.google.common.base.Preconditions.checkArgument;
 
 public class RaftLog extends DelegatingJournal<RaftLogEntry> {
 
@@ -19,14 +24,106 @@ public class RaftLog extends DelegatingJournal<RaftLogEntry> {
 
     private final SegmentedJournal<RaftLogEntry> journal;
     private final boolean flushOnCommit;
+    private final RaftLogSegmentTerms segmentTerms;
+    private final RaftLogTermIndex terms;
+    private final RaftLogCache cache;
     private final RaftLogWriter writer;
     private volatile long commitIndex;
 
-    protected RaftLog(SegmentedJournal<RaftLogEntry> journal, boolean flushOnCommit) {
+    protected RaftLog(SegmentedJournal<RaftLogEntry> journal, boolean flushOnCommit, int cacheSize, long maxCacheBytes) {
         super(journal);
         this.journal = journal;
         this.flushOnCommit = flushOnCommit;
-        this.writer = new RaftLogWriter(journal.writer());
+        this.segmentTerms = new RaftLogSegmentTerms(journal.getName(), journal.getDirectory());
+        this.cache = cacheSize > 0 ? new RaftLogCache(cacheSize, maxCacheBytes) : null;
+        this.terms = loadTerms();
+        this.writer = new RaftLogWriter(journal.writer(), terms, segmentTerms, cache);
+        journal.addSegmentListener((firstIndex, lastIndex) -> persistTerms(terms, firstIndex, lastIndex));
+    }
+
+    /**
+     * Returns a boolean value indicating whether the given file is a terms file of the given log.
+     *
+     * @param name The name of the log.
+     * @param file The file to check.
+     * @return Indicates whether the file is a terms file of the log.
+     */
+    public static boolean isTermsFile(String name, File file) {
+        return RaftLogSegmentTerms.isTermsFile(name, file);
+    }
+
+    /**
+     * Loads the term index from the terms files of the log's sealed segments, rebuilding the terms of the remaining
+     * entries from the entry headers.
+     * <p>
+     * Terms files are chained from the first index in the log, and a file is only used if it covers a whole segment of
+     * the log and the term of the segment's last entry matches the log. Only the entries following the last chained
+     * file are read, and terms files are written for the sealed segments read along the way.
+     */
+    private RaftLogTermIndex loadTerms() {
+        RaftLogTermIndex terms = new RaftLogTermIndex();
+        long nextIndex;
+        try (RaftLogReader reader = openReader(1)) {
+            nextIndex = reader.getFirstIndex();
+        }
+
+        for (RaftLogTermIndex segment : segmentTerms.load()) {
+            if (segment.firstIndex() == nextIndex && isSegment(segment)) {
+                terms.appendAll(segment);
+                nextIndex = segment.lastIndex() + 1;
+            } else {
+                segmentTerms.delete(segment.firstIndex());
+            }
+        }
+
+        try (RaftLogReader reader = openReader(nextIndex)) {
+            long segmentIndex = nextIndex;
+            while (reader.hasNext()) {
+                // Once the reader moves on to the next segment, the previous segment is sealed.
+                final long firstIndex = reader.getFirstIndex();
+                if (firstIndex != segmentIndex) {
+                    persistTerms(terms, segmentIndex, firstIndex - 1);
+                    segmentIndex = firstIndex;
+                }
+                // The raw entry is released once its term is read, so the reader reuses its buffer.
+                RawEntry raw = reader.nextRaw();
+                RaftLogEntryView entry = new RaftLogEntryView(raw);
+                terms.append(entry.index(), entry.term());
+                raw.release();
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * Returns whether the given terms cover a whole segment of the log and the term of the segment's last entry matches
+     * the log.
+     */
+    private boolean isSegment(RaftLogTermIndex segment) {
+        final long lastIndex = segment.lastIndex();
+        try (RaftLogReader reader = openReader(lastIndex)) {
+            if (!reader.hasNext()
+                    || reader.getNextIndex() != lastIndex
+                    || reader.getFirstIndex() != segment.firstIndex()
+                    || reader.nextView().term() != segment.lookup(lastIndex)) {
+                return false;
+            }
+            return !reader.hasNext() || reader.getFirstIndex() == lastIndex + 1;
+        }
+    }
+
+    /**
+     * Writes the terms file of a sealed segment.
+     * <p>
+     * Terms of entries appended in a batch are only recorded once the whole batch is written, so if a segment is sealed
+     * before the terms of all its entries are recorded, no terms file is written and the segment is read again when the
+     * log is reopened.
+     */
+    private void persistTerms(RaftLogTermIndex terms, long firstIndex, long lastIndex) {
+        RaftLogTermIndex segment = terms.slice(firstIndex, lastIndex);
+        if (segment != null) {
+            segmentTerms.write(segment);
+        }
     }
 
     @Override
@@ -41,7 +138,38 @@ public class RaftLog extends DelegatingJournal<RaftLogEntry> {
 
     @Override
     public RaftLogReader openReader(long index, RaftLogReader.Mode mode) {
-        return new RaftLogReader(journal.openReader(index, mode));
+        return new RaftLogReader(journal.openReader(index, mode), mode, cache);
+    }
+
+    /**
+     * Returns the term of the entry at the given index.
+     * <p>
+     * Terms are looked up in an in-memory index of the log's terms, without reading the log.
+     *
+     * @param index The entry index.
+     * @return The term of the entry, or {@code 0} if the log holds no entry at the index.
+     */
+    public long getTerm(long index) {
+        return terms.lookup(index);
+    }
+
+    /**
+     * Returns the number of entries read from the cache of recently appended entries.
+     *
+     * @return The number of cache hits.
+     */
+    public long getCacheHits() {
+        return cache != null ? cache.hits() : 0;
+    }
+
+    /**
+     * Returns the number of entries read from the journal because they weren't in the cache of recently appended
+     * entries.
+     *
+     * @return The number of cache misses.
+     */
+    public long getCacheMisses() {
+        return cache != null ? cache.misses() : 0;
     }
 
     /**
@@ -80,6 +208,21 @@ public class RaftLog extends DelegatingJournal<RaftLogEntry> {
      */
     public void compact(long index) {
         journal.compact(index);
+        terms.compact(index);
+        segmentTerms.compact(index);
+    }
+
+    /**
+     * Compacts the journal up to the given index, deleting the compacted segments in the background.
+     *
+     * @param index The index up to which to compact the journal.
+     * @return A future to be completed once the compacted segments have been deleted.
+     */
+    public CompletableFuture<Void> compactAsync(long index) {
+        CompletableFuture<Void> future = journal.compactAsync(index);
+        terms.compact(index);
+        segmentTerms.compact(index);
+        return future;
     }
 
     /**
@@ -87,9 +230,14 @@ public class RaftLog extends DelegatingJournal<RaftLogEntry> {
      */
     public static class Builder implements io.hamster.utils.Builder<RaftLog> {
         private static final boolean DEFAULT_FLUSH_ON_COMMIT = false;
+        private static final int DEFAULT_CACHE_SIZE = 0;
+        private static final long DEFAULT_MAX_CACHE_BYTES = 1024 * 1024 * 16;
 
         private final SegmentedJournal.Builder<RaftLogEntry> journalBuilder = SegmentedJournal.builder();
         private boolean flushOnCommit = DEFAULT_FLUSH_ON_COMMIT;
+        private boolean aliasing;
+        private int cacheSize = DEFAULT_CACHE_SIZE;
+        private long maxCacheBytes = DEFAULT_MAX_CACHE_BYTES;
 
         protected Builder() {
         }
@@ -215,13 +363,84 @@ public class RaftLog extends DelegatingJournal<RaftLogEntry> {
          * @return The storage builder.
          */
         public Builder withFlushOnCommit(boolean flushOnCommit) {
+            journalBuilder.withFlushOnCommit(flushOnCommit);
             this.flushOnCommit = flushOnCommit;
             return this;
         }
 
+        /**
+         * Sets the log flush policy, returning the builder for method chaining.
+         * <p>
+         * The flush policy determines when entries written to the log are flushed to disk.
+         *
+         * @param flushPolicy The log flush policy.
+         * @return The storage builder.
+         */
+        public Builder withFlushPolicy(FlushPolicy flushPolicy) {
+            journalBuilder.withFlushPolicy(flushPolicy);
+            this.flushOnCommit = flushPolicy.mode() == FlushPolicy.Mode.COMMIT;
+            return this;
+        }
+
+        /**
+         * Sets whether decoded entries alias the journal's buffers, returning the builder for method chaining.
+         * <p>
+         * When aliasing is enabled, command and query values of entries read from the log are views of the buffers
+         * from which they were decoded rather than copies. This avoids copying large values on every read, but a
+         * value is only valid until the buffer it views is reused, so it's only suitable for the
+         * {@link StorageLevel#MAPPED} storage level and for readers that consume entries before advancing.
+         * <p>
+         * By default, values are copied.
+         *
+         * @param aliasing Whether decoded entries alias the journal's buffers.
+         * @return The storage builder.
+         */
+        public Builder withAliasing(boolean aliasing) {
+            this.aliasing = aliasing;
+            return this;
+        }
+
+        /**
+         * Sets the number of recently appended entries to cache, returning the builder for method chaining.
+         * <p>
+         * Readers replicating entries to followers mostly read the entries that were just appended, so recently
+         * appended entries are cached and read from memory rather than from disk. A value of {@code 0} disables the
+         * cache.
+         * <p>
+         * By default, the cache is disabled.
+         *
+         * @param cacheSize The number of entries to cache.
+         * @return The storage builder.
+         * @throws IllegalArgumentException if the {@code cacheSize} is negative
+         */
+        public Builder withCacheSize(int cacheSize) {
+            checkArgument(cacheSize >= 0, "cacheSize cannot be negative");
+            this.cacheSize = cacheSize;
+            return this;
+        }
+
+        /**
+         * Sets the maximum total size in bytes of the cached entries, returning the builder for method chaining.
+         * <p>
+         * The oldest cached entries are evicted once the total size of the cached entries exceeds the maximum size. The
+         * maximum size only applies once the cache is enabled with {@link #withCacheSize(int)}.
+         * <p>
+         * By default, the maximum size is {@code 1024 * 1024 * 16}.
+         *
+         * @param maxCacheBytes The maximum total size of the cached entries.
+         * @return The storage builder.
+         * @throws IllegalArgumentException if the {@code maxCacheBytes} is not positive
+         */
+        public Builder withMaxCacheBytes(long maxCacheBytes) {
+            checkArgument(maxCacheBytes > 0, "maxCacheBytes must be positive");
+            this.maxCacheBytes = maxCacheBytes;
+            return this;
+        }
+
         @Override
         public RaftLog build() {
-            return new RaftLog(journalBuilder.withCodec(new RaftLogCodec()).build(), flushOnCommit);
+            return new RaftLog(journalBuilder.withCodec(new RaftLogCodec(aliasing)).build(), flushOnCommit,
+                    cacheSize, maxCacheBytes);
         }
     }
 }
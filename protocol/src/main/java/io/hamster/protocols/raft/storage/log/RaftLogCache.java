@@ -0,0 +1,178 @@
+package io.hamster.protocols.raft.storage.log;
+
+import com.google.common.collect.Sets;
+import io.hamster.storage.journal.Indexed;
+
+import java.util.Set;
+
+/**
+ * Cache of the most recently appended entries in the Raft log.
+ * <p>
+ * Appended entries are held in a ring buffer bounded both by a number of entries and by the total size of the entries,
+ * so that readers replicating recent entries to followers are served from memory rather than each reading the same
+ * entries from disk. The cache only holds a run of consecutive entries; an append that doesn't follow the last cached
+ * entry restarts the run.
+ */
+final class RaftLogCache {
+    private final Indexed<RaftLogEntry>[] entries;
+    private final long maxBytes;
+    private final Set<RaftLogReader> readers = Sets.newConcurrentHashSet();
+    private long firstIndex = 1;
+    private long lastIndex;
+    private long bytes;
+    private long commitIndex;
+    private long hits;
+    private long misses;
+
+    /**
+     * @param maxEntries the maximum number of cached entries
+     * @param maxBytes   the maximum total size of the cached entries
+     */
+    @SuppressWarnings("unchecked")
+    RaftLogCache(int maxEntries, long maxBytes) {
+        this.entries = new Indexed[maxEntries];
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns whether the cache holds the entry at the given index, without counting a hit or miss.
+     *
+     * @param index the entry index
+     * @return whether the entry is cached
+     */
+    synchronized boolean contains(long index) {
+        return index >= firstIndex && index <= lastIndex;
+    }
+
+    /**
+     * Returns the entry at the given index.
+     *
+     * @param index the entry index
+     * @return the cached entry or {@code null} if the entry is not cached
+     */
+    synchronized Indexed<RaftLogEntry> get(long index) {
+        if (index >= firstIndex && index <= lastIndex) {
+            hits++;
+            return entries[slot(index)];
+        }
+        misses++;
+        return null;
+    }
+
+    /**
+     * Adds an appended entry to the cache, evicting the oldest entries once the cache is full.
+     *
+     * @param entry the appended entry
+     */
+    synchronized void add(Indexed<RaftLogEntry> entry) {
+        if (entry.index() != lastIndex + 1) {
+            clear();
+            firstIndex = entry.index();
+        } else if (lastIndex - firstIndex + 1 == entries.length) {
+            bytes -= remove(firstIndex++).size();
+        }
+        entries[slot(entry.index())] = entry;
+        lastIndex = entry.index();
+        bytes += entry.size();
+        while (lastIndex >= firstIndex && bytes > maxBytes) {
+            bytes -= remove(firstIndex++).size();
+        }
+    }
+
+    /**
+     * Removes the entries following the given index, moving readers that are past the index back to it.
+     *
+     * @param index the index of the last remaining entry
+     */
+    void truncate(long index) {
+        synchronized (this) {
+            while (lastIndex >= firstIndex && lastIndex > index) {
+                bytes -= remove(lastIndex--).size();
+            }
+            if (lastIndex < firstIndex) {
+                firstIndex = index + 1;
+                lastIndex = index;
+            }
+        }
+        readers.forEach(reader -> reader.resetTail(index + 1));
+    }
+
+    /**
+     * Removes all entries, leaving the cache to continue with the entry at the given index.
+     *
+     * @param index the index of the next entry
+     */
+    void reset(long index) {
+        synchronized (this) {
+            clear();
+            firstIndex = index;
+            lastIndex = index - 1;
+        }
+        readers.forEach(reader -> reader.resetTail(index));
+    }
+
+    /**
+     * Records the log's commit index, which bounds the entries readable by {@link RaftLogReader.Mode#COMMITS} readers.
+     *
+     * @param index the commit index
+     */
+    synchronized void commit(long index) {
+        commitIndex = Math.max(commitIndex, index);
+    }
+
+    /**
+     * Returns the log's commit index.
+     *
+     * @return the commit index
+     */
+    synchronized long commitIndex() {
+        return commitIndex;
+    }
+
+    /**
+     * Returns the number of reads served by the cache.
+     *
+     * @return the number of cache hits
+     */
+    synchronized long hits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of reads that fell back to the journal.
+     *
+     * @return the number of cache misses
+     */
+    synchronized long misses() {
+        return misses;
+    }
+
+    /**
+     * Registers a reader to be moved back when cached entries it may have read are removed.
+     */
+    void addReader(RaftLogReader reader) {
+        readers.add(reader);
+    }
+
+    void removeReader(RaftLogReader reader) {
+        readers.remove(reader);
+    }
+
+    private void clear() {
+        while (lastIndex >= firstIndex) {
+            remove(lastIndex--);
+        }
+        bytes = 0;
+    }
+
+    private Indexed<RaftLogEntry> remove(long index) {
+        final int slot = slot(index);
+        Indexed<RaftLogEntry> entry = entries[slot];
+        entries[slot] = null;
+        return entry;
+    }
+
+    private int slot(long index) {
+        return (int) Math.floorMod(index, (long) entries.length);
+    }
+}
@@ -1,14 +1,41 @@
 package io.hamster.protocols.raft.storage.log;
 
+import com.google.protobuf.CodedInputStream;
 import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.UnsafeByteOperations;
 import io.hamster.storage.journal.JournalCodec;
 
 import java.io.IOException;
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 
+/**
+ * Raft log entry codec.
+ * <p>
+ * Entries are encoded directly into the journal's buffer. When aliasing is enabled, the {@code bytes} fields of decoded
+ * entries, such as command and query values, are views of the buffer from which they were decoded rather than copies,
+ * and are only valid as long as the underlying journal buffer is not reused.
+ */
 public class RaftLogCodec implements JournalCodec<RaftLogEntry> {
+    private final boolean aliasing;
+
+    public RaftLogCodec() {
+        this(false);
+    }
+
+    /**
+     * @param aliasing whether decoded {@code bytes} fields alias the buffer from which they are decoded
+     */
+    public RaftLogCodec(boolean aliasing) {
+        this.aliasing = aliasing;
+    }
+
     @Override
     public void encode(RaftLogEntry entry, ByteBuffer buffer) throws IOException {
+        // Fail before writing anything so the journal can retry with a larger buffer. The size is memoized by the entry.
+        if (entry.getSerializedSize() > buffer.remaining()) {
+            throw new BufferOverflowException();
+        }
         CodedOutputStream stream = CodedOutputStream.newInstance(buffer);
         entry.writeTo(stream);
         stream.flush();
@@ -16,7 +43,15 @@ public class RaftLogCodec implements JournalCodec<RaftLogEntry> {
 
     @Override
     public RaftLogEntry decode(ByteBuffer buffer) throws IOException {
-        RaftLogEntry entry = RaftLogEntry.parseFrom(buffer);
+        final RaftLogEntry entry;
+        if (aliasing) {
+            // Only streams over immutable byte strings alias the input.
+            CodedInputStream stream = UnsafeByteOperations.unsafeWrap(buffer).newCodedInput();
+            stream.enableAliasing(true);
+            entry = RaftLogEntry.parseFrom(stream);
+        } else {
+            entry = RaftLogEntry.parseFrom(buffer);
+        }
         buffer.position(buffer.limit());
         return entry;
     }
@@ -0,0 +1,176 @@
+package io.hamster.protocols.raft.storage.log;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.WireFormat;
+import io.hamster.storage.StorageException;
+import io.hamster.storage.journal.RawEntry;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+
+/**
+ * Raft log entry view.
+ * <p>
+ * A view decodes only the term, timestamp and type of an entry from its encoded bytes, and decodes the entry itself
+ * only once it's {@link #entry() requested}. The view reads the buffer of the raw entry from which it was created
+ * without copying it, so the entry can be decoded after the reader that returned the view has moved on, as long as the
+ * entry hasn't been truncated or compacted from the log.
+ */
+public class RaftLogEntryView {
+    private final long index;
+    private final ByteBuffer buffer;
+    private long term;
+    private long timestamp;
+    private RaftLogEntry.EntryCase entryCase = RaftLogEntry.EntryCase.ENTRY_NOT_SET;
+    private RaftLogEntry entry;
+
+    public RaftLogEntryView(RawEntry entry) {
+        this(entry.index(), entry.buffer());
+    }
+
+    /**
+     * @param index  the entry index
+     * @param buffer the encoded entry, which is read without changing the buffer's position
+     */
+    public RaftLogEntryView(long index, ByteBuffer buffer) {
+        this.index = index;
+        this.buffer = buffer;
+        try {
+            readHeader(buffer.duplicate());
+        } catch (BufferUnderflowException | InvalidProtocolBufferException e) {
+            throw new StorageException("Malformed log entry " + index, e);
+        }
+    }
+
+    /**
+     * Reads the entry's scalar fields and the number of its body field, skipping the body.
+     */
+    private void readHeader(ByteBuffer buffer) throws InvalidProtocolBufferException {
+        while (buffer.hasRemaining()) {
+            final int tag = (int) readVarint(buffer);
+            final int field = WireFormat.getTagFieldNumber(tag);
+            final int wireType = WireFormat.getTagWireType(tag);
+            if (field == RaftLogEntry.TERM_FIELD_NUMBER && wireType == WireFormat.WIRETYPE_VARINT) {
+                term = readVarint(buffer);
+            } else if (field == RaftLogEntry.TIMESTAMP_FIELD_NUMBER && wireType == WireFormat.WIRETYPE_VARINT) {
+                timestamp = readVarint(buffer);
+            } else {
+                RaftLogEntry.EntryCase entryCase = RaftLogEntry.EntryCase.forNumber(field);
+                if (entryCase != null && wireType == WireFormat.WIRETYPE_LENGTH_DELIMITED) {
+                    this.entryCase = entryCase;
+                }
+                skipField(buffer, wireType);
+            }
+        }
+    }
+
+    private static long readVarint(ByteBuffer buffer) throws InvalidProtocolBufferException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new InvalidProtocolBufferException("Malformed varint");
+    }
+
+    private static void skipField(ByteBuffer buffer, int wireType) throws InvalidProtocolBufferException {
+        switch (wireType) {
+            case WireFormat.WIRETYPE_VARINT:
+                readVarint(buffer);
+                break;
+            case WireFormat.WIRETYPE_FIXED64:
+                buffer.position(buffer.position() + Long.BYTES);
+                break;
+            case WireFormat.WIRETYPE_LENGTH_DELIMITED:
+                final long length = readVarint(buffer);
+                if (length < 0 || length > buffer.remaining()) {
+                    throw new InvalidProtocolBufferException("Malformed field length");
+                }
+                buffer.position(buffer.position() + (int) length);
+                break;
+            case WireFormat.WIRETYPE_FIXED32:
+                buffer.position(buffer.position() + Integer.BYTES);
+                break;
+            default:
+                throw new InvalidProtocolBufferException("Unsupported wire type " + wireType);
+        }
+    }
+
+    /**
+     * Returns the entry index.
+     *
+     * @return The entry index.
+     */
+    public long index() {
+        return index;
+    }
+
+    /**
+     * Returns the entry term.
+     *
+     * @return The entry term.
+     */
+    public long term() {
+        return term;
+    }
+
+    /**
+     * Returns the entry timestamp.
+     *
+     * @return The entry timestamp.
+     */
+    public long timestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Returns the entry type.
+     *
+     * @return The entry type.
+     */
+    public RaftLogEntry.EntryCase entryCase() {
+        return entryCase;
+    }
+
+    /**
+     * Returns the serialized entry size.
+     *
+     * @return The serialized entry size.
+     */
+    public int size() {
+        return buffer.remaining();
+    }
+
+    /**
+     * Decodes the entry.
+     * <p>
+     * The entry must be decoded before it's truncated or compacted from the log.
+     *
+     * @return The decoded entry.
+     */
+    public RaftLogEntry entry() {
+        if (entry == null) {
+            try {
+                entry = RaftLogEntry.parseFrom(buffer.duplicate());
+            } catch (InvalidProtocolBufferException e) {
+                throw new StorageException(e);
+            }
+        }
+        return entry;
+    }
+
+    @Override
+    public String toString() {
+        return toStringHelper(this)
+                .add("index", index)
+                .add("term", term)
+                .add("timestamp", timestamp)
+                .add("entryCase", entryCase)
+                .toString();
+    }
+}
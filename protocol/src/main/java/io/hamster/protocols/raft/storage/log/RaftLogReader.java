@@ -1,14 +1,248 @@
 package io.hamster.protocols.raft.storage.log;
 
 import io.hamster.storage.journal.DelegatingJournalReader;
-import io.hamster.storage.journal.JournalReader;
+import io.hamster.storage.journal.Indexed;
+import io.hamster.storage.journal.RawEntry;
+import io.hamster.storage.journal.SegmentedJournalReader;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 /**
  * Raft log reader
+ * <p>
+ * Entries held by the log's cache of recently appended entries are read from the cache, and other entries are read
+ * from the journal. The journal reader is only moved to the reader's position when an entry must be read from the
+ * journal.
+ * <p>
+ * When entries are removed from the log, the log's writer moves readers back through {@link #resetTail(long)}. The
+ * reader's position is only changed by the thread reading from it, so the writer records a pending reset that the
+ * reader applies before it's next used.
  */
 public class RaftLogReader extends DelegatingJournalReader<RaftLogEntry> {
 
-    public RaftLogReader(JournalReader<RaftLogEntry> delegate) {
+    private static final long NO_RESET = Long.MAX_VALUE;
+
+    private final SegmentedJournalReader<RaftLogEntry> delegate;
+    private final Mode mode;
+    private final RaftLogCache cache;
+    private final AtomicLong pendingReset = new AtomicLong(NO_RESET);
+    private long nextIndex;
+    private Indexed<RaftLogEntry> currentEntry;
+
+    public RaftLogReader(SegmentedJournalReader<RaftLogEntry> delegate) {
+        this(delegate, Mode.ALL, null);
+    }
+
+    RaftLogReader(SegmentedJournalReader<RaftLogEntry> delegate, Mode mode, RaftLogCache cache) {
         super(delegate);
+        this.delegate = delegate;
+        this.mode = mode;
+        this.cache = cache;
+        this.nextIndex = delegate.getNextIndex();
+        if (cache != null) {
+            cache.addReader(this);
+        }
+    }
+
+    @Override
+    public long getCurrentIndex() {
+        if (cache == null) {
+            return super.getCurrentIndex();
+        }
+        applyReset();
+        return nextIndex - 1;
+    }
+
+    @Override
+    public Indexed<RaftLogEntry> getCurrentEntry() {
+        applyReset();
+        if (cache == null || currentEntry == null) {
+            sync();
+            return super.getCurrentEntry();
+        }
+        return currentEntry;
+    }
+
+    @Override
+    public long getNextIndex() {
+        if (cache == null) {
+            return super.getNextIndex();
+        }
+        applyReset();
+        return nextIndex;
+    }
+
+    @Override
+    public boolean hasNext() {
+        applyReset();
+        if (isCached(nextIndex)) {
+            return true;
+        }
+        sync();
+        return super.hasNext();
+    }
+
+    @Override
+    public Indexed<RaftLogEntry> next() {
+        applyReset();
+        if (isReadable(nextIndex)) {
+            Indexed<RaftLogEntry> entry = cache.get(nextIndex);
+            if (entry != null) {
+                currentEntry = entry;
+                nextIndex++;
+                return entry;
+            }
+        }
+        sync();
+        Indexed<RaftLogEntry> entry = super.next();
+        read();
+        return entry;
+    }
+
+    @Override
+    public RawEntry nextRaw() {
+        applyReset();
+        sync();
+        RawEntry entry = super.nextRaw();
+        read();
+        return entry;
+    }
+
+    /**
+     * Returns a view of the next entry that decodes only the entry's term, timestamp and type.
+     * <p>
+     * The entry itself is decoded on demand, as long as it hasn't been truncated or compacted from the log.
+     *
+     * @return A view of the next entry in the reader.
+     */
+    public RaftLogEntryView nextView() {
+        return new RaftLogEntryView(nextRaw());
+    }
+
+    @Override
+    public int readBatch(int maxEntries, int maxBytes, Consumer<Indexed<RaftLogEntry>> consumer) {
+        applyReset();
+        int entries = 0;
+        long bytes = 0;
+        while (entries < maxEntries && bytes < maxBytes && isReadable(nextIndex)) {
+            Indexed<RaftLogEntry> entry = cache.get(nextIndex);
+            if (entry == null) {
+                break;
+            }
+            currentEntry = entry;
+            nextIndex++;
+            consumer.accept(entry);
+            entries++;
+            bytes += entry.size();
+        }
+
+        // Read the remainder of the batch from the journal.
+        if (entries < maxEntries && bytes < maxBytes) {
+            sync();
+            int read = super.readBatch(maxEntries - entries, (int) (maxBytes - bytes), consumer);
+            if (read > 0) {
+                read();
+            }
+            entries += read;
+        }
+        return entries;
+    }
+
+    @Override
+    public void reset() {
+        pendingReset.set(NO_RESET);
+        super.reset();
+        read();
+    }
+
+    @Override
+    public void reset(long index) {
+        pendingReset.set(NO_RESET);
+        super.reset(index);
+        read();
+    }
+
+    /**
+     * Moves the reader back to the given index if it's past the index.
+     * <p>
+     * Called by the log's writer when entries the reader may have read from the cache are removed from the log. The
+     * reset is only recorded here, and is applied by the reader's own thread before the reader is next used.
+     *
+     * @param index the index to which to move the reader
+     */
+    void resetTail(long index) {
+        pendingReset.accumulateAndGet(index, Math::min);
+    }
+
+    /**
+     * Applies the reset recorded by {@link #resetTail(long)}, if any.
+     */
+    private void applyReset() {
+        if (pendingReset.get() != NO_RESET) {
+            final long index = pendingReset.getAndSet(NO_RESET);
+            if (nextIndex > index) {
+                nextIndex = index;
+                currentEntry = null;
+            }
+        }
+    }
+
+    /**
+     * Returns whether the entry at the given index may be read by the reader.
+     */
+    private boolean isReadable(long index) {
+        return cache != null && (mode == Mode.ALL || index <= cache.commitIndex());
+    }
+
+    /**
+     * Returns whether the entry at the given index may be read from the cache.
+     */
+    private boolean isCached(long index) {
+        return isReadable(index) && cache.contains(index);
+    }
+
+    /**
+     * Moves the journal reader to the reader's position.
+     */
+    private void sync() {
+        if (cache != null && delegate.getNextIndex() != nextIndex) {
+            delegate.reset(nextIndex);
+            nextIndex = delegate.getNextIndex();
+        }
+    }
+
+    /**
+     * Updates the reader's position after reading from the journal.
+     */
+    private void read() {
+        nextIndex = delegate.getNextIndex();
+        currentEntry = null;
+    }
+
+    /**
+     * Waits for the next entry to become readable.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit    the time unit of the timeout
+     * @return indicates whether a next entry is available
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public boolean awaitNext(long timeout, TimeUnit unit) throws InterruptedException {
+        applyReset();
+        if (isCached(nextIndex)) {
+            return true;
+        }
+        sync();
+        return delegate.awaitNext(timeout, unit);
+    }
+
+    @Override
+    public void close() {
+        if (cache != null) {
+            cache.removeReader(this);
+        }
+        super.close();
     }
 }
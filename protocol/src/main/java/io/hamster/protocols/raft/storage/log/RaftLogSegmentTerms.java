@@ -0,0 +1,142 @@
+package io.hamster.protocols.raft.storage.log;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Terms files of the sealed segments of the Raft log.
+ * <p>
+ * When a segment of the log is sealed, the terms of its entries are persisted in a terms file named after the first
+ * index in the segment, so reopening the log only reads the entries of the segments that follow the last terms file.
+ * Terms files are deleted once any of the entries they cover are truncated or compacted.
+ */
+final class RaftLogSegmentTerms {
+
+    private static final char PART_SEPARATOR = '-';
+    private static final String EXTENSION = ".terms";
+
+    /**
+     * Returns a boolean value indicating whether the given file is a segment terms file of the given log.
+     *
+     * @param name the name of the log
+     * @param file the file to check
+     * @return indicates whether the file is a segment terms file
+     */
+    static boolean isTermsFile(String name, File file) {
+        checkNotNull(name, "name cannot be null");
+        String fileName = file.getName();
+        String prefix = name + PART_SEPARATOR;
+        if (!fileName.startsWith(prefix)
+                || !fileName.endsWith(EXTENSION)
+                || fileName.length() == prefix.length() + EXTENSION.length()) {
+            return false;
+        }
+        for (int i = prefix.length(); i < fileName.length() - EXTENSION.length(); i++) {
+            if (!Character.isDigit(fileName.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private final String name;
+    private final File directory;
+    private final TreeMap<Long, Long> segments = new TreeMap<>();
+
+    RaftLogSegmentTerms(String name, File directory) {
+        this.name = checkNotNull(name, "name cannot be null");
+        this.directory = checkNotNull(directory, "directory cannot be null");
+    }
+
+    /**
+     * Reads the terms files of the log, deleting any invalid files.
+     *
+     * @return the terms of the segments, ordered by the first index in the segment
+     */
+    synchronized List<RaftLogTermIndex> load() {
+        TreeMap<Long, RaftLogTermIndex> loaded = new TreeMap<>();
+        File[] files = directory.listFiles(f -> f.isFile() && isTermsFile(name, f));
+        if (files != null) {
+            for (File file : files) {
+                RaftLogTermIndex terms = RaftLogTermIndex.read(file);
+                if (terms == null || terms.isEmpty() || !file.equals(file(terms.firstIndex()))) {
+                    file.delete();
+                } else {
+                    loaded.put(terms.firstIndex(), terms);
+                    segments.put(terms.firstIndex(), terms.lastIndex());
+                }
+            }
+        }
+        return new ArrayList<>(loaded.values());
+    }
+
+    /**
+     * Writes the terms file of a sealed segment.
+     *
+     * @param terms the terms of the segment's entries
+     */
+    synchronized void write(RaftLogTermIndex terms) {
+        final long firstIndex = terms.firstIndex();
+        terms.write(file(firstIndex));
+        segments.put(firstIndex, terms.lastIndex());
+    }
+
+    /**
+     * Deletes the terms file of the segment starting at the given index.
+     *
+     * @param firstIndex the first index in the segment
+     */
+    synchronized void delete(long firstIndex) {
+        segments.remove(firstIndex);
+        file(firstIndex).delete();
+    }
+
+    /**
+     * Deletes the terms files covering entries following the given index.
+     *
+     * @param index the index of the last remaining entry
+     */
+    synchronized void truncate(long index) {
+        Iterator<Map.Entry<Long, Long>> iterator = segments.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, Long> segment = iterator.next();
+            if (segment.getValue() > index) {
+                file(segment.getKey()).delete();
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Deletes the terms files only covering entries preceding the given index.
+     *
+     * @param index the index up to which the log was compacted
+     */
+    synchronized void compact(long index) {
+        Iterator<Map.Entry<Long, Long>> iterator = segments.headMap(index).entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, Long> segment = iterator.next();
+            if (segment.getValue() < index) {
+                file(segment.getKey()).delete();
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Deletes all terms files.
+     */
+    synchronized void reset() {
+        truncate(0);
+    }
+
+    private File file(long firstIndex) {
+        return new File(directory, String.format("%s%c%d%s", name, PART_SEPARATOR, firstIndex, EXTENSION));
+    }
+}
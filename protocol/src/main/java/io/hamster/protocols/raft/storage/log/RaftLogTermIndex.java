@@ -0,0 +1,275 @@
+package io.hamster.protocols.raft.storage.log;
+
+import io.hamster.storage.StorageException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Index of the terms of the entries in the Raft log.
+ * <p>
+ * Terms change rarely, so the index holds a run-length list of the first index of each term, and the term of an entry
+ * is found with a binary search of the list. The terms of a range of entries can be persisted in a terms file stored
+ * alongside the log's segments. The format of the terms file is as follows:
+ * <ul>
+ * <li>32-bit version</li>
+ * <li>64-bit last index covered by the terms</li>
+ * <li>32-bit number of terms, followed by each 64-bit first index and 64-bit term</li>
+ * <li>32-bit CRC32 checksum of all preceding bytes</li>
+ * </ul>
+ */
+final class RaftLogTermIndex {
+
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = Integer.BYTES + Long.BYTES + Integer.BYTES;
+    private static final int TERM_BYTES = Long.BYTES + Long.BYTES;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] indexes;
+    private long[] terms;
+    private int size;
+    private long lastIndex;
+
+    RaftLogTermIndex() {
+        this(new long[INITIAL_CAPACITY], new long[INITIAL_CAPACITY], 0, 0);
+    }
+
+    private RaftLogTermIndex(long[] indexes, long[] terms, int size, long lastIndex) {
+        this.indexes = indexes;
+        this.terms = terms;
+        this.size = size;
+        this.lastIndex = lastIndex;
+    }
+
+    /**
+     * Returns the first index covered by the term index.
+     *
+     * @return the first index covered by the term index, or the index following the last index if the term index
+     * holds no terms
+     */
+    synchronized long firstIndex() {
+        return size > 0 ? indexes[0] : lastIndex + 1;
+    }
+
+    /**
+     * Returns the last index covered by the term index.
+     *
+     * @return the last index covered by the term index
+     */
+    synchronized long lastIndex() {
+        return lastIndex;
+    }
+
+    /**
+     * Returns whether the term index holds no terms.
+     *
+     * @return whether the term index holds no terms
+     */
+    synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the term of the entry at the given index.
+     *
+     * @param index the entry index
+     * @return the term of the entry, or {@code 0} if the index is not covered by the term index
+     */
+    synchronized long lookup(long index) {
+        if (size == 0 || index > lastIndex || index < indexes[0]) {
+            return 0;
+        }
+        return terms[run(index)];
+    }
+
+    /**
+     * Records the term of an appended entry, discarding the terms of any entries it replaces.
+     *
+     * @param index the entry index
+     * @param term  the entry term
+     */
+    synchronized void append(long index, long term) {
+        if (index <= lastIndex) {
+            truncate(index - 1);
+        }
+        if (size == 0 || terms[size - 1] != term) {
+            if (size == indexes.length) {
+                indexes = Arrays.copyOf(indexes, size * 2);
+                terms = Arrays.copyOf(terms, size * 2);
+            }
+            indexes[size] = index;
+            terms[size] = term;
+            size++;
+        }
+        lastIndex = index;
+    }
+
+    /**
+     * Records the terms of the entries covered by the given term index, which follow the entries covered by this index.
+     *
+     * @param other the terms to append
+     */
+    synchronized void appendAll(RaftLogTermIndex other) {
+        final long otherLastIndex;
+        synchronized (other) {
+            for (int i = 0; i < other.size; i++) {
+                append(other.indexes[i], other.terms[i]);
+            }
+            otherLastIndex = other.lastIndex;
+        }
+        if (otherLastIndex > lastIndex) {
+            lastIndex = otherLastIndex;
+        }
+    }
+
+    /**
+     * Returns a copy of the terms of the entries from {@code fromIndex} to {@code toIndex}.
+     *
+     * @param fromIndex the first index to copy
+     * @param toIndex   the last index to copy
+     * @return the terms of the entries or {@code null} if the term index doesn't cover all of the entries
+     */
+    synchronized RaftLogTermIndex slice(long fromIndex, long toIndex) {
+        if (size == 0 || fromIndex > toIndex || fromIndex < indexes[0] || toIndex > lastIndex) {
+            return null;
+        }
+        final int first = run(fromIndex);
+        final int count = run(toIndex) - first + 1;
+        final int capacity = Math.max(INITIAL_CAPACITY, count);
+        long[] sliceIndexes = new long[capacity];
+        long[] sliceTerms = new long[capacity];
+        System.arraycopy(indexes, first, sliceIndexes, 0, count);
+        System.arraycopy(terms, first, sliceTerms, 0, count);
+        sliceIndexes[0] = fromIndex;
+        return new RaftLogTermIndex(sliceIndexes, sliceTerms, count, toIndex);
+    }
+
+    /**
+     * Returns the position of the run holding the term of the given index.
+     */
+    private int run(long index) {
+        final int i = Arrays.binarySearch(indexes, 0, size, index);
+        return i >= 0 ? i : -i - 2;
+    }
+
+    /**
+     * Discards the terms of the entries following the given index.
+     *
+     * @param index the index of the last remaining entry
+     */
+    synchronized void truncate(long index) {
+        while (size > 0 && indexes[size - 1] > index) {
+            size--;
+        }
+        lastIndex = Math.min(lastIndex, index);
+    }
+
+    /**
+     * Discards all terms, leaving the index to continue with the entry at the given index.
+     *
+     * @param index the index of the next entry
+     */
+    synchronized void reset(long index) {
+        size = 0;
+        lastIndex = index - 1;
+    }
+
+    /**
+     * Discards the terms that only cover entries preceding the given index.
+     *
+     * @param index the first index for which to retain the term
+     */
+    synchronized void compact(long index) {
+        int first = 0;
+        while (first + 1 < size && indexes[first + 1] <= index) {
+            first++;
+        }
+        if (first > 0) {
+            System.arraycopy(indexes, first, indexes, 0, size - first);
+            System.arraycopy(terms, first, terms, 0, size - first);
+            size -= first;
+        }
+    }
+
+    /**
+     * Writes the term index to the given file.
+     *
+     * @param file the terms file
+     */
+    synchronized void write(File file) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + size * TERM_BYTES + Integer.BYTES);
+        buffer.putInt(VERSION);
+        buffer.putLong(lastIndex);
+        buffer.putInt(size);
+        for (int i = 0; i < size; i++) {
+            buffer.putLong(indexes[i]);
+            buffer.putLong(terms[i]);
+        }
+        CRC32 crc32 = new CRC32();
+        crc32.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) crc32.getValue());
+        buffer.flip();
+
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        } catch (IOException e) {
+            throw new StorageException(e);
+        }
+    }
+
+    /**
+     * Reads a term index from the given file.
+     *
+     * @param file the terms file
+     * @return the term index or {@code null} if the file does not exist or is invalid
+     */
+    static RaftLogTermIndex read(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+            if (buffer.remaining() < HEADER_BYTES + Integer.BYTES) {
+                return null;
+            }
+
+            CRC32 crc32 = new CRC32();
+            crc32.update(buffer.array(), 0, buffer.limit() - Integer.BYTES);
+            if ((int) crc32.getValue() != buffer.getInt(buffer.limit() - Integer.BYTES)) {
+                return null;
+            }
+
+            if (buffer.getInt() != VERSION) {
+                return null;
+            }
+
+            final long lastIndex = buffer.getLong();
+            final int size = buffer.getInt();
+            if (size < 0 || buffer.limit() != HEADER_BYTES + size * TERM_BYTES + Integer.BYTES) {
+                return null;
+            }
+
+            final int capacity = Math.max(INITIAL_CAPACITY, Integer.highestOneBit(size) * 2);
+            long[] indexes = new long[capacity];
+            long[] terms = new long[capacity];
+            for (int i = 0; i < size; i++) {
+                indexes[i] = buffer.getLong();
+                terms[i] = buffer.getLong();
+            }
+            return new RaftLogTermIndex(indexes, terms, size, lastIndex);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -1,14 +1,155 @@
 package io.hamster.protocols.raft.storage.log;
 
 import io.hamster.storage.journal.DelegatingJournalWriter;
+import io.hamster.storage.journal.Indexed;
 import io.hamster.storage.journal.JournalWriter;
+import io.hamster.storage.journal.RawEntry;
+
+import java.nio.ByteBuffer;
+import java.util.List;
 
 /**
  * Raft log writer
+ * <p>
+ * Records the term of each written entry in the log's term index, and adds appended entries to the log's cache of
+ * recent entries. Truncating the log deletes the terms files of the truncated segments.
  */
 public class RaftLogWriter extends DelegatingJournalWriter<RaftLogEntry> {
 
+    private final RaftLogTermIndex terms;
+    private final RaftLogSegmentTerms segmentTerms;
+    private final RaftLogCache cache;
+
     public RaftLogWriter(JournalWriter<RaftLogEntry> delegate) {
+        this(delegate, new RaftLogTermIndex(), null, null);
+    }
+
+    RaftLogWriter(
+            JournalWriter<RaftLogEntry> delegate,
+            RaftLogTermIndex terms,
+            RaftLogSegmentTerms segmentTerms,
+            RaftLogCache cache) {
         super(delegate);
+        this.terms = terms;
+        this.segmentTerms = segmentTerms;
+        this.cache = cache;
+    }
+
+    @Override
+    public <T extends RaftLogEntry> Indexed<T> append(T entry) {
+        Indexed<T> indexed = super.append(entry);
+        terms.append(indexed.index(), entry.getTerm());
+        cache(indexed);
+        return indexed;
+    }
+
+    @Override
+    public void append(Indexed<RaftLogEntry> entry) {
+        seek(entry.index());
+        super.append(entry);
+        terms.append(entry.index(), entry.entry().getTerm());
+        cache(getLastEntry());
+    }
+
+    @Override
+    public <T extends RaftLogEntry> List<Indexed<T>> appendBatch(List<T> entries) {
+        final long nextIndex = getNextIndex();
+        try {
+            List<Indexed<T>> appended = super.appendBatch(entries);
+            appended.forEach(this::cache);
+            return appended;
+        } finally {
+            // Entries preceding a failed entry may have been written.
+            for (long index = nextIndex; index <= getLastIndex(); index++) {
+                terms.append(index, entries.get((int) (index - nextIndex)).getTerm());
+            }
+        }
+    }
+
+    @Override
+    public void appendRaw(long index, ByteBuffer entry) {
+        final long term = new RaftLogEntryView(index, entry).term();
+        seek(index);
+        super.appendRaw(index, entry);
+        terms.append(index, term);
+    }
+
+    @Override
+    public void appendRaw(RawEntry entry) {
+        final long term = new RaftLogEntryView(entry).term();
+        seek(entry.index());
+        super.appendRaw(entry);
+        terms.append(entry.index(), term);
+    }
+
+    @Override
+    public int appendRawBatch(List<RawEntry> entries) {
+        if (entries.isEmpty()) {
+            return 0;
+        }
+        final long nextIndex = entries.get(0).index();
+        seek(nextIndex);
+        try {
+            return super.appendRawBatch(entries);
+        } finally {
+            // Entries preceding a failed entry may have been written.
+            for (long index = nextIndex; index <= getLastIndex(); index++) {
+                terms.append(index, new RaftLogEntryView(entries.get((int) (index - nextIndex))).term());
+            }
+        }
+    }
+
+    /**
+     * Adds an appended entry to the cache.
+     * <p>
+     * Raw appends aren't cached, since their entries aren't decoded. The cache restarts with the next cached entry.
+     */
+    @SuppressWarnings("unchecked")
+    private void cache(Indexed<? extends RaftLogEntry> entry) {
+        if (cache != null) {
+            cache.add((Indexed<RaftLogEntry>) entry);
+        }
+    }
+
+    /**
+     * Truncates the log if the entry at the given index replaces written entries, so the term index and the cache are
+     * truncated along with the log.
+     */
+    private void seek(long index) {
+        if (index < getNextIndex()) {
+            truncate(index - 1);
+        }
+    }
+
+    @Override
+    public void commit(long index) {
+        super.commit(index);
+        if (cache != null) {
+            cache.commit(index);
+        }
+    }
+
+    @Override
+    public void reset(long index) {
+        super.reset(index);
+        terms.reset(index);
+        if (segmentTerms != null) {
+            segmentTerms.reset();
+        }
+        if (cache != null) {
+            cache.reset(index);
+        }
+    }
+
+    @Override
+    public void truncate(long index) {
+        super.truncate(index);
+        terms.truncate(index);
+        if (segmentTerms != null) {
+            segmentTerms.truncate(index);
+        }
+        if (cache != null) {
+            cache.truncate(index);
+        }
     }
 }
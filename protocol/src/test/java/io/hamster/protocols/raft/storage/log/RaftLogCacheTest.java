@@ -0,0 +1,155 @@
+package io.hamster.protocols.raft.storage.log;
+
+import com.google.protobuf.ByteString;
+import io.hamster.storage.journal.Indexed;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Raft log cache test.
+ */
+public class RaftLogCacheTest {
+
+    private static Indexed<RaftLogEntry> entry(long index, int size) {
+        return new Indexed<>(index, RaftLogEntry.newBuilder()
+                .setTerm(1)
+                .setTimestamp(index)
+                .setCommand(CommandEntry.newBuilder().setValue(ByteString.copyFromUtf8("Hello world!")).build())
+                .build(), size);
+    }
+
+    @Test
+    public void testEvictByEntryCount() {
+        RaftLogCache cache = new RaftLogCache(3, Long.MAX_VALUE);
+        for (long index = 1; index <= 5; index++) {
+            cache.add(entry(index, 10));
+        }
+        assertFalse(cache.contains(1));
+        assertFalse(cache.contains(2));
+        for (long index = 3; index <= 5; index++) {
+            assertTrue(cache.contains(index));
+            assertEquals(index, cache.get(index).index());
+        }
+        assertFalse(cache.contains(6));
+    }
+
+    @Test
+    public void testEvictByBytes() {
+        RaftLogCache cache = new RaftLogCache(10, 25);
+        cache.add(entry(1, 10));
+        cache.add(entry(2, 10));
+        assertTrue(cache.contains(1));
+        assertTrue(cache.contains(2));
+
+        cache.add(entry(3, 10));
+        assertFalse(cache.contains(1));
+        assertTrue(cache.contains(2));
+        assertTrue(cache.contains(3));
+
+        cache.add(entry(4, 20));
+        assertFalse(cache.contains(2));
+        assertFalse(cache.contains(3));
+        assertTrue(cache.contains(4));
+
+        // An entry larger than the cache evicts every entry, including itself.
+        cache.add(entry(5, 30));
+        assertFalse(cache.contains(4));
+        assertFalse(cache.contains(5));
+
+        // The run continues with the next entry.
+        cache.add(entry(6, 10));
+        assertTrue(cache.contains(6));
+    }
+
+    @Test
+    public void testRestartOnGap() {
+        RaftLogCache cache = new RaftLogCache(10, Long.MAX_VALUE);
+        for (long index = 1; index <= 3; index++) {
+            cache.add(entry(index, 10));
+        }
+
+        cache.add(entry(5, 10));
+        for (long index = 1; index <= 4; index++) {
+            assertFalse(cache.contains(index));
+        }
+        assertTrue(cache.contains(5));
+
+        cache.add(entry(6, 10));
+        assertTrue(cache.contains(5));
+        assertTrue(cache.contains(6));
+
+        // The restarted run is still bounded by the size of the cache.
+        for (long index = 7; index <= 20; index++) {
+            cache.add(entry(index, 10));
+        }
+        assertFalse(cache.contains(10));
+        assertTrue(cache.contains(11));
+        assertTrue(cache.contains(20));
+    }
+
+    @Test
+    public void testTruncate() {
+        RaftLogCache cache = new RaftLogCache(10, Long.MAX_VALUE);
+        for (long index = 1; index <= 5; index++) {
+            cache.add(entry(index, 10));
+        }
+
+        cache.truncate(3);
+        assertTrue(cache.contains(3));
+        assertFalse(cache.contains(4));
+
+        // Entries appended after the truncation continue the run.
+        cache.add(entry(4, 10));
+        assertTrue(cache.contains(1));
+        assertTrue(cache.contains(4));
+
+        // Truncating all cached entries continues the run with the entry following the truncation.
+        cache.truncate(0);
+        assertFalse(cache.contains(1));
+        cache.add(entry(1, 10));
+        assertTrue(cache.contains(1));
+    }
+
+    @Test
+    public void testReset() {
+        RaftLogCache cache = new RaftLogCache(10, 25);
+        for (long index = 1; index <= 2; index++) {
+            cache.add(entry(index, 10));
+        }
+
+        cache.reset(100);
+        assertFalse(cache.contains(1));
+        assertFalse(cache.contains(2));
+
+        // The size of the removed entries is released.
+        cache.add(entry(100, 10));
+        cache.add(entry(101, 10));
+        assertTrue(cache.contains(100));
+        assertTrue(cache.contains(101));
+    }
+
+    @Test
+    public void testCommitIndex() {
+        RaftLogCache cache = new RaftLogCache(10, Long.MAX_VALUE);
+        assertEquals(0, cache.commitIndex());
+        cache.commit(5);
+        assertEquals(5, cache.commitIndex());
+        cache.commit(3);
+        assertEquals(5, cache.commitIndex());
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        RaftLogCache cache = new RaftLogCache(10, Long.MAX_VALUE);
+        cache.add(entry(1, 10));
+        assertNotNull(cache.get(1));
+        assertNull(cache.get(2));
+        assertNull(cache.get(0));
+
+        // Checking for an entry doesn't count as a hit or miss.
+        assertTrue(cache.contains(1));
+        assertEquals(1, cache.hits());
+        assertEquals(2, cache.misses());
+    }
+}
@@ -0,0 +1,110 @@
+package io.hamster.protocols.raft.storage.log;
+
+import com.google.protobuf.ByteString;
+import org.junit.Test;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Raft log codec test.
+ */
+public class RaftLogCodecTest {
+
+    private static final ByteString VALUE = ByteString.copyFromUtf8("Hello world!");
+
+    private static List<RaftLogEntry> entries() {
+        return Arrays.asList(
+                RaftLogEntry.newBuilder()
+                        .setTerm(1)
+                        .setTimestamp(2)
+                        .setInitialize(InitializeEntry.newBuilder().build())
+                        .build(),
+                RaftLogEntry.newBuilder()
+                        .setTerm(3)
+                        .setTimestamp(4)
+                        .setCommand(CommandEntry.newBuilder().setValue(VALUE).setStream(true).build())
+                        .build(),
+                RaftLogEntry.newBuilder()
+                        .setTerm(5)
+                        .setTimestamp(6)
+                        .setQuery(QueryEntry.newBuilder().setValue(VALUE).build())
+                        .build(),
+                RaftLogEntry.newBuilder().build());
+    }
+
+    private static ByteBuffer encode(RaftLogCodec codec, RaftLogEntry entry, boolean direct) throws Exception {
+        ByteBuffer buffer = direct ? ByteBuffer.allocateDirect(1024) : ByteBuffer.allocate(1024);
+        codec.encode(entry, buffer);
+        assertEquals(entry.getSerializedSize(), buffer.position());
+        buffer.flip();
+        return buffer;
+    }
+
+    @Test
+    public void testEncodeDecode() throws Exception {
+        for (boolean direct : new boolean[]{false, true}) {
+            for (RaftLogEntry entry : entries()) {
+                ByteBuffer copyBuffer = encode(new RaftLogCodec(), entry, direct);
+                RaftLogEntry copied = new RaftLogCodec().decode(copyBuffer);
+                assertFalse(copyBuffer.hasRemaining());
+
+                ByteBuffer aliasBuffer = encode(new RaftLogCodec(true), entry, direct);
+                RaftLogEntry aliased = new RaftLogCodec(true).decode(aliasBuffer);
+                assertFalse(aliasBuffer.hasRemaining());
+
+                assertEquals(entry, copied);
+                assertEquals(entry, aliased);
+                assertEquals(copied, aliased);
+            }
+        }
+    }
+
+    @Test
+    public void testAliasing() throws Exception {
+        RaftLogEntry entry = RaftLogEntry.newBuilder()
+                .setTerm(1)
+                .setCommand(CommandEntry.newBuilder().setValue(VALUE).build())
+                .build();
+        for (boolean direct : new boolean[]{false, true}) {
+            ByteBuffer copyBuffer = encode(new RaftLogCodec(), entry, direct);
+            RaftLogEntry copied = new RaftLogCodec().decode(copyBuffer);
+            ByteBuffer aliasBuffer = encode(new RaftLogCodec(true), entry, direct);
+            RaftLogEntry aliased = new RaftLogCodec(true).decode(aliasBuffer);
+
+            // Aliased values view the buffer from which they were decoded, while copied values don't.
+            for (int i = 0; i < copyBuffer.limit(); i++) {
+                copyBuffer.put(i, (byte) 0);
+                aliasBuffer.put(i, (byte) 0);
+            }
+            assertEquals(VALUE, copied.getCommand().getValue());
+            assertNotEquals(VALUE, aliased.getCommand().getValue());
+            assertEquals(VALUE.size(), aliased.getCommand().getValue().size());
+        }
+    }
+
+    @Test
+    public void testEncodeOverflow() throws Exception {
+        RaftLogEntry entry = entries().get(1);
+        final int size = entry.getSerializedSize();
+        for (boolean direct : new boolean[]{false, true}) {
+            ByteBuffer buffer = direct ? ByteBuffer.allocateDirect(size - 1) : ByteBuffer.allocate(size - 1);
+            try {
+                new RaftLogCodec().encode(entry, buffer);
+                fail();
+            } catch (BufferOverflowException e) {
+            }
+
+            // Nothing is written, so the journal can retry with a larger buffer.
+            assertEquals(0, buffer.position());
+
+            buffer = direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+            new RaftLogCodec().encode(entry, buffer);
+            assertFalse(buffer.hasRemaining());
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package io.hamster.protocols.raft.storage.log;
+
+import com.google.protobuf.ByteString;
+import io.hamster.storage.StorageException;
+import io.hamster.storage.journal.RawEntry;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Raft log entry view test.
+ */
+public class RaftLogEntryViewTest {
+
+    private static final ByteString VALUE = ByteString.copyFromUtf8("Hello world!");
+
+    private static RaftLogEntryView view(RaftLogEntry entry) {
+        return view(entry.toByteArray());
+    }
+
+    private static RaftLogEntryView view(byte[] bytes) {
+        return new RaftLogEntryView(new RawEntry(1, 0, ByteBuffer.wrap(bytes)));
+    }
+
+    private static void assertView(RaftLogEntry entry, RaftLogEntryView view) {
+        assertEquals(entry.getTerm(), view.term());
+        assertEquals(entry.getTimestamp(), view.timestamp());
+        assertEquals(entry.getEntryCase(), view.entryCase());
+        assertEquals(entry.getSerializedSize(), view.size());
+        assertEquals(entry, view.entry());
+    }
+
+    @Test
+    public void testInitializeEntry() {
+        RaftLogEntry entry = RaftLogEntry.newBuilder()
+                .setTerm(1)
+                .setTimestamp(2)
+                .setInitialize(InitializeEntry.newBuilder().build())
+                .build();
+        RaftLogEntryView view = view(entry);
+        assertEquals(RaftLogEntry.EntryCase.INITIALIZE, view.entryCase());
+        assertView(entry, view);
+    }
+
+    @Test
+    public void testCommandEntry() {
+        RaftLogEntry entry = RaftLogEntry.newBuilder()
+                .setTerm(Long.MAX_VALUE)
+                .setTimestamp(System.currentTimeMillis())
+                .setCommand(CommandEntry.newBuilder().setValue(VALUE).setStream(true).build())
+                .build();
+        RaftLogEntryView view = view(entry);
+        assertEquals(RaftLogEntry.EntryCase.COMMAND, view.entryCase());
+        assertView(entry, view);
+        assertEquals(VALUE, view.entry().getCommand().getValue());
+    }
+
+    @Test
+    public void testQueryEntry() {
+        RaftLogEntry entry = RaftLogEntry.newBuilder()
+                .setTerm(3)
+                .setTimestamp(4)
+                .setQuery(QueryEntry.newBuilder().setValue(VALUE).build())
+                .build();
+        RaftLogEntryView view = view(entry);
+        assertEquals(RaftLogEntry.EntryCase.QUERY, view.entryCase());
+        assertView(entry, view);
+        assertEquals(VALUE, view.entry().getQuery().getValue());
+    }
+
+    @Test
+    public void testEmptyBody() {
+        RaftLogEntry entry = RaftLogEntry.newBuilder()
+                .setTerm(5)
+                .setTimestamp(6)
+                .build();
+        RaftLogEntryView view = view(entry);
+        assertEquals(RaftLogEntry.EntryCase.ENTRY_NOT_SET, view.entryCase());
+        assertView(entry, view);
+
+        // An entry with only default values has no bytes.
+        entry = RaftLogEntry.newBuilder().build();
+        view = view(entry);
+        assertEquals(0, view.size());
+        assertEquals(0, view.term());
+        assertEquals(0, view.timestamp());
+        assertEquals(RaftLogEntry.EntryCase.ENTRY_NOT_SET, view.entryCase());
+        assertView(entry, view);
+    }
+
+    @Test
+    public void testRawEntry() {
+        RaftLogEntry entry = RaftLogEntry.newBuilder()
+                .setTerm(7)
+                .setTimestamp(8)
+                .setCommand(CommandEntry.newBuilder().setValue(VALUE).build())
+                .build();
+        ByteBuffer buffer = ByteBuffer.wrap(entry.toByteArray());
+        RaftLogEntryView view = new RaftLogEntryView(new RawEntry(10, 0, buffer));
+        assertEquals(10, view.index());
+        assertView(entry, view);
+
+        // The view doesn't move the entry's buffer.
+        assertEquals(0, buffer.position());
+        assertEquals(entry.getSerializedSize(), buffer.remaining());
+    }
+
+    @Test
+    public void testTruncatedEntry() {
+        RaftLogEntry entry = RaftLogEntry.newBuilder()
+                .setTerm(Long.MAX_VALUE)
+                .setTimestamp(2)
+                .setCommand(CommandEntry.newBuilder().setValue(VALUE).build())
+                .build();
+        byte[] bytes = entry.toByteArray();
+        final int termBytes = 1 + 9;
+        final int timestampBytes = 1 + 1;
+        final int bodyOffset = termBytes + timestampBytes;
+
+        // Truncated within the term's varint.
+        assertMalformed(Arrays.copyOf(bytes, 3));
+        // Truncated after the tag of the body.
+        assertMalformed(Arrays.copyOf(bytes, bodyOffset + 1));
+        // Truncated within the body.
+        assertMalformed(Arrays.copyOf(bytes, bodyOffset + 3));
+        assertMalformed(Arrays.copyOf(bytes, bytes.length - 1));
+
+        // Truncating a whole field leaves a valid entry.
+        RaftLogEntryView view = view(Arrays.copyOf(bytes, bodyOffset));
+        assertEquals(Long.MAX_VALUE, view.term());
+        assertEquals(2, view.timestamp());
+        assertEquals(RaftLogEntry.EntryCase.ENTRY_NOT_SET, view.entryCase());
+    }
+
+    private static void assertMalformed(byte[] bytes) {
+        try {
+            view(bytes);
+            fail();
+        } catch (StorageException e) {
+        }
+    }
+}
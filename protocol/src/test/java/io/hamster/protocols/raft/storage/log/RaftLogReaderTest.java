@@ -0,0 +1,301 @@
+package io.hamster.protocols.raft.storage.log;
+
+import com.google.protobuf.ByteString;
+import io.hamster.storage.journal.Indexed;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import static org.junit.Assert.*;
+
+/**
+ * Raft log reader test.
+ */
+public class RaftLogReaderTest {
+
+    private static final Path PATH = Paths.get("target/test-logs/");
+
+    private static RaftLogEntry entry(long term) {
+        return RaftLogEntry.newBuilder()
+                .setTerm(term)
+                .setTimestamp(System.currentTimeMillis())
+                .setCommand(CommandEntry.newBuilder().setValue(ByteString.copyFromUtf8("Hello world!")).build())
+                .build();
+    }
+
+    private RaftLog createLog(int cacheSize) {
+        return RaftLog.builder()
+                .withName("test")
+                .withDirectory(PATH.toFile())
+                .withCacheSize(cacheSize)
+                .build();
+    }
+
+    @Test
+    public void testReadCachedEntries() {
+        try (RaftLog log = createLog(16)) {
+            RaftLogWriter writer = log.writer();
+            RaftLogReader reader = log.openReader(1);
+            for (long index = 1; index <= 10; index++) {
+                assertEquals(index, writer.append(entry(index)).index());
+            }
+
+            for (long index = 1; index <= 10; index++) {
+                assertTrue(reader.hasNext());
+                Indexed<RaftLogEntry> entry = reader.next();
+                assertEquals(index, entry.index());
+                assertEquals(index, entry.entry().getTerm());
+                assertEquals(index, reader.getCurrentIndex());
+                assertEquals(entry, reader.getCurrentEntry());
+            }
+            assertFalse(reader.hasNext());
+            assertEquals(10, log.getCacheHits());
+            assertEquals(0, log.getCacheMisses());
+        }
+    }
+
+    @Test
+    public void testReadEvictedEntries() {
+        try (RaftLog log = createLog(4)) {
+            RaftLogWriter writer = log.writer();
+            for (long index = 1; index <= 10; index++) {
+                writer.append(entry(index));
+            }
+
+            // Evicted entries are read from the journal, and the remaining entries from the cache.
+            RaftLogReader reader = log.openReader(1);
+            for (long index = 1; index <= 10; index++) {
+                assertTrue(reader.hasNext());
+                Indexed<RaftLogEntry> entry = reader.next();
+                assertEquals(index, entry.index());
+                assertEquals(index, entry.entry().getTerm());
+            }
+            assertFalse(reader.hasNext());
+            assertEquals(4, log.getCacheHits());
+            assertEquals(6, log.getCacheMisses());
+        }
+    }
+
+    @Test
+    public void testSyncJournalReader() {
+        try (RaftLog log = createLog(4)) {
+            RaftLogWriter writer = log.writer();
+            RaftLogReader reader = log.openReader(1);
+            for (long index = 1; index <= 4; index++) {
+                writer.append(entry(index));
+            }
+
+            // Entries read from the cache don't move the journal reader, so it's moved before reading from the journal.
+            assertEquals(1, reader.next().index());
+            assertEquals(2, reader.next().index());
+            RaftLogEntryView view = reader.nextView();
+            assertEquals(3, view.index());
+            assertEquals(3, view.term());
+            assertEquals(4, reader.getNextIndex());
+            assertEquals(4, reader.next().index());
+
+            // Once the following entries are evicted, they're read from the journal.
+            for (long index = 5; index <= 12; index++) {
+                writer.append(entry(index));
+            }
+            for (long index = 5; index <= 12; index++) {
+                Indexed<RaftLogEntry> entry = reader.next();
+                assertEquals(index, entry.index());
+                assertEquals(index, entry.entry().getTerm());
+            }
+            assertFalse(reader.hasNext());
+        }
+    }
+
+    @Test
+    public void testReadCommittedEntries() {
+        try (RaftLog log = createLog(16)) {
+            RaftLogWriter writer = log.writer();
+            RaftLogReader reader = log.openReader(1, RaftLogReader.Mode.COMMITS);
+            for (long index = 1; index <= 10; index++) {
+                writer.append(entry(1));
+            }
+            assertFalse(reader.hasNext());
+
+            writer.commit(5);
+            for (long index = 1; index <= 5; index++) {
+                assertTrue(reader.hasNext());
+                assertEquals(index, reader.next().index());
+            }
+            assertFalse(reader.hasNext());
+
+            writer.commit(10);
+            assertTrue(reader.hasNext());
+            assertEquals(6, reader.next().index());
+        }
+    }
+
+    @Test
+    public void testTruncateMovesReaders() {
+        try (RaftLog log = createLog(16)) {
+            RaftLogWriter writer = log.writer();
+            RaftLogReader reader = log.openReader(1);
+            for (long index = 1; index <= 10; index++) {
+                writer.append(entry(1));
+            }
+            while (reader.hasNext()) {
+                reader.next();
+            }
+            assertEquals(11, reader.getNextIndex());
+
+            writer.truncate(5);
+            assertEquals(6, reader.getNextIndex());
+            assertEquals(5, reader.getCurrentIndex());
+            assertFalse(reader.hasNext());
+
+            writer.append(entry(2));
+            assertTrue(reader.hasNext());
+            Indexed<RaftLogEntry> entry = reader.next();
+            assertEquals(6, entry.index());
+            assertEquals(2, entry.entry().getTerm());
+        }
+    }
+
+    @Test
+    public void testTruncateOnWriterThread() throws Exception {
+        try (RaftLog log = createLog(16)) {
+            RaftLogWriter writer = log.writer();
+            RaftLogReader reader = log.openReader(1);
+            for (long index = 1; index <= 10; index++) {
+                writer.append(entry(1));
+            }
+            while (reader.hasNext()) {
+                reader.next();
+            }
+
+            // The reader applies the reset recorded by the writer's thread once it's next used.
+            Thread thread = new Thread(() -> {
+                writer.truncate(5);
+                writer.append(entry(2));
+            });
+            thread.start();
+            thread.join();
+            assertTrue(reader.hasNext());
+            Indexed<RaftLogEntry> entry = reader.next();
+            assertEquals(6, entry.index());
+            assertEquals(2, entry.entry().getTerm());
+            assertFalse(reader.hasNext());
+        }
+    }
+
+    @Test
+    public void testResetMovesReaders() {
+        try (RaftLog log = createLog(16)) {
+            RaftLogWriter writer = log.writer();
+            RaftLogReader reader = log.openReader(1);
+            for (long index = 1; index <= 10; index++) {
+                writer.append(entry(1));
+            }
+            while (reader.hasNext()) {
+                reader.next();
+            }
+
+            writer.reset(5);
+            assertEquals(5, reader.getNextIndex());
+            assertFalse(reader.hasNext());
+
+            writer.append(entry(2));
+            Indexed<RaftLogEntry> entry = reader.next();
+            assertEquals(5, entry.index());
+            assertEquals(2, entry.entry().getTerm());
+        }
+    }
+
+    @Test
+    public void testFollowerTruncation() {
+        try (RaftLog log = createLog(16)) {
+            RaftLogWriter writer = log.writer();
+            RaftLogReader reader = log.openReader(1);
+            for (long index = 1; index <= 10; index++) {
+                writer.append(entry(1));
+            }
+            while (reader.hasNext()) {
+                reader.next();
+            }
+
+            // A leader's entries replace the follower's cached entries from index 6.
+            writer.append(new Indexed<>(6, entry(2), 0));
+            writer.append(new Indexed<>(7, entry(2), 0));
+            assertEquals(7, writer.getLastIndex());
+            assertEquals(1, log.getTerm(5));
+            assertEquals(2, log.getTerm(6));
+
+            // The reader was past the truncation point, so it reads the replacing entries.
+            assertEquals(6, reader.getNextIndex());
+            for (long index = 6; index <= 7; index++) {
+                assertTrue(reader.hasNext());
+                Indexed<RaftLogEntry> entry = reader.next();
+                assertEquals(index, entry.index());
+                assertEquals(2, entry.entry().getTerm());
+            }
+            assertFalse(reader.hasNext());
+
+            // A new reader reads the replacing entries from the journal.
+            try (RaftLogReader journalReader = log.openReader(6)) {
+                RaftLogEntryView view = journalReader.nextView();
+                assertEquals(6, view.index());
+                assertEquals(2, view.term());
+            }
+        }
+    }
+
+    @Test
+    public void testReadWithoutCache() {
+        try (RaftLog log = createLog(0)) {
+            RaftLogWriter writer = log.writer();
+            RaftLogReader reader = log.openReader(1);
+            for (long index = 1; index <= 10; index++) {
+                writer.append(entry(index));
+            }
+            for (long index = 1; index <= 10; index++) {
+                Indexed<RaftLogEntry> entry = reader.next();
+                assertEquals(index, entry.index());
+                assertEquals(index, entry.entry().getTerm());
+            }
+            assertFalse(reader.hasNext());
+            assertEquals(0, log.getCacheHits());
+            assertEquals(0, log.getCacheMisses());
+        }
+    }
+
+    @Test
+    public void testCacheDisabledByDefault() {
+        try (RaftLog log = RaftLog.builder().withName("test").withDirectory(PATH.toFile()).build()) {
+            RaftLogWriter writer = log.writer();
+            RaftLogReader reader = log.openReader(1);
+            writer.append(entry(1));
+            assertEquals(1, reader.next().index());
+            assertEquals(0, log.getCacheHits());
+            assertEquals(0, log.getCacheMisses());
+        }
+    }
+
+    @Before
+    @After
+    public void cleanupStorage() throws IOException {
+        if (Files.exists(PATH)) {
+            Files.walkFileTree(PATH, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    Files.delete(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                    Files.delete(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package io.hamster.protocols.raft.storage.log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Raft log term index test.
+ */
+public class RaftLogTermIndexTest {
+
+    private static final Path PATH = Paths.get("target/test-logs/");
+
+    /**
+     * Returns a term index covering entries 1 to 10, with term 1 for entries 1-3, term 2 for entries 4-7 and term 3
+     * for entries 8-10.
+     */
+    private RaftLogTermIndex createIndex() {
+        RaftLogTermIndex terms = new RaftLogTermIndex();
+        for (long index = 1; index <= 10; index++) {
+            terms.append(index, index <= 3 ? 1 : index <= 7 ? 2 : 3);
+        }
+        return terms;
+    }
+
+    @Test
+    public void testLookup() {
+        RaftLogTermIndex terms = new RaftLogTermIndex();
+        assertTrue(terms.isEmpty());
+        assertEquals(0, terms.lookup(1));
+
+        terms = createIndex();
+        assertFalse(terms.isEmpty());
+        assertEquals(1, terms.firstIndex());
+        assertEquals(10, terms.lastIndex());
+        assertEquals(0, terms.lookup(0));
+        assertEquals(1, terms.lookup(1));
+        assertEquals(1, terms.lookup(3));
+        assertEquals(2, terms.lookup(4));
+        assertEquals(2, terms.lookup(7));
+        assertEquals(3, terms.lookup(8));
+        assertEquals(3, terms.lookup(10));
+        assertEquals(0, terms.lookup(11));
+    }
+
+    @Test
+    public void testAppendReplacedIndexes() {
+        RaftLogTermIndex terms = createIndex();
+
+        // Appending an entry at a written index discards the terms of the replaced entries.
+        terms.append(5, 4);
+        assertEquals(5, terms.lastIndex());
+        assertEquals(2, terms.lookup(4));
+        assertEquals(4, terms.lookup(5));
+        assertEquals(0, terms.lookup(6));
+        assertEquals(0, terms.lookup(8));
+
+        terms.append(6, 4);
+        assertEquals(4, terms.lookup(6));
+
+        // Replacing the first entry of a term discards the term.
+        terms.append(4, 5);
+        assertEquals(4, terms.lastIndex());
+        assertEquals(1, terms.lookup(3));
+        assertEquals(5, terms.lookup(4));
+        assertEquals(0, terms.lookup(5));
+    }
+
+    @Test
+    public void testTruncate() {
+        RaftLogTermIndex terms = createIndex();
+        terms.truncate(8);
+        assertEquals(8, terms.lastIndex());
+        assertEquals(3, terms.lookup(8));
+        assertEquals(0, terms.lookup(9));
+
+        terms.truncate(7);
+        assertEquals(7, terms.lastIndex());
+        assertEquals(2, terms.lookup(7));
+        assertEquals(0, terms.lookup(8));
+
+        terms.append(8, 4);
+        assertEquals(4, terms.lookup(8));
+
+        terms.truncate(0);
+        assertTrue(terms.isEmpty());
+        assertEquals(0, terms.lastIndex());
+        assertEquals(0, terms.lookup(1));
+
+        // Truncating past the last index doesn't extend the index.
+        terms = createIndex();
+        terms.truncate(20);
+        assertEquals(10, terms.lastIndex());
+    }
+
+    @Test
+    public void testCompact() {
+        RaftLogTermIndex terms = createIndex();
+        terms.compact(5);
+        assertEquals(10, terms.lastIndex());
+        assertEquals(0, terms.lookup(3));
+        assertEquals(2, terms.lookup(4));
+        assertEquals(2, terms.lookup(5));
+        assertEquals(3, terms.lookup(10));
+
+        terms.compact(20);
+        assertFalse(terms.isEmpty());
+        assertEquals(0, terms.lookup(7));
+        assertEquals(3, terms.lookup(8));
+        assertEquals(3, terms.lookup(10));
+    }
+
+    @Test
+    public void testReset() {
+        RaftLogTermIndex terms = createIndex();
+        terms.reset(100);
+        assertTrue(terms.isEmpty());
+        assertEquals(99, terms.lastIndex());
+        assertEquals(100, terms.firstIndex());
+        assertEquals(0, terms.lookup(5));
+
+        terms.append(100, 5);
+        assertEquals(100, terms.firstIndex());
+        assertEquals(100, terms.lastIndex());
+        assertEquals(5, terms.lookup(100));
+        assertEquals(0, terms.lookup(99));
+    }
+
+    @Test
+    public void testSlice() {
+        RaftLogTermIndex terms = createIndex();
+        RaftLogTermIndex slice = terms.slice(2, 8);
+        assertEquals(2, slice.firstIndex());
+        assertEquals(8, slice.lastIndex());
+        assertEquals(0, slice.lookup(1));
+        assertEquals(1, slice.lookup(2));
+        assertEquals(2, slice.lookup(4));
+        assertEquals(3, slice.lookup(8));
+        assertEquals(0, slice.lookup(9));
+
+        slice = terms.slice(5, 6);
+        assertEquals(5, slice.firstIndex());
+        assertEquals(2, slice.lookup(5));
+        assertEquals(2, slice.lookup(6));
+
+        assertNull(terms.slice(0, 5));
+        assertNull(terms.slice(5, 11));
+        assertNull(terms.slice(6, 5));
+        assertNull(new RaftLogTermIndex().slice(1, 1));
+
+        // Slices are copies of the index.
+        slice = terms.slice(1, 10);
+        terms.truncate(5);
+        assertEquals(10, slice.lastIndex());
+        assertEquals(3, slice.lookup(10));
+    }
+
+    @Test
+    public void testAppendAll() {
+        RaftLogTermIndex terms = createIndex();
+        RaftLogTermIndex next = new RaftLogTermIndex();
+        next.append(11, 3);
+        next.append(12, 3);
+        next.append(13, 4);
+        terms.appendAll(next);
+        assertEquals(13, terms.lastIndex());
+        assertEquals(3, terms.lookup(8));
+        assertEquals(3, terms.lookup(12));
+        assertEquals(4, terms.lookup(13));
+
+        RaftLogTermIndex chained = new RaftLogTermIndex();
+        chained.appendAll(createIndex().slice(1, 5));
+        chained.appendAll(createIndex().slice(6, 10));
+        assertEquals(10, chained.lastIndex());
+        for (long index = 1; index <= 10; index++) {
+            assertEquals(createIndex().lookup(index), chained.lookup(index));
+        }
+    }
+
+    @Test
+    public void testWriteRead() {
+        File file = new File(PATH.toFile(), "test.terms");
+        RaftLogTermIndex terms = createIndex();
+        terms.write(file);
+
+        RaftLogTermIndex read = RaftLogTermIndex.read(file);
+        assertNotNull(read);
+        assertEquals(1, read.firstIndex());
+        assertEquals(10, read.lastIndex());
+        for (long index = 0; index <= 11; index++) {
+            assertEquals(terms.lookup(index), read.lookup(index));
+        }
+
+        // The read index grows as terms are appended.
+        for (long index = 11; index <= 100; index++) {
+            read.append(index, index);
+        }
+        assertEquals(3, read.lookup(10));
+        assertEquals(100, read.lookup(100));
+
+        new RaftLogTermIndex().write(file);
+        read = RaftLogTermIndex.read(file);
+        assertNotNull(read);
+        assertTrue(read.isEmpty());
+
+        assertNull(RaftLogTermIndex.read(new File(PATH.toFile(), "missing.terms")));
+    }
+
+    @Test
+    public void testReadCorruptFile() throws Exception {
+        File file = new File(PATH.toFile(), "test.terms");
+        createIndex().write(file);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(Integer.BYTES + Long.BYTES + Integer.BYTES + Long.BYTES);
+            raf.writeLong(Long.MAX_VALUE);
+        }
+        assertNull(RaftLogTermIndex.read(file));
+
+        createIndex().write(file);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 1);
+        }
+        assertNull(RaftLogTermIndex.read(file));
+
+        Files.write(file.toPath(), new byte[0]);
+        assertNull(RaftLogTermIndex.read(file));
+    }
+
+    @Test
+    public void testSegmentTerms() {
+        RaftLogTermIndex terms = createIndex();
+        RaftLogSegmentTerms segmentTerms = new RaftLogSegmentTerms("test", PATH.toFile());
+        segmentTerms.write(terms.slice(1, 3));
+        segmentTerms.write(terms.slice(4, 6));
+        segmentTerms.write(terms.slice(7, 9));
+        assertTrue(RaftLogSegmentTerms.isTermsFile("test", new File(PATH.toFile(), "test-4.terms")));
+        assertFalse(RaftLogSegmentTerms.isTermsFile("test", new File(PATH.toFile(), "test-4.log")));
+        assertFalse(RaftLogSegmentTerms.isTermsFile("test", new File(PATH.toFile(), "test-foo-4.terms")));
+
+        List<RaftLogTermIndex> loaded = new RaftLogSegmentTerms("test", PATH.toFile()).load();
+        assertEquals(3, loaded.size());
+        assertEquals(1, loaded.get(0).firstIndex());
+        assertEquals(4, loaded.get(1).firstIndex());
+        assertEquals(7, loaded.get(2).firstIndex());
+        assertEquals(9, loaded.get(2).lastIndex());
+        assertEquals(3, loaded.get(2).lookup(9));
+
+        segmentTerms.truncate(5);
+        loaded = new RaftLogSegmentTerms("test", PATH.toFile()).load();
+        assertEquals(1, loaded.size());
+        assertEquals(3, loaded.get(0).lastIndex());
+
+        segmentTerms.write(terms.slice(4, 6));
+        segmentTerms.compact(5);
+        loaded = new RaftLogSegmentTerms("test", PATH.toFile()).load();
+        assertEquals(1, loaded.size());
+        assertEquals(4, loaded.get(0).firstIndex());
+
+        segmentTerms.reset();
+        assertTrue(new RaftLogSegmentTerms("test", PATH.toFile()).load().isEmpty());
+    }
+
+    @Before
+    public void createDirectory() throws IOException {
+        cleanupStorage();
+        Files.createDirectories(PATH);
+    }
+
+    @After
+    public void cleanupStorage() throws IOException {
+        if (Files.exists(PATH)) {
+            Files.walkFileTree(PATH, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    Files.delete(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                    Files.delete(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+    }
+}
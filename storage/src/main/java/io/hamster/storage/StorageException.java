@@ -29,6 +29,15 @@ public class StorageException extends RuntimeException {
         }
     }
 
+    /**
+     * Exception thrown when the checksum of an entry being stored does not match the entry bytes.
+     */
+    public static class InvalidChecksum extends StorageException {
+        public InvalidChecksum(String message) {
+            super(message);
+        }
+    }
+
     /**
      * Exception thrown when storage runs out of disk space.
      */
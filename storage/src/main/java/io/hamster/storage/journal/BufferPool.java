@@ -0,0 +1,128 @@
+package io.hamster.storage.journal;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Pool of buffers shared by the segment readers and writers of a journal.
+ * <p>
+ * Buffers are pooled in size classes of powers of two, starting at {@link #MIN_CAPACITY}. Readers and writers start
+ * with a small buffer and only trade it for a larger one when they encounter an entry that doesn't fit, so the size of
+ * a buffer adapts to the entries actually stored rather than to the maximum entry size. Each size class retains a
+ * bounded number of released buffers; buffers released to a full size class are left to the garbage collector.
+ * <p>
+ * Heap and direct buffers are pooled separately. Buffers are allocated on the heap or off heap as configured for the
+ * pool, unless the kind of buffer is requested explicitly.
+ */
+final class BufferPool {
+
+    static final int MIN_CAPACITY = 1024 * 4;
+    private static final int DEFAULT_CAPACITY = 1024 * 64;
+    private static final int MAX_POOLED_BUFFERS = 16;
+    private static final int MIN_SIZE_CLASS = Integer.numberOfTrailingZeros(MIN_CAPACITY);
+
+    private final boolean direct;
+    private final Queue<ByteBuffer>[] heapBuffers = newSizeClasses();
+    private final Queue<ByteBuffer>[] directBuffers = newSizeClasses();
+
+    BufferPool(boolean direct) {
+        this.direct = direct;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Queue<ByteBuffer>[] newSizeClasses() {
+        Queue<ByteBuffer>[] buffers = new Queue[Integer.SIZE - 1 - MIN_SIZE_CLASS];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = new ArrayBlockingQueue<>(MAX_POOLED_BUFFERS);
+        }
+        return buffers;
+    }
+
+    /**
+     * Returns the initial buffer capacity for a journal with the given maximum entry size.
+     *
+     * @param maxEntrySize the maximum entry size
+     * @return the initial buffer capacity
+     */
+    static int initialCapacity(int maxEntrySize) {
+        return Math.min(DEFAULT_CAPACITY, (maxEntrySize + Integer.BYTES + Integer.BYTES) * 2);
+    }
+
+    /**
+     * Returns whether the pool allocates direct buffers.
+     *
+     * @return whether the pool allocates direct buffers
+     */
+    boolean isDirect() {
+        return direct;
+    }
+
+    /**
+     * Borrows a cleared buffer of at least the given capacity from the pool.
+     *
+     * @param capacity the minimum buffer capacity
+     * @return the buffer
+     */
+    ByteBuffer acquire(int capacity) {
+        return acquire(capacity, direct);
+    }
+
+    /**
+     * Borrows a cleared heap or direct buffer of at least the given capacity from the pool.
+     *
+     * @param capacity the minimum buffer capacity
+     * @param direct   whether to borrow a direct buffer
+     * @return the buffer
+     */
+    ByteBuffer acquire(int capacity, boolean direct) {
+        final Queue<ByteBuffer>[] buffers = direct ? directBuffers : heapBuffers;
+        final int sizeClass = sizeClass(capacity);
+        ByteBuffer buffer = sizeClass < buffers.length ? buffers[sizeClass].poll() : null;
+        if (buffer == null) {
+            final int size = sizeClass < buffers.length ? 1 << (sizeClass + MIN_SIZE_CLASS) : capacity;
+            buffer = direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer borrowed from the pool.
+     *
+     * @param buffer the buffer to return
+     */
+    void release(ByteBuffer buffer) {
+        final int capacity = buffer.capacity();
+        if (capacity < MIN_CAPACITY || Integer.bitCount(capacity) != 1) {
+            return;
+        }
+        final Queue<ByteBuffer>[] buffers = buffer.isDirect() ? directBuffers : heapBuffers;
+        final int sizeClass = sizeClass(capacity);
+        if (sizeClass < buffers.length) {
+            buffers[sizeClass].offer(buffer);
+        }
+    }
+
+    /**
+     * Drops the buffers retained by the pool.
+     */
+    void clear() {
+        for (Queue<ByteBuffer> queue : heapBuffers) {
+            queue.clear();
+        }
+        for (Queue<ByteBuffer> queue : directBuffers) {
+            queue.clear();
+        }
+    }
+
+    /**
+     * Returns the size class of the smallest power of two holding the given capacity.
+     */
+    private static int sizeClass(int capacity) {
+        if (capacity <= MIN_CAPACITY) {
+            return 0;
+        }
+        return Integer.SIZE - Integer.numberOfLeadingZeros(capacity - 1) - MIN_SIZE_CLASS;
+    }
+}
@@ -0,0 +1,114 @@
+package io.hamster.storage.journal;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Journal entry checksum type.
+ * <p>
+ * The checksum type is recorded in the descriptor of each segment, so segments written with different checksum types
+ * can be read by the same journal. Checksums are stored in 32 bits; wider checksums are truncated.
+ */
+public enum ChecksumType {
+
+    /**
+     * CRC32 checksums, computed with the JDK's intrinsic implementation.
+     */
+    CRC32(0) {
+        @Override
+        EntryChecksum newChecksum() {
+            final java.util.zip.CRC32 crc32 = new java.util.zip.CRC32();
+            return buffer -> {
+                final int position = buffer.position();
+                crc32.reset();
+                crc32.update(buffer);
+                buffer.position(position);
+                return (int) crc32.getValue();
+            };
+        }
+    },
+
+    /**
+     * CRC32C (Castagnoli) checksums, computed with the JDK's intrinsic implementation on Java 9 and later and with a
+     * table-driven implementation on Java 8.
+     */
+    CRC32C(1) {
+        @Override
+        EntryChecksum newChecksum() {
+            return Crc32cChecksum.create();
+        }
+    },
+
+    /**
+     * The lower 32 bits of xxHash64 checksums.
+     */
+    XXHASH64(2) {
+        @Override
+        EntryChecksum newChecksum() {
+            return new XxHash64Checksum();
+        }
+    },
+
+    /**
+     * No checksums.
+     * <p>
+     * Entries are not verified when they're read, so a torn write at the tail of a segment is only detected if the
+     * entry can't be decoded. The checksum salt is still stored with each entry, so the entries left in a recycled
+     * segment file aren't read as entries of the new segment.
+     */
+    NONE(3) {
+        @Override
+        EntryChecksum newChecksum() {
+            return buffer -> 0;
+        }
+    };
+
+    private final int id;
+
+    ChecksumType(int id) {
+        this.id = id;
+    }
+
+    /**
+     * Returns the identifier with which the checksum type is stored in segment descriptors.
+     *
+     * @return the checksum type identifier
+     */
+    public int id() {
+        return id;
+    }
+
+    /**
+     * Returns the checksum type with the given identifier.
+     *
+     * @param id the checksum type identifier
+     * @return the checksum type
+     * @throws IllegalArgumentException if the identifier is unknown
+     */
+    public static ChecksumType forId(int id) {
+        for (ChecksumType type : values()) {
+            if (type.id == id) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Unknown checksum type " + id);
+    }
+
+    /**
+     * Returns a new checksum instance for the type.
+     *
+     * @return a new checksum instance
+     */
+    abstract EntryChecksum newChecksum();
+
+    /**
+     * Computes the checksum of the remaining bytes in the given buffer.
+     * <p>
+     * This creates a new checksum instance; segment readers and writers reuse their own instances instead.
+     *
+     * @param buffer the buffer holding the entry bytes
+     * @return the 32-bit checksum of the entry bytes
+     */
+    public int compute(ByteBuffer buffer) {
+        return newChecksum().compute(buffer);
+    }
+}
@@ -0,0 +1,185 @@
+package io.hamster.storage.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Journal codec that compresses the entries encoded by another codec.
+ * <p>
+ * Entries are encoded by the wrapped codec, and those whose encoded size reaches the compression threshold are
+ * compressed with {@link Lz4Block LZ4}. Each encoded entry starts with a flag byte indicating how it was stored, so
+ * entries that don't compress are stored as encoded, and journals can be read regardless of the threshold with which
+ * they were written. The format of an encoded entry is as follows:
+ * <ul>
+ * <li>8-bit flag: {@code 0} for an uncompressed entry, {@code 1} for an entry compressed without a dictionary and
+ * {@code 2} for an entry compressed with the codec's dictionary</li>
+ * <li>for a compressed entry, the 32-bit length of the uncompressed entry</li>
+ * <li>the encoded or compressed entry</li>
+ * </ul>
+ * <p>
+ * Small entries with a common structure compress poorly on their own, so the codec can be given a preset dictionary
+ * of bytes typical of the entries, which compressed entries may reference. Only the last 64KB of the dictionary are
+ * used. Entries compressed with a dictionary can only be decoded by a codec with the same dictionary.
+ */
+public class CompressingJournalCodec<E> implements JournalCodec<E> {
+
+    public static final int DEFAULT_THRESHOLD = 128;
+
+    private static final byte UNCOMPRESSED = 0;
+    private static final byte LZ4 = 1;
+    private static final byte LZ4_DICTIONARY = 2;
+    private static final byte[] NO_DICTIONARY = new byte[0];
+
+    private final JournalCodec<E> codec;
+    private final int threshold;
+    private final byte[] dictionary;
+    private final int[] dictionaryTable;
+    private final ThreadLocal<Scratch> scratch;
+
+    public CompressingJournalCodec(JournalCodec<E> codec) {
+        this(codec, DEFAULT_THRESHOLD);
+    }
+
+    public CompressingJournalCodec(JournalCodec<E> codec, int threshold) {
+        this(codec, threshold, NO_DICTIONARY);
+    }
+
+    /**
+     * @param codec      the codec with which to encode entries
+     * @param threshold  the encoded size from which entries are compressed
+     * @param dictionary the preset dictionary with which to compress entries
+     */
+    public CompressingJournalCodec(JournalCodec<E> codec, int threshold, byte[] dictionary) {
+        checkArgument(threshold >= 0, "threshold cannot be negative");
+        this.codec = checkNotNull(codec, "codec cannot be null");
+        this.threshold = threshold;
+        checkNotNull(dictionary, "dictionary cannot be null");
+        this.dictionary = Arrays.copyOfRange(
+                dictionary, Math.max(0, dictionary.length - Lz4Block.MAX_OFFSET), dictionary.length);
+        this.dictionaryTable = Lz4Block.newTable(this.dictionary);
+        this.scratch = ThreadLocal.withInitial(() -> new Scratch(this.dictionary));
+    }
+
+    @Override
+    public void encode(E entry, ByteBuffer buffer) throws IOException {
+        // Encode the entry in place, and only replace it if it compresses.
+        final int position = buffer.position();
+        buffer.put(UNCOMPRESSED);
+        codec.encode(entry, buffer);
+        final int length = buffer.position() - position - 1;
+        if (length < threshold) {
+            return;
+        }
+
+        Scratch scratch = this.scratch.get();
+        byte[] src = scratch.source(length);
+        ByteBuffer encoded = buffer.duplicate();
+        encoded.position(position + 1);
+        encoded.get(src, dictionary.length, length);
+
+        int[] table = scratch.table;
+        System.arraycopy(dictionaryTable, 0, table, 0, table.length);
+        byte[] dst = scratch.target(Lz4Block.maxCompressedLength(length));
+        final int compressed = Lz4Block.compress(src, dictionary.length, dictionary.length + length, dst, table);
+        if (Integer.BYTES + compressed >= length) {
+            return;
+        }
+
+        buffer.position(position);
+        buffer.put(dictionary.length > 0 ? LZ4_DICTIONARY : LZ4);
+        buffer.putInt(length);
+        buffer.put(dst, 0, compressed);
+    }
+
+    @Override
+    public E decode(ByteBuffer buffer) throws IOException {
+        final byte flag = buffer.get();
+        switch (flag) {
+            case UNCOMPRESSED:
+                return codec.decode(buffer);
+            case LZ4:
+                return codec.decode(ByteBuffer.wrap(decompress(buffer, NO_DICTIONARY)));
+            case LZ4_DICTIONARY:
+                if (dictionary.length == 0) {
+                    throw new IOException("Entry was compressed with a dictionary");
+                }
+                return codec.decode(ByteBuffer.wrap(decompress(buffer, dictionary)));
+            default:
+                throw new IOException("Unknown compression flag " + flag);
+        }
+    }
+
+    /**
+     * Decompresses the remaining bytes in the given buffer.
+     */
+    private byte[] decompress(ByteBuffer buffer, byte[] dictionary) throws IOException {
+        final int length = buffer.getInt();
+        if (length < 0) {
+            throw new IOException("Malformed compressed entry");
+        }
+
+        // The decompressed entry is allocated for each entry, since the wrapped codec may retain it.
+        byte[] bytes = new byte[length];
+        final int compressed = buffer.remaining();
+        if (buffer.hasArray()) {
+            final int start = buffer.arrayOffset() + buffer.position();
+            Lz4Block.decompress(buffer.array(), start, start + compressed, dictionary, bytes);
+        } else {
+            byte[] src = scratch.get().input(compressed);
+            buffer.duplicate().get(src, 0, compressed);
+            Lz4Block.decompress(src, 0, compressed, dictionary, bytes);
+        }
+        buffer.position(buffer.limit());
+        return bytes;
+    }
+
+    /**
+     * Per-thread buffers reused across entries.
+     */
+    private static final class Scratch {
+        private final int[] table = Lz4Block.newTable();
+        private final int history;
+        private byte[] source;
+        private byte[] target = new byte[0];
+        private byte[] input = new byte[0];
+
+        Scratch(byte[] dictionary) {
+            this.history = dictionary.length;
+            this.source = dictionary.clone();
+        }
+
+        /**
+         * Returns the array into which to copy an entry to compress, which is preceded by the dictionary.
+         */
+        byte[] source(int length) {
+            if (source.length < history + length) {
+                source = Arrays.copyOf(source, Math.max(history + length, source.length * 2));
+            }
+            return source;
+        }
+
+        /**
+         * Returns the array into which to compress an entry.
+         */
+        byte[] target(int length) {
+            if (target.length < length) {
+                target = new byte[Math.max(length, target.length * 2)];
+            }
+            return target;
+        }
+
+        /**
+         * Returns the array into which to copy a compressed entry from a direct buffer.
+         */
+        byte[] input(int length) {
+            if (input.length < length) {
+                input = new byte[Math.max(length, input.length * 2)];
+            }
+            return input;
+        }
+    }
+}
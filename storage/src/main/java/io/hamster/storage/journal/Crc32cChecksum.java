@@ -0,0 +1,106 @@
+package io.hamster.storage.journal;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.util.zip.Checksum;
+
+/**
+ * CRC32C checksum.
+ * <p>
+ * On Java 9 and later the checksum is computed by {@code java.util.zip.CRC32C}, which the JIT compiles to the CPU's CRC32C
+ * instructions. The class is looked up reflectively since the storage module targets Java 8, on which the checksum is
+ * computed with a lookup table instead.
+ */
+final class Crc32cChecksum {
+
+    private static final MethodHandle CONSTRUCTOR;
+    private static final MethodHandle UPDATE;
+    private static final int[] TABLE = new int[256];
+
+    static {
+        MethodHandle constructor = null;
+        MethodHandle update = null;
+        try {
+            Class<?> type = Class.forName("java.util.zip.CRC32C");
+            constructor = MethodHandles.publicLookup()
+                    .findConstructor(type, MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(Checksum.class));
+            update = MethodHandles.publicLookup()
+                    .findVirtual(Checksum.class, "update", MethodType.methodType(void.class, ByteBuffer.class));
+        } catch (ReflectiveOperationException e) {
+            constructor = null;
+            update = null;
+        }
+        CONSTRUCTOR = constructor;
+        UPDATE = update;
+
+        // Reflected Castagnoli polynomial.
+        for (int i = 0; i < TABLE.length; i++) {
+            int crc = i;
+            for (int j = 0; j < 8; j++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ 0x82F63B78 : crc >>> 1;
+            }
+            TABLE[i] = crc;
+        }
+    }
+
+    private Crc32cChecksum() {
+    }
+
+    /**
+     * Returns a new CRC32C checksum instance.
+     *
+     * @return a new checksum instance
+     */
+    static EntryChecksum create() {
+        return CONSTRUCTOR != null ? create(newChecksum()) : Crc32cChecksum::compute;
+    }
+
+    /**
+     * Returns a new table-driven CRC32C checksum instance, regardless of the Java version.
+     *
+     * @return a new checksum instance
+     */
+    static EntryChecksum createPortable() {
+        return Crc32cChecksum::compute;
+    }
+
+    private static EntryChecksum create(Checksum checksum) {
+        return buffer -> {
+            final int position = buffer.position();
+            checksum.reset();
+            try {
+                UPDATE.invokeExact(checksum, buffer);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+            buffer.position(position);
+            return (int) checksum.getValue();
+        };
+    }
+
+    private static Checksum newChecksum() {
+        try {
+            return (Checksum) CONSTRUCTOR.invokeExact();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Computes the checksum of the remaining bytes in the given buffer with the lookup table.
+     */
+    private static int compute(ByteBuffer buffer) {
+        int crc = 0xFFFFFFFF;
+        for (int i = buffer.position(), limit = buffer.limit(); i < limit; i++) {
+            crc = TABLE[(crc ^ buffer.get(i)) & 0xFF] ^ (crc >>> 8);
+        }
+        return ~crc;
+    }
+}
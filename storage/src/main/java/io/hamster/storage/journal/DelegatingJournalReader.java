@@ -15,6 +15,8 @@
  */
 package io.hamster.storage.journal;
 
+import java.util.function.Consumer;
+
 import static com.google.common.base.MoreObjects.toStringHelper;
 
 /**
@@ -57,6 +59,16 @@ public class DelegatingJournalReader<E> implements JournalReader<E> {
         return delegate.next();
     }
 
+    @Override
+    public RawEntry nextRaw() {
+        return delegate.nextRaw();
+    }
+
+    @Override
+    public int readBatch(int maxEntries, int maxBytes, Consumer<Indexed<E>> consumer) {
+        return delegate.readBatch(maxEntries, maxBytes, consumer);
+    }
+
     @Override
     public void reset() {
         delegate.reset();
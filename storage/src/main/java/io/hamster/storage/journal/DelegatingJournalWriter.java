@@ -15,6 +15,10 @@
  */
 package io.hamster.storage.journal;
 
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 import static com.google.common.base.MoreObjects.toStringHelper;
 
 /**
@@ -52,6 +56,26 @@ public class DelegatingJournalWriter<E> implements JournalWriter<E> {
         delegate.append(entry);
     }
 
+    @Override
+    public <T extends E> List<Indexed<T>> appendBatch(List<T> entries) {
+        return delegate.appendBatch(entries);
+    }
+
+    @Override
+    public void appendRaw(long index, ByteBuffer entry) {
+        delegate.appendRaw(index, entry);
+    }
+
+    @Override
+    public void appendRaw(RawEntry entry) {
+        delegate.appendRaw(entry);
+    }
+
+    @Override
+    public int appendRawBatch(List<RawEntry> entries) {
+        return delegate.appendRawBatch(entries);
+    }
+
     @Override
     public void commit(long index) {
         delegate.commit(index);
@@ -72,6 +96,11 @@ public class DelegatingJournalWriter<E> implements JournalWriter<E> {
         delegate.flush();
     }
 
+    @Override
+    public CompletableFuture<Long> whenDurable(long index) {
+        return delegate.whenDurable(index);
+    }
+
     @Override
     public void close() {
         delegate.close();
@@ -0,0 +1,21 @@
+package io.hamster.storage.journal;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Computes the checksums of journal entries.
+ * <p>
+ * Checksum instances are not thread safe and are reused by a single segment reader or writer.
+ */
+interface EntryChecksum {
+
+    /**
+     * Computes the checksum of the remaining bytes in the given buffer.
+     * <p>
+     * The position of the buffer is left unchanged.
+     *
+     * @param buffer the buffer holding the entry bytes
+     * @return the 32-bit checksum of the entry bytes
+     */
+    int compute(ByteBuffer buffer);
+}
@@ -5,26 +5,61 @@ import io.hamster.storage.journal.index.JournalIndex;
 import io.hamster.storage.journal.index.Position;
 
 import java.io.IOException;
-import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.NoSuchElementException;
-import java.util.zip.CRC32;
-import java.util.zip.Checksum;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 /**
  * Log segment reader.
+ * <p>
+ * Entries are read from the channel into a buffer that holds a window of the segment. {@link #hasNext()} only locates
+ * and verifies the next entry; entries are decoded when they are returned by {@link #next()}, and never when they are
+ * returned by {@link #nextRaw()} or skipped. The buffer is borrowed from the segment's {@link BufferPool} and is only
+ * traded for a larger one when an entry doesn't fit in it. {@link #readBatch(int, int, Consumer)} decodes consecutive
+ * entries straight out of the window and only reads the channel once the entries held in the window are consumed.
+ * <p>
+ * Raw entries are slices of the buffer, so once a raw entry has been returned the buffer is lent to the raw entries
+ * and isn't refilled while any of them still reference it. The reader continues with another buffer from the pool, and
+ * the lent buffer is returned to the pool once the reader and every raw entry referencing it have released it.
+ * <p>
+ * If readahead is enabled for the journal, a reader that fills consecutive windows of the segment is assumed to be
+ * scanning the segment sequentially. It then reads the segment in windows of the readahead size and reads the window
+ * following the current one in the background, so entries are read from one buffer while the next one is filled.
  */
 public class FileChannelJournalSegmentReader<E> implements JournalReader<E> {
 
+    private static final ByteBuffer CLOSED = ByteBuffer.allocate(0);
+    private static final int SEQUENTIAL_READS = 2;
+
     private final FileChannel channel;
     private final int maxEntrySize;
     private final JournalIndex index;
     private final JournalCodec<E> codec;
-    private final ByteBuffer memory;
+    private final Position indexPosition = new Position();
+    private final EntryChecksum entryChecksum;
+    private final int checksumSalt;
+    private final BufferPool bufferPool;
+    private final Readahead readahead;
+    private final JournalSegment<E> segment;
     private final long firstIndex;
+    private ByteBuffer memory;
+    private LentBuffer lent;
+    private long memoryPosition;
+    private long currentIndex;
+    private long currentPosition;
+    private int currentLength;
     private Indexed<E> currentEntry;
-    private Indexed<E> nextEntry;
+    private long nextPosition;
+    private int nextLength;
+    private int nextChecksum;
+    private boolean refilled;
+    private long windowEnd = -1;
+    private int sequentialReads;
+    private CompletableFuture<ByteBuffer> prefetch;
+    private ByteBuffer prefetchBuffer;
+    private long prefetchPosition;
 
     public FileChannelJournalSegmentReader(
             FileChannel channel,
@@ -36,7 +71,12 @@ public class FileChannelJournalSegmentReader<E> implements JournalReader<E> {
         this.maxEntrySize = maxEntrySize;
         this.index = index;
         this.codec = codec;
-        this.memory = ByteBuffer.allocate((maxEntrySize + Integer.BYTES + Integer.BYTES) * 2);
+        this.bufferPool = segment.bufferPool();
+        this.readahead = segment.readahead();
+        this.memory = bufferPool.acquire(BufferPool.initialCapacity(maxEntrySize));
+        this.segment = segment;
+        this.entryChecksum = segment.descriptor().checksumType().newChecksum();
+        this.checksumSalt = segment.descriptor().checksumSalt();
         this.firstIndex = segment.index();
         reset();
     }
@@ -48,25 +88,29 @@ public class FileChannelJournalSegmentReader<E> implements JournalReader<E> {
 
     @Override
     public long getCurrentIndex() {
-        return currentEntry != null ? currentEntry.index() : 0;
+        return currentIndex >= firstIndex ? currentIndex : 0;
     }
 
     @Override
     public Indexed<E> getCurrentEntry() {
+        // The current entry is decoded lazily if it was read raw or skipped.
+        if (currentEntry == null && currentIndex >= firstIndex && currentPosition >= 0) {
+            currentEntry = decode(currentIndex, currentPosition, currentLength);
+        }
         return currentEntry;
     }
 
     @Override
     public long getNextIndex() {
-        return currentEntry != null ? currentEntry.index() + 1 : firstIndex;
+        return currentIndex + 1;
     }
 
     @Override
     public boolean hasNext() {
-        if (nextEntry == null) {
+        if (nextLength == 0) {
             readNext();
         }
-        return nextEntry != null;
+        return nextLength > 0;
     }
 
     @Override
@@ -74,108 +118,402 @@ public class FileChannelJournalSegmentReader<E> implements JournalReader<E> {
         if (!hasNext()) {
             throw new NoSuchElementException();
         }
-        // Set the current entry to the next entry.
-        currentEntry = this.nextEntry;
-
-        // Reset the next entry to null.
-        nextEntry = null;
-        // Read the next entry in the segment.
-        readNext();
-
-        // Return the current entry.
+        final long position = nextPosition;
+        final int length = nextLength;
+        advance();
+        currentEntry = decode(currentIndex, position, length);
         return currentEntry;
     }
 
     @Override
-    public void reset() {
-        try {
-            channel.position(JournalSegmentDescriptor.BYTES);
-        } catch (IOException e) {
-            throw new StorageException(e);
+    public RawEntry nextRaw() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        final int offset = (int) (nextPosition - memoryPosition) + Integer.BYTES + Integer.BYTES;
+        ByteBuffer buffer = memory.duplicate();
+        buffer.position(offset).limit(offset + nextLength);
+        final int checksum = nextChecksum;
+        advance();
+        if (lent == null) {
+            lent = new LentBuffer(bufferPool, memory);
+        }
+        lent.retain();
+        return new RawEntry(currentIndex, checksum, buffer.slice().asReadOnlyBuffer(), lent);
+    }
+
+    @Override
+    public int readBatch(int maxEntries, int maxBytes, Consumer<Indexed<E>> consumer) {
+        int entries = 0;
+        long bytes = 0;
+        while (entries < maxEntries && bytes < maxBytes && hasNext()) {
+            // Decode the entries held in the window back to back, leaving it to hasNext() to refill the window.
+            do {
+                final long position = nextPosition;
+                final int length = nextLength;
+                advance();
+                currentEntry = decode(currentIndex, position, length);
+                consumer.accept(currentEntry);
+                entries++;
+                bytes += length;
+            } while (entries < maxEntries && bytes < maxBytes && locateBuffered());
         }
+        return entries;
+    }
+
+    /**
+     * Moves the reader past the next entry without decoding it.
+     */
+    private void advance() {
+        currentIndex++;
+        currentPosition = nextPosition;
+        currentLength = nextLength;
         currentEntry = null;
-        nextEntry = null;
+        nextPosition += Integer.BYTES + Integer.BYTES + nextLength;
+        nextLength = 0;
+    }
+
+    @Override
+    public void reset() {
+        discardPrefetch();
+        windowEnd = -1;
+        sequentialReads = 0;
+        memoryPosition = JournalSegmentDescriptor.BYTES;
         memory.clear().limit(0);
-        readNext();
+        currentIndex = firstIndex - 1;
+        currentPosition = -1;
+        currentLength = 0;
+        currentEntry = null;
+        nextPosition = JournalSegmentDescriptor.BYTES;
+        nextLength = 0;
     }
 
     @Override
     public void reset(long index) {
         reset();
 
-        Position position = this.index.lookup(index - 1);
+        Position position = this.index.lookup(index - 1, indexPosition);
         if (position != null) {
-            currentEntry = new Indexed<>(position.index() - 1, null, 0);
-            try {
-                channel.position(position.position());
-                memory.clear().flip();
-            } catch (IOException e) {
-                throw new StorageException(e);
-            }
-            readNext();
+            currentIndex = position.index() - 1;
+            nextPosition = position.position();
+        }
+
+        // Entries up to the last index written to the segment are known to be intact, so they're skipped by their
+        // headers alone. Any remaining entries are verified before they're skipped.
+        final long skipIndex = Math.min(index - 1, segment.lastIndex());
+        while (getNextIndex() <= skipIndex && skipNext()) {
+            advance();
         }
         while (getNextIndex() < index && hasNext()) {
-            next();
+            advance();
         }
     }
 
     /**
-     * Reads the next entry in the segment.
+     * Reads the length of the next entry without verifying its checksum.
+     *
+     * @return indicates whether the next entry has a valid length
+     */
+    private boolean skipNext() {
+        if (!fill(nextPosition, Integer.BYTES)) {
+            return false;
+        }
+        final int length = memory.getInt((int) (nextPosition - memoryPosition));
+        if (length <= 0 || length > maxEntrySize) {
+            return false;
+        }
+        nextLength = length;
+        return true;
+    }
+
+    /**
+     * Locates and verifies the next entry in the segment.
      */
     private void readNext() {
-        // Compute the index of the next entry in the segment.
-        long nextIndex = getNextIndex();
-        try {
-            // Read more bytes from the segment if necessary.
-            if (memory.remaining() < maxEntrySize) {
-                long position = channel.position() + memory.position();
-                channel.position(position);
-                memory.clear();
-                channel.read(memory);
-                //reset channel position
-                channel.position(position);
-                memory.flip();
+        nextLength = 0;
+        refilled = false;
+        if (!locateNext()) {
+            // The entry may have been written since the bytes following the last entry were buffered, so read them
+            // again before concluding there is no next entry.
+            discardNext();
+            if (!refilled && locateNext()) {
+                return;
             }
+            discardNext();
+        }
+    }
+
+    /**
+     * Reads and verifies the header and checksum of the next entry.
+     *
+     * @return indicates whether a valid entry was found
+     */
+    private boolean locateNext() {
+        // Read the length of the entry.
+        if (!fill(nextPosition, Integer.BYTES)) {
+            return false;
+        }
+        final int length = memory.getInt((int) (nextPosition - memoryPosition));
 
-            memory.mark();
-            int length = memory.getInt();
+        // If the length is zero or invalid then there is no next entry.
+        if (length <= 0 || length > maxEntrySize || !fill(nextPosition, Integer.BYTES + Integer.BYTES + length)) {
+            return false;
+        }
+        return verifyNext((int) (nextPosition - memoryPosition), length);
+    }
 
-            // If the buffer length is zero then return.
-            if (length <= 0 || length > maxEntrySize) {
-                memory.reset().limit(memory.position());
-                nextEntry = null;
-                return;
+    /**
+     * Locates and verifies the next entry if it's entirely held in the window, without reading from the channel.
+     *
+     * @return indicates whether a valid entry was found in the window
+     */
+    private boolean locateBuffered() {
+        final long start = nextPosition - memoryPosition;
+        if (start < 0 || start + Integer.BYTES + Integer.BYTES > memory.limit()) {
+            return false;
+        }
+        final int length = memory.getInt((int) start);
+        if (length <= 0 || length > maxEntrySize || start + Integer.BYTES + Integer.BYTES + length > memory.limit()) {
+            return false;
+        }
+        return verifyNext((int) start, length);
+    }
+
+    /**
+     * Verifies the checksum of the next entry, held in the window at the given offset.
+     *
+     * @return indicates whether the entry is valid
+     */
+    private boolean verifyNext(int start, int length) {
+        // Compare the stored checksum, unsalted, with the checksum of the entry bytes.
+        final int checksum = memory.getInt(start + Integer.BYTES) ^ checksumSalt;
+        final int limit = memory.limit();
+        memory.limit(start + Integer.BYTES + Integer.BYTES + length).position(start + Integer.BYTES + Integer.BYTES);
+        final int computed = entryChecksum.compute(memory);
+        memory.limit(limit).position(0);
+        if (checksum != computed) {
+            return false;
+        }
+        nextLength = length;
+        nextChecksum = checksum;
+        return true;
+    }
+
+    /**
+     * Discards the buffered bytes following the last entry, so they are read again from the channel.
+     */
+    private void discardNext() {
+        final long offset = nextPosition - memoryPosition;
+        if (offset >= 0 && offset < memory.limit()) {
+            memory.limit((int) offset);
+        }
+    }
+
+    /**
+     * Decodes the entry stored at the given position.
+     */
+    private Indexed<E> decode(long index, long position, int length) {
+        if (!fill(position, Integer.BYTES + Integer.BYTES + length)) {
+            throw new StorageException("Failed to read entry " + index);
+        }
+        final int offset = (int) (position - memoryPosition) + Integer.BYTES + Integer.BYTES;
+        ByteBuffer buffer = memory.duplicate();
+        buffer.position(offset).limit(offset + length);
+        try {
+            return new Indexed<>(index, codec.decode(buffer), length);
+        } catch (IOException e) {
+            throw new StorageException(e);
+        }
+    }
+
+    /**
+     * Ensures the given range of the segment is held in the buffer, reading from the channel if necessary.
+     *
+     * @return indicates whether the range could be read
+     */
+    private boolean fill(long position, int length) {
+        if (position >= memoryPosition && position + length <= memoryPosition + memory.limit()) {
+            return true;
+        }
+
+        // The segment is being scanned sequentially while each window starts where the previous window ended.
+        if (readahead.isEnabled()) {
+            sequentialReads = position == windowEnd ? sequentialReads + 1 : 0;
+            if (takePrefetch(position, length)) {
+                prefetch();
+                return true;
             }
+        }
 
-            // Read the checksum of the entry.
-            long checksum = memory.getInt() & 0xFFFFFFFFL;
-
-            // Compute the checksum for the entry bytes.
-            final Checksum crc32 = new CRC32();
-            crc32.update(memory.array(), memory.position(), length);
-
-            // If the stored checksum equals the computed checksum, return the entry.
-            if (checksum == crc32.getValue()) {
-                int limit = memory.limit();
-                memory.limit(memory.position() + length);
-                E entry = codec.decode(memory);
-                memory.limit(limit);
-                nextEntry = new Indexed<>(nextIndex, entry, length);
-            } else {
-                memory.reset().limit(memory.position());
-                nextEntry = null;
+        refilled = true;
+        final boolean sequential = sequentialReads >= SEQUENTIAL_READS;
+        ensureCapacity(sequential ? Math.max(length, readahead.size()) : length);
+        try {
+            memory.clear();
+            memoryPosition = position;
+            while (memory.hasRemaining()) {
+                if (channel.read(memory, memoryPosition + memory.position()) <= 0) {
+                    break;
+                }
             }
-        } catch (BufferUnderflowException e) {
-            memory.reset().limit(memory.position());
-            nextEntry = null;
+            memory.flip();
         } catch (IOException e) {
             throw new StorageException(e);
         }
+        if (readahead.isEnabled()) {
+            windowEnd = nextWindowPosition();
+            if (sequential) {
+                prefetch();
+            }
+        }
+        return memory.limit() >= length;
+    }
+
+    /**
+     * Trades the buffer for a larger one from the pool if it's smaller than the given capacity, or for another one if
+     * raw entries still reference it.
+     */
+    private void ensureCapacity(int capacity) {
+        if (memory.capacity() < capacity || !ownsMemory()) {
+            ByteBuffer buffer = bufferPool.acquire(Math.max(capacity, memory.capacity()));
+            releaseMemory();
+            memory = buffer;
+        }
+    }
+
+    /**
+     * Returns whether the reader holds the only reference to the buffer, taking the buffer back once the raw entries
+     * to which it was lent have all been released.
+     */
+    private boolean ownsMemory() {
+        if (lent != null) {
+            if (lent.isShared()) {
+                return false;
+            }
+            lent = null;
+        }
+        return true;
+    }
+
+    /**
+     * Releases the reader's reference to the buffer, returning it to the pool unless raw entries still reference it.
+     */
+    private void releaseMemory() {
+        if (lent != null) {
+            lent.release();
+            lent = null;
+        } else {
+            bufferPool.release(memory);
+        }
+    }
+
+    /**
+     * Returns the position at which the window following the buffered one starts.
+     * <p>
+     * The next window starts at the first entry that is not entirely held in the buffer. The entries are located by
+     * their lengths alone.
+     *
+     * @return the position of the next window, or {@code -1} if the buffered window holds the last entry
+     */
+    private long nextWindowPosition() {
+        final long end = memoryPosition + memory.limit();
+        long position = memoryPosition;
+        while (position + Integer.BYTES + Integer.BYTES <= end) {
+            final int length = memory.getInt((int) (position - memoryPosition));
+            if (length <= 0 || length > maxEntrySize) {
+                return -1;
+            }
+            if (position + Integer.BYTES + Integer.BYTES + length > end) {
+                break;
+            }
+            position += Integer.BYTES + Integer.BYTES + length;
+        }
+        return position;
+    }
+
+    /**
+     * Starts reading the window following the buffered one in the background.
+     */
+    private void prefetch() {
+        if (windowEnd < 0 || windowEnd >= segment.descriptor().maxSegmentSize()) {
+            return;
+        }
+        ByteBuffer buffer = bufferPool.acquire(memory.capacity());
+        CompletableFuture<ByteBuffer> prefetch = readahead.read(channel, buffer, windowEnd);
+        if (prefetch == null) {
+            bufferPool.release(buffer);
+            return;
+        }
+        this.prefetch = prefetch;
+        this.prefetchBuffer = buffer;
+        this.prefetchPosition = windowEnd;
+    }
+
+    /**
+     * Replaces the buffer with the prefetched window if it holds the given range.
+     * <p>
+     * A prefetched window is not considered refilled, since it may have been read before the entries following the
+     * last entry were written.
+     *
+     * @return indicates whether the prefetched window holds the given range
+     */
+    private boolean takePrefetch(long position, int length) {
+        if (prefetch == null) {
+            return false;
+        }
+        final long prefetchPosition = this.prefetchPosition;
+        ByteBuffer buffer = awaitPrefetch();
+        if (buffer == null) {
+            return false;
+        }
+        if (position != prefetchPosition || buffer.limit() < length) {
+            bufferPool.release(buffer);
+            return false;
+        }
+        releaseMemory();
+        memory = buffer;
+        memoryPosition = position;
+        windowEnd = nextWindowPosition();
+        return true;
+    }
+
+    /**
+     * Waits for the pending prefetch to complete.
+     *
+     * @return the prefetched window, or {@code null} if the prefetch failed
+     */
+    private ByteBuffer awaitPrefetch() {
+        ByteBuffer buffer = prefetchBuffer;
+        try {
+            prefetch.join();
+        } catch (RuntimeException e) {
+            bufferPool.release(buffer);
+            buffer = null;
+        }
+        prefetch = null;
+        prefetchBuffer = null;
+        return buffer;
+    }
 
+    /**
+     * Discards the pending prefetch, if any.
+     */
+    private void discardPrefetch() {
+        if (prefetch != null) {
+            ByteBuffer buffer = awaitPrefetch();
+            if (buffer != null) {
+                bufferPool.release(buffer);
+            }
+        }
     }
 
     @Override
     public void close() {
-
+        discardPrefetch();
+        ByteBuffer memory = this.memory;
+        if (memory.capacity() > 0) {
+            releaseMemory();
+            this.memory = CLOSED;
+        }
     }
 }
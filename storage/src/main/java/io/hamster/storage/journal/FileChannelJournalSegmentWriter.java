@@ -5,11 +5,12 @@ import io.hamster.storage.journal.index.JournalIndex;
 
 import java.io.IOException;
 import java.nio.BufferOverflowException;
-import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
-import java.util.zip.CRC32;
+import java.util.ArrayList;
+import java.util.List;
 
+import static com.google.common.base.Preconditions.checkState;
 
 /**
  * Segment writer.
@@ -23,16 +24,28 @@ import java.util.zip.CRC32;
  * <li>8-bit signed entry type ID</li>
  * <li>n-bit entry bytes</li>
  * </ul>
+ * Entries are staged in a direct buffer borrowed from the segment's {@link BufferPool}, so they are written to the
+ * channel without being copied into a temporary direct buffer first.
  */
-class FileChannelJournalSegmentWriter<E> implements JournalWriter<E> {
+class FileChannelJournalSegmentWriter<E> implements JournalSegmentWriter<E> {
+
+    private static final ByteBuffer CLOSED = ByteBuffer.allocate(0);
+    private static final int HEADER_BYTES = Integer.BYTES + Integer.BYTES;
 
     private final FileChannel channel;
     private final JournalSegment segment;
     private final int maxEntrySize;
     private final JournalIndex index;
-    private final ByteBuffer memory;
+    private final BufferPool bufferPool;
+    private final int maxBufferSize;
+    private ByteBuffer memory;
     private final JournalCodec<E> codec;
+    private final EntryChecksum entryChecksum;
+    private final int checksumSalt;
+    private final ByteBuffer zero = ByteBuffer.allocateDirect(HEADER_BYTES);
     private final long firstIndex;
+    private long lastIndex;
+    private int lastPosition = -1;
     private Indexed<E> lastEntry;
 
     FileChannelJournalSegmentWriter(
@@ -43,46 +56,129 @@ class FileChannelJournalSegmentWriter<E> implements JournalWriter<E> {
             JournalIndex index) {
         this.channel = channel;
         this.segment = segment;
+        this.entryChecksum = segment.descriptor().checksumType().newChecksum();
+        this.checksumSalt = segment.descriptor().checksumSalt();
         this.maxEntrySize = maxEntrySize;
         this.codec = codec;
         this.index = index;
         this.firstIndex = segment.index();
-        this.memory = ByteBuffer.allocate((maxEntrySize + Integer.BYTES + Integer.BYTES) * 2);
+        this.lastIndex = firstIndex - 1;
+        this.bufferPool = segment.bufferPool();
+        this.maxBufferSize = maxEntrySize + Integer.BYTES * 3;
+        this.memory = bufferPool.acquire(BufferPool.initialCapacity(maxEntrySize), true);
         reset(0);
     }
 
+    /**
+     * Creates a writer positioned after a known last entry, without scanning the segment.
+     */
+    FileChannelJournalSegmentWriter(
+            FileChannel channel,
+            JournalSegment segment,
+            JournalCodec<E> codec,
+            int maxEntrySize,
+            JournalIndex index,
+            long lastIndex,
+            int lastPosition,
+            int nextPosition) {
+        this.channel = channel;
+        this.segment = segment;
+        this.entryChecksum = segment.descriptor().checksumType().newChecksum();
+        this.checksumSalt = segment.descriptor().checksumSalt();
+        this.maxEntrySize = maxEntrySize;
+        this.codec = codec;
+        this.index = index;
+        this.firstIndex = segment.index();
+        this.lastIndex = lastIndex;
+        this.lastPosition = lastPosition;
+        this.bufferPool = segment.bufferPool();
+        this.maxBufferSize = maxEntrySize + Integer.BYTES * 3;
+        this.memory = bufferPool.acquire(BufferPool.initialCapacity(maxEntrySize), true);
+        try {
+            channel.position(nextPosition);
+        } catch (IOException e) {
+            throw new StorageException(e);
+        }
+    }
+
     @Override
     public long getLastIndex() {
-        return lastEntry != null ? lastEntry.index() : segment.index() - 1;
+        return lastIndex;
     }
 
     @Override
     public Indexed<E> getLastEntry() {
+        // The last entry is decoded lazily when the writer was restored without scanning the segment.
+        if (lastEntry == null && lastIndex >= firstIndex) {
+            lastEntry = readLastEntry();
+        }
         return lastEntry;
     }
 
     @Override
     public long getNextIndex() {
-        if (lastEntry != null) {
-            return lastEntry.index() + 1;
-        } else {
-            return firstIndex;
+        return lastIndex + 1;
+    }
+
+    @Override
+    public int getLastPosition() {
+        return lastPosition;
+    }
+
+    @Override
+    public int getNextPosition() {
+        try {
+            return (int) channel.position();
+        } catch (IOException e) {
+            throw new StorageException(e);
+        }
+    }
+
+    /**
+     * Reads and decodes the last entry in the segment.
+     */
+    private Indexed<E> readLastEntry() {
+        try {
+            final int size = getNextPosition() - lastPosition;
+            ensureCapacity(size);
+            memory.clear().limit(size);
+            while (memory.hasRemaining()) {
+                if (channel.read(memory, lastPosition + memory.position()) < 0) {
+                    break;
+                }
+            }
+            memory.flip();
+            final int length = memory.getInt();
+            memory.getInt();
+            memory.limit(memory.position() + length);
+            return new Indexed<>(lastIndex, codec.decode(memory), length);
+        } catch (IOException e) {
+            throw new StorageException(e);
         }
     }
 
     @Override
     public <T extends E> Indexed<T> append(T entry) {
+        checkOpen();
 
         // Store the entry index.
         final long index = getNextIndex();
 
-        memory.clear();
-        memory.position(Integer.BYTES + Integer.BYTES);
-
-        try {
-            codec.encode(entry, memory);
-        } catch (Exception e) {
-            throw new StorageException.TooLarge("Entry size exceeds maximum allowed bytes (" + maxEntrySize + ")");
+        // Retry with a larger buffer until the buffer can hold an entry of the maximum size.
+        while (true) {
+            memory.clear();
+            memory.position(Integer.BYTES + Integer.BYTES);
+            try {
+                codec.encode(entry, memory);
+                break;
+            } catch (BufferOverflowException e) {
+                if (memory.capacity() >= maxBufferSize) {
+                    throw new StorageException.TooLarge("Entry size exceeds maximum allowed bytes (" + maxEntrySize + ")");
+                }
+                ensureCapacity(memory.capacity() * 2);
+            } catch (Exception e) {
+                throw new StorageException.TooLarge("Entry size exceeds maximum allowed bytes (" + maxEntrySize + ")");
+            }
         }
 
         memory.flip();
@@ -100,17 +196,15 @@ class FileChannelJournalSegmentWriter<E> implements JournalWriter<E> {
                 throw new StorageException.TooLarge("Entry size " + length + " exceeds maximum allowed bytes (" + maxEntrySize + ")");
             }
 
-            final CRC32 crc32 = new CRC32();
-            crc32.update(memory.array(), Integer.BYTES + Integer.BYTES, length);
-            final long checkSum = crc32.getValue();
-
             memory.putInt(0, length);
-            memory.putInt(Integer.BYTES, (int) checkSum);
-            channel.write(memory);
+            memory.putInt(Integer.BYTES, checksum(Integer.BYTES + Integer.BYTES, length) ^ checksumSalt);
+            write(position);
 
             // Update the last entry with the correct index/term/length.
             Indexed<E> indexedEntry = new Indexed<>(index, entry, length);
             this.index.index(index, (int) position);
+            this.lastIndex = index;
+            this.lastPosition = (int) position;
             this.lastEntry = indexedEntry;
             return (Indexed<T>) indexedEntry;
         } catch (IOException e) {
@@ -118,90 +212,414 @@ class FileChannelJournalSegmentWriter<E> implements JournalWriter<E> {
         }
     }
 
+    /**
+     * Appends a batch of entries to the segment.
+     * <p>
+     * Entries are encoded and checksummed back to back in the write buffer and each filled buffer is written to the
+     * channel with a single write. If the segment fills up mid-batch, the entries that fit are appended and the
+     * returned list is shorter than {@code entries}.
+     *
+     * @throws BufferOverflowException if not even the first entry fits in the segment
+     */
+    @Override
+    public <T extends E> List<Indexed<T>> appendBatch(List<T> entries) {
+        checkOpen();
+        final List<Indexed<T>> appended = new ArrayList<>(entries.size());
+        final int maxSegmentSize = segment.descriptor().maxSegmentSize();
+        long nextIndex = getNextIndex();
+        int next = 0;
+        try {
+            long position = channel.position();
+            int[] offsets = new int[entries.size()];
+            int[] lengths = new int[entries.size()];
+            boolean full = false;
+            while (next < entries.size() && !full) {
+                // Encode as many entries as fit into the buffer and the remainder of the segment.
+                int first = next;
+                StorageException.TooLarge tooLarge = null;
+                memory.clear();
+                while (next < entries.size()) {
+                    int offset = memory.position();
+                    if (memory.remaining() < Integer.BYTES + Integer.BYTES) {
+                        break;
+                    }
+                    memory.position(offset + Integer.BYTES + Integer.BYTES);
+                    try {
+                        codec.encode(entries.get(next), memory);
+                    } catch (BufferOverflowException e) {
+                        memory.position(offset);
+                        if (offset > 0) {
+                            break;
+                        }
+                        if (memory.capacity() < maxBufferSize) {
+                            ensureCapacity(memory.capacity() * 2);
+                            continue;
+                        }
+                        tooLarge = new StorageException.TooLarge("Entry size exceeds maximum allowed bytes (" + maxEntrySize + ")");
+                        break;
+                    } catch (Exception e) {
+                        memory.position(offset);
+                        tooLarge = new StorageException.TooLarge("Entry size exceeds maximum allowed bytes (" + maxEntrySize + ")");
+                        break;
+                    }
+
+                    final int length = memory.position() - offset - (Integer.BYTES + Integer.BYTES);
+
+                    // Stop at the end of the segment, leaving the remaining entries to the caller.
+                    if (maxSegmentSize - position < memory.position()) {
+                        memory.position(offset);
+                        full = true;
+                        break;
+                    }
+
+                    // If the entry length exceeds the maximum entry size then stop and fail after the write.
+                    if (length > maxEntrySize) {
+                        memory.position(offset);
+                        tooLarge = new StorageException.TooLarge("Entry size " + length + " exceeds maximum allowed bytes (" + maxEntrySize + ")");
+                        break;
+                    }
+
+                    memory.putInt(offset, length);
+                    memory.putInt(offset + Integer.BYTES, checksum(offset + Integer.BYTES + Integer.BYTES, length) ^ checksumSalt);
+                    offsets[next] = offset;
+                    lengths[next] = length;
+                    next++;
+                }
+
+                if (next == 0 && full) {
+                    throw new BufferOverflowException();
+                }
+
+                if (next > first) {
+                    memory.flip();
+                    write(position);
+
+                    // Update the index and the last entry once the whole buffer is written.
+                    for (int i = first; i < next; i++) {
+                        Indexed<T> indexedEntry = new Indexed<>(nextIndex, entries.get(i), lengths[i]);
+                        this.index.index(nextIndex, (int) (position + offsets[i]));
+                        appended.add(indexedEntry);
+                        nextIndex++;
+                    }
+                    this.lastIndex = nextIndex - 1;
+                    this.lastPosition = (int) (position + offsets[next - 1]);
+                    this.lastEntry = (Indexed<E>) appended.get(appended.size() - 1);
+                    position = channel.position();
+                }
+
+                if (tooLarge != null) {
+                    throw tooLarge;
+                }
+            }
+            return appended;
+        } catch (IOException e) {
+            throw new StorageException(e);
+        }
+    }
+
+    /**
+     * Writes the contents of the memory buffer at the given position followed by a zeroed entry length, and moves the
+     * channel to the end of the written entries.
+     * <p>
+     * Zeroing the following length ensures stale entries left in a recycled segment file are never read as entries
+     * following the written ones.
+     */
+    private void write(long position) throws IOException {
+        final int end = memory.limit();
+        final long next = position + end;
+        final boolean zeroNext = next + Integer.BYTES <= segment.descriptor().maxSegmentSize();
+        if (zeroNext && memory.capacity() - end >= Integer.BYTES) {
+            memory.limit(end + Integer.BYTES);
+            memory.putInt(end, 0);
+            writeFully(memory, position);
+        } else {
+            writeFully(memory, position);
+            if (zeroNext) {
+                zero.clear().limit(Integer.BYTES);
+                writeFully(zero, next);
+            }
+        }
+        channel.position(next);
+    }
+
+    /**
+     * Computes the checksum of the given range of the memory buffer.
+     */
+    private int checksum(int offset, int length) {
+        final int position = memory.position();
+        final int limit = memory.limit();
+        memory.limit(offset + length).position(offset);
+        final int checksum = entryChecksum.compute(memory);
+        memory.limit(limit).position(position);
+        return checksum;
+    }
+
+    /**
+     * Checks that the writer has not been closed, since a closed writer no longer holds a buffer to encode entries in.
+     */
+    private void checkOpen() {
+        checkState(memory != CLOSED, "Segment writer is closed");
+    }
+
+    /**
+     * Trades the memory buffer for a larger one from the pool if it's smaller than the given capacity.
+     * <p>
+     * The contents of the buffer are not preserved.
+     */
+    private void ensureCapacity(int capacity) {
+        if (memory.capacity() < capacity) {
+            ByteBuffer buffer = bufferPool.acquire(capacity, true);
+            bufferPool.release(memory);
+            memory = buffer;
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
     @Override
     public void append(Indexed<E> entry) {
+        seek(entry.index());
+        append(entry.entry());
+    }
+
+    /**
+     * Prepares the writer for appending the entry at the given index.
+     */
+    private void seek(long index) {
         final long nextIndex = getNextIndex();
 
         // If the entry's index is greater than the next index in the segment, skip some entries.
-        if (entry.index() > nextIndex) {
+        if (index > nextIndex) {
             throw new IndexOutOfBoundsException("Entry index is not sequential");
         }
         // If the entry's index is less than the next index in the segment ,truncate the segment
-        if (entry.index() < nextIndex) {
-            truncate(entry.index() - 1);
+        if (index < nextIndex) {
+            truncate(index - 1);
         }
+    }
 
-        append(entry.entry());
+    @Override
+    public void appendRaw(long index, ByteBuffer entry) {
+        appendRaw(index, entry, false, 0);
     }
 
     @Override
-    public void reset(long index) {
-        long nextIndex = firstIndex;
+    public void appendRaw(RawEntry entry) {
+        appendRaw(entry.index(), entry.buffer(), true, entry.checksum());
+    }
+
+    /**
+     * Copies an encoded entry into the memory buffer and writes it to the segment, computing and optionally verifying
+     * its checksum.
+     */
+    private void appendRaw(long index, ByteBuffer entry, boolean verify, int expectedChecksum) {
+        checkOpen();
+        seek(index);
+
+        // If the entry length exceeds the maximum entry size then throw an exception.
+        final int length = entry.remaining();
+        if (length > maxEntrySize) {
+            throw new StorageException.TooLarge("Entry size " + length + " exceeds maximum allowed bytes (" + maxEntrySize + ")");
+        }
+
         try {
-            channel.position(JournalSegmentDescriptor.BYTES);
-            memory.clear();
+            // Ensure there's enough space left in the segment to store the entry.
+            final long position = channel.position();
+            if (segment.descriptor().maxSegmentSize() - position < length + HEADER_BYTES) {
+                throw new BufferOverflowException();
+            }
 
-            // Record the current buffer position.
-            long position = channel.position();
-            channel.read(memory);
-            channel.position(position);
+            ensureCapacity(length + HEADER_BYTES);
+            memory.clear();
+            memory.position(HEADER_BYTES);
+            memory.put(entry.duplicate());
             memory.flip();
 
-            memory.mark();
-            int length = memory.getInt();
-
-            // If the length is non-zero, read the entry.
-            while (length > 0 && length <= maxEntrySize && (index == 0 || nextIndex <= index)) {
-
-                // Read the checksum of the entry.
-                long checkSum = ((long) memory.getInt()) & 0xFFFFFFFFL;
-
-                // Compute the checksum for the entry bytes.
-                final CRC32 crc32 = new CRC32();
-                crc32.update(memory.array(), memory.position(), length);
-
-                // If the stored checksum equals the computed checksum, return the entry.
-                if (checkSum == crc32.getValue()) {
-                    int limit = memory.limit();
-                    memory.limit(memory.position() + length);
-                    E entry = codec.decode(memory);
-                    Indexed<E> indexedEntry = new Indexed<>(nextIndex, entry, length);
-                    memory.limit(limit);
-                    this.lastEntry = indexedEntry;
-                    this.index.index(nextIndex, (int) position);
-                    nextIndex++;
-                } else {
-                    break;
+            final int checksum = checksum(HEADER_BYTES, length);
+            if (verify && checksum != expectedChecksum) {
+                throw new StorageException.InvalidChecksum("Checksum mismatch for entry " + index);
+            }
+            memory.putInt(0, length);
+            memory.putInt(Integer.BYTES, checksum ^ checksumSalt);
+            write(position);
+
+            // The last entry is decoded lazily if it's requested.
+            this.index.index(index, (int) position);
+            this.lastIndex = index;
+            this.lastPosition = (int) position;
+            this.lastEntry = null;
+        } catch (IOException e) {
+            throw new StorageException(e);
+        }
+    }
+
+    /**
+     * Appends a batch of encoded entries to the segment.
+     * <p>
+     * Entries are copied and checksummed back to back in the write buffer and each filled buffer is written to the
+     * channel with a single write. If the segment fills up mid-batch, the entries that fit are appended and fewer
+     * entries than given are returned as appended.
+     *
+     * @throws BufferOverflowException if not even the first entry fits in the segment
+     */
+    @Override
+    public int appendRawBatch(List<RawEntry> entries) {
+        checkOpen();
+        if (entries.isEmpty()) {
+            return 0;
+        }
+        seek(entries.get(0).index());
+
+        final int maxSegmentSize = segment.descriptor().maxSegmentSize();
+        final long startIndex = getNextIndex();
+        int next = 0;
+        try {
+            long position = channel.position();
+            int[] offsets = new int[entries.size()];
+            boolean full = false;
+            while (next < entries.size() && !full) {
+                // Copy as many entries as fit into the buffer and the remainder of the segment.
+                int first = next;
+                RuntimeException failure = null;
+                memory.clear();
+                while (next < entries.size()) {
+                    final RawEntry entry = entries.get(next);
+                    final int offset = memory.position();
+                    final int length = entry.size();
+                    if (entry.index() != startIndex + next) {
+                        failure = new IndexOutOfBoundsException("Entry index is not sequential");
+                        break;
+                    }
+                    if (length > maxEntrySize) {
+                        failure = new StorageException.TooLarge("Entry size " + length + " exceeds maximum allowed bytes (" + maxEntrySize + ")");
+                        break;
+                    }
+
+                    // Stop at the end of the segment, leaving the remaining entries to the caller.
+                    if (maxSegmentSize - position < offset + HEADER_BYTES + length) {
+                        full = true;
+                        break;
+                    }
+
+                    // Write out the buffer once it's full, growing it only if it can't hold a single entry.
+                    if (memory.remaining() < HEADER_BYTES + length) {
+                        if (offset > 0) {
+                            break;
+                        }
+                        ensureCapacity(HEADER_BYTES + length);
+                        memory.clear();
+                    }
+
+                    memory.position(offset + HEADER_BYTES);
+                    memory.put(entry.buffer().duplicate());
+                    final int checksum = checksum(offset + HEADER_BYTES, length);
+                    if (checksum != entry.checksum()) {
+                        memory.position(offset);
+                        failure = new StorageException.InvalidChecksum("Checksum mismatch for entry " + entry.index());
+                        break;
+                    }
+                    memory.putInt(offset, length);
+                    memory.putInt(offset + Integer.BYTES, checksum ^ checksumSalt);
+                    offsets[next] = offset;
+                    next++;
                 }
-                // Update the current position for indexing.
-                position = channel.position() + memory.position();
 
-                // Read more bytes from the segment if necessary.
-                if (memory.remaining() < maxEntrySize) {
+                if (next == 0 && full) {
+                    throw new BufferOverflowException();
+                }
 
-                    memory.clear();
-                    channel.position(position);
-                    channel.read(memory);
-                    channel.position(position);
+                if (next > first) {
                     memory.flip();
+                    write(position);
+
+                    // Update the index and the last entry once the whole buffer is written.
+                    for (int i = first; i < next; i++) {
+                        this.index.index(startIndex + i, (int) (position + offsets[i]));
+                    }
+                    this.lastIndex = startIndex + next - 1;
+                    this.lastPosition = (int) (position + offsets[next - 1]);
+                    this.lastEntry = null;
+                    position = channel.position();
                 }
-                memory.mark();
 
-                length = memory.getInt();
+                if (failure != null) {
+                    throw failure;
+                }
             }
+            return next;
+        } catch (IOException e) {
+            throw new StorageException(e);
+        }
+    }
 
-            // Reset the buffer to the previous mark.
-            channel.position(channel.position() + memory.reset().position());
-        } catch (BufferUnderflowException fe) {
-            try {
-                channel.position(channel.position() + memory.reset().position());
-            } catch (IOException e) {
-                throw new StorageException(e);
+    @Override
+    public void reset(long index) {
+        long nextIndex = firstIndex;
+        lastIndex = firstIndex - 1;
+        lastPosition = -1;
+        lastEntry = null;
+        try {
+            // The memory buffer holds the segment from the current position onwards.
+            long position = JournalSegmentDescriptor.BYTES;
+            memory.clear().limit(0);
+            while (index == 0 || nextIndex <= index) {
+                // Read the length of the entry, reading more bytes from the segment if necessary.
+                if (memory.remaining() < Integer.BYTES + Integer.BYTES && !read(position, Integer.BYTES + Integer.BYTES)) {
+                    break;
+                }
+                final int length = memory.getInt(memory.position());
+                if (length <= 0 || length > maxEntrySize) {
+                    break;
+                }
+                if (memory.remaining() < Integer.BYTES + Integer.BYTES + length
+                        && !read(position, Integer.BYTES + Integer.BYTES + length)) {
+                    break;
+                }
+
+                // If the stored checksum, unsalted, equals the computed checksum, decode the entry.
+                final int start = memory.position();
+                final int checksum = memory.getInt(start + Integer.BYTES) ^ checksumSalt;
+                if (checksum != checksum(start + Integer.BYTES + Integer.BYTES, length)) {
+                    break;
+                }
+                ByteBuffer buffer = memory.duplicate();
+                buffer.limit(start + Integer.BYTES + Integer.BYTES + length).position(start + Integer.BYTES + Integer.BYTES);
+                E entry = codec.decode(buffer);
+                this.lastEntry = new Indexed<>(nextIndex, entry, length);
+                this.lastIndex = nextIndex;
+                this.lastPosition = (int) position;
+                this.index.index(nextIndex, (int) position);
+                nextIndex++;
+
+                // Update the current position for indexing.
+                position += Integer.BYTES + Integer.BYTES + length;
+                memory.position(start + Integer.BYTES + Integer.BYTES + length);
             }
+            channel.position(position);
         } catch (IOException e) {
             throw new StorageException(e);
         }
+    }
 
+    /**
+     * Reads the segment from the given position into the memory buffer, growing the buffer if necessary.
+     *
+     * @return indicates whether the given number of bytes could be read
+     */
+    private boolean read(long position, int length) throws IOException {
+        ensureCapacity(length);
+        memory.clear();
+        while (memory.hasRemaining()) {
+            if (channel.read(memory, position + memory.position()) <= 0) {
+                break;
+            }
+        }
+        memory.flip();
+        return memory.remaining() >= length;
     }
 
     @Override
@@ -212,41 +630,35 @@ class FileChannelJournalSegmentWriter<E> implements JournalWriter<E> {
         }
         // Reset the last entry.
         lastEntry = null;
+        lastIndex = firstIndex - 1;
+        lastPosition = -1;
         // Truncate the index.
         this.index.truncate(index);
         try {
             if (index < segment.index()) {
                 channel.position(JournalSegmentDescriptor.BYTES);
-                channel.write(zero());
-                channel.position(JournalSegmentDescriptor.BYTES);
             } else {
                 reset(index);
-                // Zero entries after the given index.
-                long position = channel.position();
-                channel.write(zero());
-                channel.position(position);
+            }
+
+            // Zero the header following the new last entry. Readers stop at the zeroed header, and each append zeroes
+            // the header following it, so the truncated entries are never read again.
+            final long position = channel.position();
+            if (segment.descriptor().maxSegmentSize() - position >= HEADER_BYTES) {
+                zero.clear();
+                writeFully(zero, position);
             }
         } catch (IOException e) {
             throw new StorageException(e);
         }
     }
 
-    /**
-     * Returns a zeroed out byte buffer.
-     */
-    private ByteBuffer zero() {
-        memory.clear();
-        for (int i = 0; i < memory.limit(); i++) {
-            memory.put(i, (byte) 0);
-        }
-        return memory;
-    }
-
     @Override
     public void flush() {
         try {
             if (channel.isOpen()) {
-                channel.force(true);
+                // Segment files are preallocated, so only the data needs to be synced.
+                channel.force(false);
             }
         } catch (IOException e) {
             throw new StorageException(e);
@@ -256,5 +668,10 @@ class FileChannelJournalSegmentWriter<E> implements JournalWriter<E> {
     @Override
     public void close() {
         flush();
+        ByteBuffer memory = this.memory;
+        if (memory.capacity() > 0) {
+            this.memory = CLOSED;
+            bufferPool.release(memory);
+        }
     }
 }
@@ -0,0 +1,134 @@
+package io.hamster.storage.journal;
+
+import java.time.Duration;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Journal flush policy.
+ * <p>
+ * The flush policy determines when entries written to the journal are flushed to disk. Segment files are preallocated,
+ * so flushing only syncs the segment data and not the file metadata. Regardless of the policy, a segment is always
+ * flushed when the journal rolls over to the next segment and when the journal is closed.
+ */
+public final class FlushPolicy {
+
+    /**
+     * Flush policy mode.
+     */
+    public enum Mode {
+        /**
+         * Flushes the journal each time entries are committed.
+         */
+        COMMIT,
+
+        /**
+         * Flushes the journal once a number of entries have been written since the last flush.
+         */
+        ENTRIES,
+
+        /**
+         * Flushes the journal periodically from a dedicated flusher thread.
+         */
+        PERIODIC,
+
+        /**
+         * Leaves flushing to the operating system.
+         */
+        NEVER,
+    }
+
+    private static final FlushPolicy ON_COMMIT = new FlushPolicy(Mode.COMMIT, 0, Duration.ZERO);
+    private static final FlushPolicy NEVER = new FlushPolicy(Mode.NEVER, 0, Duration.ZERO);
+
+    /**
+     * Returns a policy that flushes the journal each time entries are committed.
+     *
+     * @return the flush policy
+     */
+    public static FlushPolicy onCommit() {
+        return ON_COMMIT;
+    }
+
+    /**
+     * Returns a policy that flushes the journal once the given number of entries have been written since the last flush.
+     *
+     * @param entries the number of entries to write between flushes
+     * @return the flush policy
+     * @throws IllegalArgumentException if {@code entries} is not positive
+     */
+    public static FlushPolicy everyEntries(int entries) {
+        checkArgument(entries > 0, "entries must be positive");
+        return new FlushPolicy(Mode.ENTRIES, entries, Duration.ZERO);
+    }
+
+    /**
+     * Returns a policy that flushes the journal at the given interval from a dedicated flusher thread.
+     *
+     * @param interval the interval at which to flush the journal
+     * @return the flush policy
+     * @throws IllegalArgumentException if {@code interval} is not positive
+     */
+    public static FlushPolicy periodic(Duration interval) {
+        checkNotNull(interval, "interval cannot be null");
+        checkArgument(!interval.isNegative() && !interval.isZero(), "interval must be positive");
+        return new FlushPolicy(Mode.PERIODIC, 0, interval);
+    }
+
+    /**
+     * Returns a policy that leaves flushing the journal to the operating system.
+     *
+     * @return the flush policy
+     */
+    public static FlushPolicy never() {
+        return NEVER;
+    }
+
+    private final Mode mode;
+    private final int entries;
+    private final Duration interval;
+
+    private FlushPolicy(Mode mode, int entries, Duration interval) {
+        this.mode = mode;
+        this.entries = entries;
+        this.interval = interval;
+    }
+
+    /**
+     * Returns the flush policy mode.
+     *
+     * @return the flush policy mode
+     */
+    public Mode mode() {
+        return mode;
+    }
+
+    /**
+     * Returns the number of entries to write between flushes for the {@link Mode#ENTRIES} mode.
+     *
+     * @return the number of entries to write between flushes
+     */
+    public int entries() {
+        return entries;
+    }
+
+    /**
+     * Returns the flush interval for the {@link Mode#PERIODIC} mode.
+     *
+     * @return the flush interval
+     */
+    public Duration interval() {
+        return interval;
+    }
+
+    @Override
+    public String toString() {
+        return toStringHelper(this)
+                .add("mode", mode)
+                .add("entries", entries)
+                .add("interval", interval)
+                .toString();
+    }
+}
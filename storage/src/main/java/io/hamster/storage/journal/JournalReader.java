@@ -1,6 +1,7 @@
 package io.hamster.storage.journal;
 
 import java.util.Iterator;
+import java.util.function.Consumer;
 
 public interface JournalReader<E> extends Iterator<Indexed<E>>, AutoCloseable {
 
@@ -64,6 +65,40 @@ public interface JournalReader<E> extends Iterator<Indexed<E>>, AutoCloseable {
     @Override
     Indexed<E> next();
 
+    /**
+     * Returns the next entry in the reader without decoding it.
+     * <p>
+     * The returned entry's buffer is not copied, but remains valid as the reader is advanced, reset or closed. Its
+     * contents are only guaranteed until the entry is truncated or compacted from the journal. The entry should be
+     * {@link RawEntry#release() released} once it's no longer used, so a pooled buffer can be reused.
+     *
+     * @return The next raw entry in the reader.
+     */
+    RawEntry nextRaw();
+
+    /**
+     * Reads a batch of entries, passing each entry to the given consumer.
+     * <p>
+     * Reading stops once {@code maxEntries} entries have been read, once the total size of the read entries reaches
+     * {@code maxBytes}, or once no next entry is available, so the last entry of a batch may exceed the byte limit.
+     *
+     * @param maxEntries The maximum number of entries to read.
+     * @param maxBytes   The number of bytes after which to stop reading.
+     * @param consumer   The consumer to which to pass the read entries.
+     * @return The number of entries read.
+     */
+    default int readBatch(int maxEntries, int maxBytes, Consumer<Indexed<E>> consumer) {
+        int entries = 0;
+        long bytes = 0;
+        while (entries < maxEntries && bytes < maxBytes && hasNext()) {
+            Indexed<E> entry = next();
+            consumer.accept(entry);
+            entries++;
+            bytes += entry.size();
+        }
+        return entries;
+    }
+
     /**
      * Resets the reader to the start.
      */
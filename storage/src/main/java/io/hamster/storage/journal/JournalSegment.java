@@ -2,53 +2,169 @@ package io.hamster.storage.journal;
 
 import com.google.common.collect.Sets;
 import io.hamster.storage.StorageException;
-import io.hamster.storage.journal.index.JournalIndex;
-import io.hamster.storage.journal.index.SparseJournalIndex;
+import io.hamster.storage.StorageLevel;
+import io.hamster.storage.journal.index.SparseArrayJournalIndex;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.google.common.base.MoreObjects.toStringHelper;
 import static com.google.common.base.Preconditions.checkState;
 
+/**
+ * Journal segment.
+ * <p>
+ * Sealed segments are loaded lazily: the segment's writer, channel and readers are only opened once the segment is
+ * read, and may be closed again once the segment has been idle for some time. The tail of a sealed segment is recovered
+ * from the footer written when the segment was sealed, which has the following format:
+ * <ul>
+ * <li>32-bit marker {@code -1}, which readers treat as the end of the segment</li>
+ * <li>64-bit last index in the segment</li>
+ * <li>32-bit position of the last entry in the segment</li>
+ * </ul>
+ * <p>
+ * Sealing a segment only snapshots its tail on the writing thread. The checksum of the segment's entries is computed
+ * and the index file, footer and descriptor are written and forced by the given executor, and a seal that hasn't been
+ * persisted yet is abandoned if the segment is unsealed or closed in the meantime.
+ */
 public class JournalSegment<E> implements AutoCloseable {
 
+    private static final int FOOTER_MARKER = -1;
+    private static final int FOOTER_BYTES = Integer.BYTES + Long.BYTES + Integer.BYTES;
+
     private final JournalSegmentFile file;
     private final JournalSegmentDescriptor descriptor;
+    private final StorageLevel storageLevel;
     private final JournalCodec<E> codec;
-    private final JournalIndex index;
-
+    private final SparseArrayJournalIndex index;
+    private final BufferPool bufferPool;
+    private final Readahead readahead;
+    private final Object sealLock = new Object();
+    private long sealVersion;
+    private volatile CompletableFuture<Void> sealed = CompletableFuture.completedFuture(null);
 
-    private final MappableJournalSegmentWriter<E> writer;
+    private volatile MappableJournalSegmentWriter<E> writer;
     private final Set<MappableJournalSegmentReader<E>> readers = Sets.newConcurrentHashSet();
     private final AtomicInteger references = new AtomicInteger();
+    private volatile CompletableFuture<Void> released;
     private final int maxEntrySize;
     private boolean open = true;
 
+    // The tail of the segment while the segment's writer is not loaded.
+    private long lastIndex;
+    private int lastPosition;
+    private int nextPosition;
+    private volatile long lastAccessed = System.currentTimeMillis();
+
     public JournalSegment(
             JournalSegmentFile file,
             JournalSegmentDescriptor descriptor,
+            StorageLevel storageLevel,
             JournalCodec<E> codec,
             double indexDensity,
             int maxEntrySize) {
+        this(file, descriptor, storageLevel, codec, indexDensity, maxEntrySize,
+                new BufferPool(false), Readahead.DISABLED, null);
+    }
+
+    /**
+     * Creates a segment.
+     * <p>
+     * If the tail of the segment can be recovered from the segment's footer or from the given index file, the segment
+     * is loaded lazily. Otherwise the segment is scanned immediately.
+     */
+    JournalSegment(
+            JournalSegmentFile file,
+            JournalSegmentDescriptor descriptor,
+            StorageLevel storageLevel,
+            JournalCodec<E> codec,
+            double indexDensity,
+            int maxEntrySize,
+            BufferPool bufferPool,
+            Readahead readahead,
+            JournalSegmentIndexFile indexFile) {
         this.file = file;
+        this.bufferPool = bufferPool;
+        this.readahead = readahead;
         this.descriptor = descriptor;
+        this.storageLevel = storageLevel;
         this.codec = codec;
         this.maxEntrySize = maxEntrySize;
-        this.index = new SparseJournalIndex(indexDensity);
-        this.writer = new MappableJournalSegmentWriter<>(openChannel(), this, codec, this.index, maxEntrySize);
+        this.index = new SparseArrayJournalIndex(indexDensity);
+        if (readFooter()) {
+            if (indexFile != null && indexFile.lastIndex() == lastIndex) {
+                indexFile.copyTo(this.index);
+            }
+        } else if (indexFile != null) {
+            indexFile.copyTo(this.index);
+            this.lastIndex = indexFile.lastIndex();
+            this.lastPosition = indexFile.lastPosition();
+            this.nextPosition = indexFile.nextPosition();
+        } else {
+            this.writer = new MappableJournalSegmentWriter<>(openChannel(), this, codec, this.index, maxEntrySize);
+        }
+    }
+
+    /**
+     * Reads the tail of the segment from the footer of a sealed segment.
+     *
+     * @return indicates whether the footer was read
+     */
+    private boolean readFooter() {
+        final int footer = descriptor.footer();
+        if (!descriptor.sealed() || footer < JournalSegmentDescriptor.BYTES) {
+            return false;
+        }
+
+        try (FileChannel channel = openChannel()) {
+            ByteBuffer buffer = ByteBuffer.allocate(FOOTER_BYTES);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, footer + buffer.position()) < 0) {
+                    return false;
+                }
+            }
+            buffer.flip();
+            if (buffer.getInt() != FOOTER_MARKER) {
+                return false;
+            }
+            final long lastIndex = buffer.getLong();
+            final int lastPosition = buffer.getInt();
+            if (!JournalSegmentIndexFile.isTail(descriptor, channel, maxEntrySize, lastIndex, lastPosition, footer)) {
+                return false;
+            }
+            this.lastIndex = lastIndex;
+            this.lastPosition = lastPosition;
+            this.nextPosition = footer;
+            return true;
+        } catch (IOException e) {
+            throw new StorageException(e);
+        }
     }
 
     @Override
-    public void close() {
-        writer.close();
+    public synchronized void close() {
+        MappableJournalSegmentWriter<E> writer = this.writer;
+        if (writer != null) {
+            writer.close();
+        }
         readers.forEach(reader -> reader.close());
-        open = false;
+        synchronized (sealLock) {
+            open = false;
+        }
+        CompletableFuture<Void> released = this.released;
+        if (released != null) {
+            released.complete(null);
+        }
     }
 
     /**
@@ -58,22 +174,69 @@ public class JournalSegment<E> implements AutoCloseable {
      */
     public MappableJournalSegmentWriter<E> writer() {
         checkOpen();
+        return load();
+    }
+
+    /**
+     * Loads the segment's writer, restoring it from the tail of the segment if it is not already loaded.
+     *
+     * @return the segment writer
+     */
+    private synchronized MappableJournalSegmentWriter<E> load() {
+        lastAccessed = System.currentTimeMillis();
+        MappableJournalSegmentWriter<E> writer = this.writer;
+        if (writer == null) {
+            writer = new MappableJournalSegmentWriter<>(openChannel(), this, codec, this.index, maxEntrySize,
+                    lastIndex, lastPosition, nextPosition);
+            this.writer = writer;
+        }
         return writer;
     }
 
+    /**
+     * Returns whether the segment's writer is loaded.
+     *
+     * @return indicates whether the segment's writer is loaded
+     */
+    boolean isLoaded() {
+        return writer != null;
+    }
+
+    /**
+     * Closes the segment's writer and channel if the segment is sealed and has been idle for the given time.
+     * <p>
+     * The segment is loaded again the next time it is read.
+     *
+     * @param idleTimeout the time in milliseconds after which an idle segment is closed
+     * @return indicates whether the segment was closed
+     */
+    synchronized boolean closeIfIdle(long idleTimeout) {
+        MappableJournalSegmentWriter<E> writer = this.writer;
+        if (writer == null
+                || !open
+                || !descriptor.sealed()
+                || references.get() > 0
+                || !readers.isEmpty()
+                || System.currentTimeMillis() - lastAccessed < idleTimeout) {
+            return false;
+        }
+        this.lastIndex = writer.getLastIndex();
+        this.lastPosition = writer.getLastPosition();
+        this.nextPosition = writer.getNextPosition();
+        this.writer = null;
+        writer.close();
+        return true;
+    }
+
     /**
      * Creates a new segment reader.
      *
      * @return A new segment reader.
      */
-    MappableJournalSegmentReader<E> createReader() {
+    synchronized MappableJournalSegmentReader<E> createReader() {
         checkOpen();
-        MappableJournalSegmentReader reader = new MappableJournalSegmentReader(openChannel(), this,
+        MappableJournalSegmentReader<E> reader = new MappableJournalSegmentReader<>(this, load().buffer(),
                 codec, this.index, maxEntrySize);
-        MappedByteBuffer buffer = writer.buffer();
-        if (buffer != null) {
-            //reader.map(buffer);
-        }
         readers.add(reader);
         return reader;
     }
@@ -91,8 +254,9 @@ public class JournalSegment<E> implements AutoCloseable {
      * Acquires a reference to the log segment.
      */
     void acquire() {
+        lastAccessed = System.currentTimeMillis();
         if (references.getAndIncrement() == 0 && open) {
-            //map();
+            map();
         }
     }
 
@@ -100,12 +264,56 @@ public class JournalSegment<E> implements AutoCloseable {
      * Releases a reference to the log segment.
      */
     void release() {
-        if (references.decrementAndGet() == 0 && open) {
-            //unmap();
+        if (references.decrementAndGet() == 0) {
+            if (open) {
+                unmap();
+            }
+            CompletableFuture<Void> released = this.released;
+            if (released != null) {
+                released.complete(null);
+            }
+        }
+    }
+
+    /**
+     * Returns a future to be completed once no references to the segment are held or the segment is closed.
+     *
+     * @return a future to be completed once the segment is released
+     */
+    synchronized CompletableFuture<Void> whenReleased() {
+        CompletableFuture<Void> released = this.released;
+        if (released == null) {
+            released = new CompletableFuture<>();
+            this.released = released;
         }
+        if (references.get() == 0 || !open) {
+            released.complete(null);
+        }
+        return released;
     }
 
-    private FileChannel openChannel() {
+    /**
+     * Maps the log segment into memory.
+     */
+    private synchronized void map() {
+        if (storageLevel == StorageLevel.MAPPED && open) {
+            MappedByteBuffer buffer = load().map();
+            readers.forEach(reader -> reader.map(buffer));
+        }
+    }
+
+    /**
+     * Unmaps the log segment from memory.
+     */
+    private synchronized void unmap() {
+        MappableJournalSegmentWriter<E> writer = this.writer;
+        if (storageLevel == StorageLevel.MAPPED && open && writer != null) {
+            writer.unmap();
+            readers.forEach(reader -> reader.unmap());
+        }
+    }
+
+    FileChannel openChannel() {
         try {
             return FileChannel.open(this.file.file().toPath(), StandardOpenOption.CREATE,
                     StandardOpenOption.READ, StandardOpenOption.WRITE);
@@ -114,6 +322,133 @@ public class JournalSegment<E> implements AutoCloseable {
         }
     }
 
+    /**
+     * Seals the segment, persisting its index on the given executor.
+     *
+     * @param executor the executor on which to persist the segment's index
+     * @param listener the listener to notify once the segment's index has been persisted
+     * @return a future to be completed once the segment's index has been persisted
+     */
+    synchronized CompletableFuture<Void> sealAsync(Executor executor, JournalSegmentListener listener) {
+        CompletableFuture<Void> sealed = CompletableFuture.runAsync(sealTask(listener), executor);
+        this.sealed = sealed;
+        return sealed;
+    }
+
+    /**
+     * Returns a future to be completed once the last seal of the segment has been persisted or abandoned.
+     *
+     * @return a future to be completed once the segment's last seal is done
+     */
+    CompletableFuture<Void> whenSealed() {
+        return sealed;
+    }
+
+    /**
+     * Snapshots the tail of the segment and returns a task persisting it.
+     */
+    private Runnable sealTask(JournalSegmentListener listener) {
+        MappableJournalSegmentWriter<E> writer = load();
+        final long lastIndex = writer.getLastIndex();
+        final int lastPosition = writer.getLastPosition();
+        final int nextPosition = writer.getNextPosition();
+        final long version;
+        synchronized (sealLock) {
+            version = ++sealVersion;
+        }
+        return () -> persistSeal(version, lastIndex, lastPosition, nextPosition, listener);
+    }
+
+    /**
+     * Writes the index file, footer and descriptor of a sealed segment, unless the segment has been unsealed or closed
+     * since it was sealed. The listener is notified while the seal lock is held, so the segment can't be unsealed before
+     * the listener returns.
+     */
+    private void persistSeal(
+            long version,
+            long lastIndex,
+            int lastPosition,
+            int nextPosition,
+            JournalSegmentListener listener) {
+        synchronized (sealLock) {
+            if (!open || version != sealVersion) {
+                return;
+            }
+            try (FileChannel channel = openChannel()) {
+                JournalSegmentIndexFile.write(file.indexFile(), descriptor,
+                        JournalSegmentIndexFile.checksum(channel, nextPosition),
+                        index, lastIndex, lastPosition, nextPosition);
+
+                // Write the footer if it fits in the segment.
+                // Segments without a footer are recovered from the index file.
+                int footer = 0;
+                if (descriptor.maxSegmentSize() - nextPosition >= FOOTER_BYTES) {
+                    ByteBuffer buffer = ByteBuffer.allocate(FOOTER_BYTES);
+                    buffer.putInt(FOOTER_MARKER);
+                    buffer.putLong(lastIndex);
+                    buffer.putInt(lastPosition);
+                    buffer.flip();
+                    write(channel, buffer, nextPosition);
+                    footer = nextPosition;
+                }
+                channel.force(true);
+
+                // Only mark the segment sealed once the footer is durable.
+                descriptor.seal(footer);
+                writeDescriptor(channel);
+            } catch (IOException e) {
+                throw new StorageException(e);
+            }
+            if (listener != null) {
+                listener.onSealed(descriptor.index(), lastIndex);
+            }
+        }
+    }
+
+    /**
+     * Unseals the segment before the segment is written again, clearing its footer and deleting its persisted index.
+     * <p>
+     * A seal that hasn't been persisted yet is abandoned, and one being persisted is waited for.
+     */
+    synchronized void unseal() {
+        synchronized (sealLock) {
+            sealVersion++;
+            try {
+                if (descriptor.sealed()) {
+                    try (FileChannel channel = openChannel()) {
+                        final int footer = descriptor.footer();
+                        descriptor.unseal();
+                        writeDescriptor(channel);
+                        if (footer > 0) {
+                            write(channel, ByteBuffer.allocate(FOOTER_BYTES), footer);
+                            channel.force(true);
+                        }
+                    }
+                }
+                Files.deleteIfExists(file.indexFile().toPath());
+            } catch (IOException e) {
+                throw new StorageException(e);
+            }
+        }
+    }
+
+    /**
+     * Writes the segment descriptor to the head of the segment.
+     */
+    private void writeDescriptor(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(JournalSegmentDescriptor.BYTES);
+        descriptor.copyTo(buffer);
+        buffer.flip();
+        write(channel, buffer, 0);
+        channel.force(true);
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
     /**
      * Returns the segment descriptor.
      *
@@ -123,6 +458,24 @@ public class JournalSegment<E> implements AutoCloseable {
         return descriptor;
     }
 
+    /**
+     * Returns the pool from which the segment's readers and writer borrow their buffers.
+     *
+     * @return The segment buffer pool.
+     */
+    BufferPool bufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * Returns the readahead used by the segment's readers for sequential scans.
+     *
+     * @return The segment readahead.
+     */
+    Readahead readahead() {
+        return readahead;
+    }
+
     /**
      * Returns the segment ID.
      *
@@ -163,7 +516,8 @@ public class JournalSegment<E> implements AutoCloseable {
      * @return The last index in the segment.
      */
     public long lastIndex() {
-        return writer.getLastIndex();
+        MappableJournalSegmentWriter<E> writer = this.writer;
+        return writer != null ? writer.getLastIndex() : lastIndex;
     }
 
     /**
@@ -175,12 +529,27 @@ public class JournalSegment<E> implements AutoCloseable {
         return open;
     }
 
+    /**
+     * Moves the segment file to the given file so it can be reused by another segment, and deletes the index file.
+     *
+     * @param target the file to which to move the segment file
+     */
+    void recycle(File target) {
+        try {
+            Files.move(file.file().toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            Files.deleteIfExists(file.indexFile().toPath());
+        } catch (IOException e) {
+            throw new StorageException(e);
+        }
+    }
+
     /**
      * Deletes the segment.
      */
     public void delete(){
         try {
             Files.deleteIfExists(file.file().toPath());
+            Files.deleteIfExists(file.indexFile().toPath());
         } catch (IOException e) {
             throw new StorageException(e);
         }
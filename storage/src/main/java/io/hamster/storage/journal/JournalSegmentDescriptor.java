@@ -28,10 +28,16 @@ import static com.google.common.base.Preconditions.checkNotNull;
  * When the segment is first constructed, the {@code updated} time is {@code 0}. Once all entries in the segment have
  * been committed, the {@code updated} time should be set to the current time. Log compaction should not result in a
  * change to {@code updated}.</li>
- * <li>{@code locked} (8-bit boolean) - A boolean indicating whether the segment is locked. Segments will be locked once
- * all entries have been committed to the segment. The lock state of each segment is used to determine log compaction
- * and recovery behavior.</li>
+ * <li>{@code locked} (8-bit boolean) - A boolean indicating whether the segment is sealed. Segments are sealed once the
+ * journal rolls over to the next segment, after which no more entries are written to the segment. Sealed segments are
+ * opened lazily on recovery.</li>
+ * <li>{@code footer} (32-bit signed integer) - The position of the footer written to the segment when it was sealed, or
+ * {@code 0} if the segment has no footer.</li>
+ * <li>{@code checksumType} (8-bit signed integer) - The {@link ChecksumType} with which the checksums of the segment's
+ * entries are computed. Segments of version {@code 1} predate this field and use {@link ChecksumType#CRC32}.</li>
  * </ul>
+ * From version {@code 3}, the checksums stored with the segment's entries are salted with a value derived from the
+ * segment's {@code id} and {@code index}. See {@link #checksumSalt()}.
  * The remainder of the 64 segment header bytes are reserved for future metadata.
  *
  */
@@ -40,7 +46,7 @@ public final class JournalSegmentDescriptor {
 
     // Current segment version.
     @VisibleForTesting
-    static final int VERSION = 1;
+    static final int VERSION = 3;
 
     // The lengths of each field in the header.
     private static final int VERSION_LENGTH = Integer.BYTES;     // 32-bit signed integer
@@ -49,6 +55,8 @@ public final class JournalSegmentDescriptor {
     private static final int MAX_SIZE_LENGTH = Integer.BYTES;    // 32-bit signed integer
     private static final int MAX_ENTRIES_LENGTH = Integer.BYTES; // 32-bit signed integer
     private static final int UPDATED_LENGTH = Long.BYTES;        // 64-bit signed integer
+    private static final int LOCKED_LENGTH = Byte.BYTES;         // 8-bit boolean
+    private static final int FOOTER_LENGTH = Integer.BYTES;      // 32-bit signed integer
 
     // The positions of each field in the header.
     private static final int VERSION_POSITION = 0;                                         // 0
@@ -57,6 +65,9 @@ public final class JournalSegmentDescriptor {
     private static final int MAX_SIZE_POSITION = INDEX_POSITION + INDEX_LENGTH;            // 20
     private static final int MAX_ENTRIES_POSITION = MAX_SIZE_POSITION + MAX_SIZE_LENGTH;   // 24
     private static final int UPDATED_POSITION = MAX_ENTRIES_POSITION + MAX_ENTRIES_LENGTH; // 28
+    private static final int LOCKED_POSITION = UPDATED_POSITION + UPDATED_LENGTH;          // 36
+    private static final int FOOTER_POSITION = LOCKED_POSITION + LOCKED_LENGTH;            // 37
+    private static final int CHECKSUM_TYPE_POSITION = FOOTER_POSITION + FOOTER_LENGTH;     // 41
 
     /**
      * Returns a descriptor builder.
@@ -88,6 +99,9 @@ public final class JournalSegmentDescriptor {
     private final int maxEntries;
     private volatile long updated;
     private volatile boolean locked;
+    private volatile int footer;
+    private final ChecksumType checksumType;
+    private final int checksumSalt;
 
     /**
      * @throws NullPointerException if {@code buffer} is null
@@ -101,6 +115,19 @@ public final class JournalSegmentDescriptor {
         this.maxEntries = buffer.getInt();
         this.updated = buffer.getLong();
         this.locked = buffer.get() == 1;
+        this.footer = buffer.getInt();
+        this.checksumType = version >= 2 ? ChecksumType.forId(buffer.get()) : ChecksumType.CRC32;
+        this.checksumSalt = version >= 3 ? salt(id, index) : 0;
+    }
+
+    /**
+     * Mixes the segment identifier and index into a 32-bit salt.
+     */
+    private static int salt(long id, long index) {
+        long hash = id * 0x9E3779B97F4A7C15L + index;
+        hash = (hash ^ (hash >>> 33)) * 0xFF51AFD7ED558CCDL;
+        hash = (hash ^ (hash >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return (int) (hash ^ (hash >>> 33));
     }
 
     /**
@@ -169,6 +196,70 @@ public final class JournalSegmentDescriptor {
         return updated;
     }
 
+    /**
+     * Returns whether the segment is sealed.
+     * <p>
+     * Once a segment is sealed no more entries are written to it until it is unsealed, e.g. by a truncation.
+     *
+     * @return Indicates whether the segment is sealed.
+     */
+    public boolean sealed() {
+        return locked;
+    }
+
+    /**
+     * Returns the position of the segment footer.
+     *
+     * @return The position of the footer written when the segment was sealed, or {@code 0} if the segment has no footer.
+     */
+    public int footer() {
+        return footer;
+    }
+
+    /**
+     * Returns the type of the checksums of the segment's entries.
+     *
+     * @return The segment checksum type.
+     */
+    public ChecksumType checksumType() {
+        return checksumType;
+    }
+
+    /**
+     * Returns the salt of the checksums stored with the segment's entries.
+     * <p>
+     * Each entry is stored with its checksum XORed with the salt. A recycled segment file still holds the entries of
+     * the segment that was deleted, and since the salt differs between segments, those entries don't validate as
+     * entries of the segment reusing the file. Segments of version {@code 2} and earlier aren't salted.
+     *
+     * @return The checksum salt.
+     */
+    public int checksumSalt() {
+        return checksumSalt;
+    }
+
+    /**
+     * Marks the segment as sealed with a footer at the given position.
+     *
+     * @param footer the position of the segment footer, or {@code 0} if the segment has no footer
+     */
+    void seal(int footer) {
+        buffer.put(LOCKED_POSITION, (byte) 1);
+        buffer.putInt(FOOTER_POSITION, footer);
+        this.footer = footer;
+        this.locked = true;
+    }
+
+    /**
+     * Marks the segment as unsealed.
+     */
+    void unseal() {
+        buffer.put(LOCKED_POSITION, (byte) 0);
+        buffer.putInt(FOOTER_POSITION, 0);
+        this.locked = false;
+        this.footer = 0;
+    }
+
     /**
      * Writes an update to the descriptor.
      */
@@ -190,6 +281,10 @@ public final class JournalSegmentDescriptor {
         buffer.putInt(maxEntries);
         buffer.putLong(updated);
         buffer.put(locked ? (byte) 1 : (byte) 0);
+        buffer.putInt(footer);
+        if (version >= 2) {
+            buffer.put((byte) checksumType.id());
+        }
         return this;
     }
 
@@ -200,6 +295,8 @@ public final class JournalSegmentDescriptor {
                 .add("id", id)
                 .add("index", index)
                 .add("updated", updated)
+                .add("sealed", locked)
+                .add("checksumType", checksumType)
                 .toString();
     }
 
@@ -212,6 +309,7 @@ public final class JournalSegmentDescriptor {
         private Builder(ByteBuffer buffer) {
             this.buffer = checkNotNull(buffer, "buffer cannot be null");
             buffer.putInt(VERSION_POSITION, VERSION);
+            buffer.put(CHECKSUM_TYPE_POSITION, (byte) ChecksumType.CRC32.id());
         }
 
         /**
@@ -260,6 +358,17 @@ public final class JournalSegmentDescriptor {
             return this;
         }
 
+        /**
+         * Sets the type of the checksums of the segment's entries.
+         *
+         * @param checksumType The segment checksum type.
+         * @return The segment descriptor builder.
+         */
+        public Builder withChecksumType(ChecksumType checksumType) {
+            buffer.put(CHECKSUM_TYPE_POSITION, (byte) checkNotNull(checksumType, "checksumType cannot be null").id());
+            return this;
+        }
+
         /**
          * Builds the segment descriptor.
          *
@@ -11,6 +11,9 @@ public class JournalSegmentFile {
     private static final char PART_SEPARATOR = '-';
     private static final char EXTENSION_SEPARATOR = '.';
     private static final String EXTENSION = "log";
+    private static final String INDEX_EXTENSION = "idx";
+    private static final String STANDBY_EXTENSION = "standby";
+    private static final String FREE_EXTENSION = "free";
     private final File file;
 
     /**
@@ -30,6 +33,39 @@ public class JournalSegmentFile {
      * @throws NullPointerException if {@code file} is null
      */
     public static boolean isSegmentFile(String journalName, String fileName) {
+        return isJournalFile(journalName, fileName, EXTENSION);
+    }
+
+    /**
+     * Returns a boolean value indicating whether the given file appears to be a segment index file.
+     *
+     * @throws NullPointerException if {@code file} is null
+     */
+    public static boolean isIndexFile(String name, File file) {
+        return isIndexFile(name, file.getName());
+    }
+
+    /**
+     * Returns a boolean value indicating whether the given file appears to be a segment index file.
+     *
+     * @param journalName the name of the journal
+     * @param fileName    the name of the file to check
+     * @throws NullPointerException if {@code file} is null
+     */
+    public static boolean isIndexFile(String journalName, String fileName) {
+        return isJournalFile(journalName, fileName, INDEX_EXTENSION);
+    }
+
+    /**
+     * Returns a boolean value indicating whether the given file appears to be a free segment file.
+     *
+     * @throws NullPointerException if {@code file} is null
+     */
+    public static boolean isFreeFile(String name, File file) {
+        return isJournalFile(name, file.getName(), FREE_EXTENSION);
+    }
+
+    private static boolean isJournalFile(String journalName, String fileName, String extension) {
         checkNotNull(journalName, "journalName cannot be null");
         checkNotNull(fileName, "fileName cannot be null");
 
@@ -39,7 +75,7 @@ public class JournalSegmentFile {
         if (extensionSeparator == -1
                 || partSeparator == -1
                 || extensionSeparator < partSeparator
-                || !fileName.endsWith(EXTENSION)) {
+                || !fileName.endsWith(extension)) {
             return false;
         }
 
@@ -59,6 +95,46 @@ public class JournalSegmentFile {
         return new File(directory, String.format("%s-%d.log", checkNotNull(name, "name cannot be null"), id));
     }
 
+    /**
+     * Creates a free segment file for the given directory, log name, and sequence number.
+     * <p>
+     * Free segment files hold the files of deleted segments until they are reused for new segments.
+     */
+    static File createFreeFile(String name, File directory, long sequence) {
+        return new File(directory, String.format("%s-%d.free", checkNotNull(name, "name cannot be null"), sequence));
+    }
+
+    /**
+     * Returns the sequence number of the given free segment file.
+     */
+    static long freeFileSequence(File file) {
+        String fileName = file.getName();
+        return Long.parseLong(fileName.substring(
+                fileName.lastIndexOf(PART_SEPARATOR) + 1, fileName.lastIndexOf(EXTENSION_SEPARATOR)));
+    }
+
+    /**
+     * Returns a boolean value indicating whether the given file is the standby segment file for the given journal.
+     *
+     * @throws NullPointerException if {@code file} is null
+     */
+    public static boolean isStandbyFile(String name, File file) {
+        return file.getName().equals(standbyFileName(checkNotNull(name, "name cannot be null")));
+    }
+
+    /**
+     * Creates the standby segment file for the given directory and log name.
+     * <p>
+     * The standby file is allocated ahead of time and renamed to the next segment file when the log rolls over.
+     */
+    static File createStandbyFile(String name, File directory) {
+        return new File(directory, standbyFileName(checkNotNull(name, "name cannot be null")));
+    }
+
+    private static String standbyFileName(String name) {
+        return name + EXTENSION_SEPARATOR + STANDBY_EXTENSION;
+    }
+
     /**
      * @throws IllegalArgumentException if {@code file} is not a valid segment file
      */
@@ -74,4 +150,15 @@ public class JournalSegmentFile {
     public File file() {
         return file;
     }
+
+    /**
+     * Returns the index file stored alongside the segment file.
+     *
+     * @return The segment index file.
+     */
+    public File indexFile() {
+        String fileName = file.getName();
+        return new File(file.getParentFile(),
+                fileName.substring(0, fileName.lastIndexOf(EXTENSION_SEPARATOR) + 1) + INDEX_EXTENSION);
+    }
 }
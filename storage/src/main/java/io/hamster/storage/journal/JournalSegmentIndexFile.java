@@ -0,0 +1,303 @@
+package io.hamster.storage.journal;
+
+import io.hamster.storage.StorageException;
+import io.hamster.storage.journal.index.JournalIndex;
+import io.hamster.storage.journal.index.SparseArrayJournalIndex;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Segment index file.
+ * <p>
+ * When a segment is sealed, its sparse index positions and the location of its last entry are persisted in an index
+ * file stored alongside the segment, so the segment can be reopened without scanning its entries. The format of the
+ * index file is as follows:
+ * <ul>
+ * <li>32-bit version</li>
+ * <li>64-bit segment ID</li>
+ * <li>64-bit first index in the segment</li>
+ * <li>64-bit last index in the segment</li>
+ * <li>32-bit position of the last entry in the segment</li>
+ * <li>32-bit position following the last entry in the segment</li>
+ * <li>32-bit CRC32 checksum of the segment's entries</li>
+ * <li>32-bit number of positions, followed by each 64-bit index and 32-bit position</li>
+ * <li>32-bit CRC32 checksum of all preceding bytes</li>
+ * </ul>
+ */
+final class JournalSegmentIndexFile {
+
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = Integer.BYTES + Long.BYTES * 3 + Integer.BYTES * 4;
+    private static final int POSITION_BYTES = Long.BYTES + Integer.BYTES;
+    private static final int CHECKSUM_BUFFER_SIZE = 1024 * 64;
+
+    private final long lastIndex;
+    private final int lastPosition;
+    private final int nextPosition;
+    private final long[] indexes;
+    private final int[] positions;
+
+    private JournalSegmentIndexFile(long lastIndex, int lastPosition, int nextPosition, long[] indexes, int[] positions) {
+        this.lastIndex = lastIndex;
+        this.lastPosition = lastPosition;
+        this.nextPosition = nextPosition;
+        this.indexes = indexes;
+        this.positions = positions;
+    }
+
+    /**
+     * Returns the index file of a new, empty segment.
+     *
+     * @param descriptor the segment descriptor
+     * @return the index file of an empty segment
+     */
+    static JournalSegmentIndexFile empty(JournalSegmentDescriptor descriptor) {
+        return new JournalSegmentIndexFile(descriptor.index() - 1, -1, JournalSegmentDescriptor.BYTES,
+                new long[0], new int[0]);
+    }
+
+    /**
+     * Returns the last index in the segment.
+     *
+     * @return the last index in the segment
+     */
+    long lastIndex() {
+        return lastIndex;
+    }
+
+    /**
+     * Returns the position of the last entry in the segment.
+     *
+     * @return the position of the last entry in the segment, or {@code -1} if the segment is empty
+     */
+    int lastPosition() {
+        return lastPosition;
+    }
+
+    /**
+     * Returns the position following the last entry in the segment.
+     *
+     * @return the position following the last entry in the segment
+     */
+    int nextPosition() {
+        return nextPosition;
+    }
+
+    /**
+     * Adds the persisted positions to the given index.
+     *
+     * @param index the index to populate
+     */
+    void copyTo(JournalIndex index) {
+        for (int i = 0; i < indexes.length; i++) {
+            index.index(indexes[i], positions[i]);
+        }
+    }
+
+    /**
+     * Writes the index file for a sealed segment.
+     *
+     * @param file         the index file
+     * @param descriptor   the segment descriptor
+     * @param checksum     the CRC32 checksum of the segment's entries
+     * @param index        the segment's sparse index
+     * @param lastIndex    the last index in the segment
+     * @param lastPosition the position of the last entry in the segment
+     * @param nextPosition the position following the last entry in the segment
+     */
+    static void write(
+            File file,
+            JournalSegmentDescriptor descriptor,
+            int checksum,
+            SparseArrayJournalIndex index,
+            long lastIndex,
+            int lastPosition,
+            int nextPosition) {
+        final int size = index.size();
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + size * POSITION_BYTES + Integer.BYTES);
+        buffer.putInt(VERSION);
+        buffer.putLong(descriptor.id());
+        buffer.putLong(descriptor.index());
+        buffer.putLong(lastIndex);
+        buffer.putInt(lastPosition);
+        buffer.putInt(nextPosition);
+        buffer.putInt(checksum);
+        buffer.putInt(size);
+        for (int i = 0; i < size; i++) {
+            buffer.putLong(index.indexAt(i));
+            buffer.putInt(index.positionAt(i));
+        }
+        CRC32 crc32 = new CRC32();
+        crc32.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) crc32.getValue());
+        buffer.flip();
+
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        } catch (IOException e) {
+            throw new StorageException(e);
+        }
+    }
+
+    /**
+     * Reads the index file for a segment.
+     * <p>
+     * The index file is only returned if it matches the segment: its own checksum must be valid, the last entry it
+     * refers to must be intact and no entry may follow it. If {@code verifyChecksum} is set, the checksum of the
+     * segment's entries is verified as well, which requires reading the whole segment.
+     *
+     * @param file           the index file
+     * @param descriptor     the segment descriptor
+     * @param segmentChannel a channel to the segment file
+     * @param maxEntrySize   the maximum entry size
+     * @param verifyChecksum whether to verify the checksum of the segment's entries
+     * @return the index file or {@code null} if the file does not exist or does not match the segment
+     */
+    static JournalSegmentIndexFile read(
+            File file,
+            JournalSegmentDescriptor descriptor,
+            FileChannel segmentChannel,
+            int maxEntrySize,
+            boolean verifyChecksum) {
+        if (!file.exists()) {
+            return null;
+        }
+
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+            if (buffer.remaining() < HEADER_BYTES + Integer.BYTES) {
+                return null;
+            }
+
+            CRC32 crc32 = new CRC32();
+            crc32.update(buffer.array(), 0, buffer.limit() - Integer.BYTES);
+            if ((int) crc32.getValue() != buffer.getInt(buffer.limit() - Integer.BYTES)) {
+                return null;
+            }
+
+            if (buffer.getInt() != VERSION
+                    || buffer.getLong() != descriptor.id()
+                    || buffer.getLong() != descriptor.index()) {
+                return null;
+            }
+
+            final long lastIndex = buffer.getLong();
+            final int lastPosition = buffer.getInt();
+            final int nextPosition = buffer.getInt();
+            final int checksum = buffer.getInt();
+            final int size = buffer.getInt();
+            if (size < 0 || buffer.limit() != HEADER_BYTES + size * POSITION_BYTES + Integer.BYTES) {
+                return null;
+            }
+
+            if (!isTail(descriptor, segmentChannel, maxEntrySize, lastIndex, lastPosition, nextPosition)) {
+                return null;
+            }
+
+            if (verifyChecksum && checksum(segmentChannel, nextPosition) != checksum) {
+                return null;
+            }
+
+            long[] indexes = new long[size];
+            int[] positions = new int[size];
+            for (int i = 0; i < size; i++) {
+                indexes[i] = buffer.getLong();
+                positions[i] = buffer.getInt();
+            }
+            return new JournalSegmentIndexFile(lastIndex, lastPosition, nextPosition, indexes, positions);
+        } catch (IOException e) {
+            throw new StorageException(e);
+        }
+    }
+
+    /**
+     * Returns whether the given positions describe the tail of the segment.
+     * <p>
+     * The last entry must be intact and must end at {@code nextPosition}, and no entry may follow it.
+     */
+    static boolean isTail(
+            JournalSegmentDescriptor descriptor,
+            FileChannel channel,
+            int maxEntrySize,
+            long lastIndex,
+            int lastPosition,
+            int nextPosition) throws IOException {
+        if (nextPosition < JournalSegmentDescriptor.BYTES || nextPosition > descriptor.maxSegmentSize()) {
+            return false;
+        }
+
+        // Verify the last entry is intact.
+        if (lastIndex >= descriptor.index()) {
+            final int length = nextPosition - lastPosition - (Integer.BYTES + Integer.BYTES);
+            if (lastPosition < JournalSegmentDescriptor.BYTES || length <= 0 || length > maxEntrySize) {
+                return false;
+            }
+            ByteBuffer entry = ByteBuffer.allocate(length + Integer.BYTES + Integer.BYTES);
+            if (!readFully(channel, entry, lastPosition) || entry.getInt(0) != length) {
+                return false;
+            }
+            entry.position(Integer.BYTES + Integer.BYTES);
+            if (descriptor.checksumType().compute(entry) != (entry.getInt(Integer.BYTES) ^ descriptor.checksumSalt())) {
+                return false;
+            }
+        } else if (lastIndex != descriptor.index() - 1
+                || lastPosition != -1
+                || nextPosition != JournalSegmentDescriptor.BYTES) {
+            return false;
+        }
+
+        // Verify no entries were written after the last entry.
+        ByteBuffer header = ByteBuffer.allocate(Integer.BYTES);
+        if (readFully(channel, header, nextPosition)) {
+            final int length = header.getInt(0);
+            return length <= 0 || length > maxEntrySize;
+        }
+        return true;
+    }
+
+    /**
+     * Computes the CRC32 checksum of the segment's entries by reading the segment.
+     *
+     * @param channel      a channel to the segment file
+     * @param nextPosition the position following the last entry in the segment
+     * @return the checksum of the segment's entries
+     */
+    static int checksum(FileChannel channel, int nextPosition) {
+        CRC32 crc32 = new CRC32();
+        ByteBuffer buffer = ByteBuffer.allocate(CHECKSUM_BUFFER_SIZE);
+        long position = JournalSegmentDescriptor.BYTES;
+        try {
+            while (position < nextPosition) {
+                buffer.clear().limit((int) Math.min(buffer.capacity(), nextPosition - position));
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    break;
+                }
+                crc32.update(buffer.array(), 0, read);
+                position += read;
+            }
+        } catch (IOException e) {
+            throw new StorageException(e);
+        }
+        return (int) crc32.getValue();
+    }
+
+    private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,19 @@
+package io.hamster.storage.journal;
+
+/**
+ * Listener notified when the segments of a {@link SegmentedJournal} are sealed.
+ */
+@FunctionalInterface
+public interface JournalSegmentListener {
+
+    /**
+     * Called once a segment has been sealed and its index has been persisted.
+     * <p>
+     * The listener is called on the journal's background sealing thread. The entries of the segment don't change until
+     * the listener returns, since truncating the segment waits for its seal to complete.
+     *
+     * @param firstIndex the first index in the segment
+     * @param lastIndex  the last index in the segment
+     */
+    void onSealed(long firstIndex, long lastIndex);
+}
@@ -0,0 +1,24 @@
+package io.hamster.storage.journal;
+
+/**
+ * Journal segment writer.
+ * <p>
+ * Exposes the byte positions of the tail of a segment so that writer state can be handed over between writer
+ * implementations and persisted without rescanning the segment.
+ */
+interface JournalSegmentWriter<E> extends JournalWriter<E> {
+
+    /**
+     * Returns the position of the last entry in the segment.
+     *
+     * @return the position of the last entry in the segment, or {@code -1} if the segment is empty
+     */
+    int getLastPosition();
+
+    /**
+     * Returns the position at which the next entry will be written.
+     *
+     * @return the position at which the next entry will be written
+     */
+    int getNextPosition();
+}
@@ -0,0 +1,176 @@
+package io.hamster.storage.journal;
+
+import com.google.common.collect.Sets;
+import io.hamster.storage.StorageException;
+
+import java.util.List;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Spliterator over a range of journal entries.
+ * <p>
+ * The spliterator covers a list of segments acquired when the spliterator was created, and splits on segment
+ * boundaries so that each split verifies and decodes its segments independently through its own segment readers.
+ * Each segment is released once it has been read; the segments and readers of an abandoned scan are released when
+ * the scan is {@link Scan#close() closed}.
+ * <p>
+ * The entries of a segment followed by another segment are known to be written, so a reader that stops short of the
+ * segment's last entry in the range has hit a corrupt entry, and the scan fails rather than skipping the remainder of
+ * the segment. Only the last segment may end early, since it may be truncated while it's scanned.
+ */
+final class JournalSpliterator<E> implements Spliterator<Indexed<E>> {
+
+    /**
+     * Segments and readers shared by all splits of a scan.
+     */
+    static final class Scan<E> implements Runnable {
+        private final Set<JournalSegment<E>> segments = Sets.newConcurrentHashSet();
+        private final Set<JournalReader<E>> readers = Sets.newConcurrentHashSet();
+
+        /**
+         * Adds an acquired segment to the scan.
+         */
+        void add(JournalSegment<E> segment) {
+            segments.add(segment);
+        }
+
+        private JournalReader<E> open(JournalSegment<E> segment) {
+            JournalReader<E> reader = segment.createReader();
+            readers.add(reader);
+            return reader;
+        }
+
+        private void close(JournalSegment<E> segment, JournalReader<E> reader) {
+            if (readers.remove(reader)) {
+                reader.close();
+            }
+            if (segments.remove(segment)) {
+                segment.release();
+            }
+        }
+
+        /**
+         * Closes the remaining readers and releases the remaining segments.
+         */
+        void close() {
+            for (JournalReader<E> reader : readers) {
+                if (readers.remove(reader)) {
+                    reader.close();
+                }
+            }
+            for (JournalSegment<E> segment : segments) {
+                if (segments.remove(segment)) {
+                    segment.release();
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            close();
+        }
+    }
+
+    private final Scan<E> scan;
+    private final List<JournalSegment<E>> segments;
+    private final long fromIndex;
+    private final long toIndex;
+    private int next;
+    private final int end;
+    private JournalSegment<E> segment;
+    private JournalReader<E> reader;
+
+    /**
+     * @param scan      the scan holding the acquired segments
+     * @param segments  the acquired segments covering the range
+     * @param fromIndex the first index in the range
+     * @param toIndex   the last index in the range
+     */
+    JournalSpliterator(Scan<E> scan, List<JournalSegment<E>> segments, long fromIndex, long toIndex) {
+        this(scan, segments, fromIndex, toIndex, 0, segments.size());
+    }
+
+    private JournalSpliterator(
+            Scan<E> scan,
+            List<JournalSegment<E>> segments,
+            long fromIndex,
+            long toIndex,
+            int next,
+            int end) {
+        this.scan = scan;
+        this.segments = segments;
+        this.fromIndex = fromIndex;
+        this.toIndex = toIndex;
+        this.next = next;
+        this.end = end;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Indexed<E>> action) {
+        while (true) {
+            if (reader == null) {
+                if (next >= end) {
+                    return false;
+                }
+                open(segments.get(next++));
+            }
+            if (reader.getNextIndex() <= toIndex && reader.hasNext()) {
+                action.accept(reader.next());
+                return true;
+            }
+            final JournalSegment<E> segment = this.segment;
+            final long nextIndex = reader.getNextIndex();
+            scan.close(segment, reader);
+            this.segment = null;
+            reader = null;
+            if (segment != segments.get(segments.size() - 1)
+                    && nextIndex <= Math.min(segment.lastIndex(), toIndex)) {
+                throw new StorageException("Failed to read entry " + nextIndex + " of segment " + segment.id());
+            }
+        }
+    }
+
+    /**
+     * Opens a reader positioned at the first entry of the range within the given segment.
+     */
+    private void open(JournalSegment<E> segment) {
+        this.segment = segment;
+        this.reader = scan.open(segment);
+        if (fromIndex > segment.index()) {
+            reader.reset(fromIndex);
+        }
+    }
+
+    @Override
+    public Spliterator<Indexed<E>> trySplit() {
+        // The split must cover a prefix of the entries, so only unread segments can be split.
+        final int remaining = end - next;
+        if (reader != null || remaining < 2) {
+            return null;
+        }
+        final int mid = next + remaining / 2;
+        JournalSpliterator<E> split = new JournalSpliterator<>(scan, segments, fromIndex, toIndex, next, mid);
+        next = mid;
+        return split;
+    }
+
+    @Override
+    public long estimateSize() {
+        long size = 0;
+        if (reader != null) {
+            size += Math.max(0, Math.min(segment.lastIndex(), toIndex) - reader.getNextIndex() + 1);
+        }
+        for (int i = next; i < end; i++) {
+            JournalSegment<E> segment = segments.get(i);
+            size += Math.max(0, Math.min(segment.lastIndex(), toIndex) - Math.max(segment.index(), fromIndex) + 1);
+        }
+        return size;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | DISTINCT | NONNULL;
+    }
+}
@@ -15,6 +15,10 @@
  */
 package io.hamster.storage.journal;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Log writer.
@@ -57,6 +61,64 @@ public interface JournalWriter<E> extends AutoCloseable {
      */
     void append(Indexed<E> entry);
 
+    /**
+     * Appends a batch of entries to the journal.
+     * <p>
+     * Writers bounded by a fixed capacity, such as a single segment, may append only a leading run of the given
+     * entries, in which case the returned list is shorter than {@code entries}. If an entry cannot be appended, the
+     * entries preceding it may already have been written.
+     *
+     * @param entries The entries to append.
+     * @return The appended indexed entries.
+     */
+    default <T extends E> List<Indexed<T>> appendBatch(List<T> entries) {
+        List<Indexed<T>> indexed = new ArrayList<>(entries.size());
+        for (T entry : entries) {
+            indexed.add(append(entry));
+        }
+        return indexed;
+    }
+
+    /**
+     * Appends an encoded entry to the journal.
+     * <p>
+     * The entry bytes are copied into the journal as they are, without being decoded and encoded again, and only their
+     * checksum is computed. As with {@link #append(Indexed)}, the journal is truncated first if the index is less than
+     * the next index.
+     *
+     * @param index The index of the entry.
+     * @param entry The encoded entry. The buffer's position is left unchanged.
+     */
+    void appendRaw(long index, ByteBuffer entry);
+
+    /**
+     * Appends an encoded entry to the journal, verifying the checksum it was sent with.
+     * <p>
+     * The entry's checksum must have been computed with the journal's {@link ChecksumType}, as it is for entries read
+     * through {@link JournalReader#nextRaw()} from a journal with the same checksum type.
+     *
+     * @param entry The encoded entry.
+     * @throws io.hamster.storage.StorageException.InvalidChecksum if the checksum does not match the entry bytes
+     */
+    void appendRaw(RawEntry entry);
+
+    /**
+     * Appends a batch of encoded entries with consecutive indexes to the journal, verifying their checksums.
+     * <p>
+     * As with {@link #appendBatch(List)}, writers bounded by a fixed capacity may append only a leading run of the
+     * given entries, and if an entry cannot be appended, the entries preceding it may already have been written.
+     *
+     * @param entries The encoded entries.
+     * @return The number of appended entries.
+     * @throws io.hamster.storage.StorageException.InvalidChecksum if the checksum of an entry does not match its bytes
+     */
+    default int appendRawBatch(List<RawEntry> entries) {
+        for (RawEntry entry : entries) {
+            appendRaw(entry);
+        }
+        return entries.size();
+    }
+
     /**
      * Commits entries up to the given index.
      *
@@ -83,6 +145,19 @@ public interface JournalWriter<E> extends AutoCloseable {
      */
     void flush();
 
+    /**
+     * Returns a future to be completed once entries up to the given index have been flushed to disk.
+     * <p>
+     * The default implementation flushes the writer and completes the future immediately.
+     *
+     * @param index The index up to which entries must be durable.
+     * @return A future to be completed with the durable index once it is greater than or equal to {@code index}.
+     */
+    default CompletableFuture<Long> whenDurable(long index) {
+        flush();
+        return CompletableFuture.completedFuture(getLastIndex());
+    }
+
     /**
      * Close
      */
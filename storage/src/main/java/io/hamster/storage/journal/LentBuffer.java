@@ -0,0 +1,56 @@
+package io.hamster.storage.journal;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pooled buffer lent by a segment reader to the raw entries it returned.
+ * <p>
+ * The buffer is reference counted: the reader holds a reference for as long as it reads from the buffer, and each raw
+ * entry holds a reference until it's {@link RawEntry#release() released}. The buffer is returned to the pool once the
+ * last reference is released.
+ */
+final class LentBuffer {
+
+    private final BufferPool pool;
+    private final ByteBuffer buffer;
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    /**
+     * Lends the given buffer, holding the reference of the lender.
+     *
+     * @param pool   the pool from which the buffer was borrowed
+     * @param buffer the buffer
+     */
+    LentBuffer(BufferPool pool, ByteBuffer buffer) {
+        this.pool = pool;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Adds a reference to the buffer.
+     */
+    void retain() {
+        references.incrementAndGet();
+    }
+
+    /**
+     * Returns whether references other than the lender's are held.
+     * <p>
+     * Only the lender adds references, so once this returns {@code false} the lender holds the only reference.
+     *
+     * @return whether the buffer is still referenced by raw entries
+     */
+    boolean isShared() {
+        return references.get() > 1;
+    }
+
+    /**
+     * Releases a reference to the buffer, returning the buffer to the pool if it was the last one.
+     */
+    void release() {
+        if (references.decrementAndGet() == 0) {
+            pool.release(buffer);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package io.hamster.storage.journal;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * LZ4 block compression.
+ * <p>
+ * Blocks are written in the LZ4 block format: a sequence of tokens, each followed by a run of literal bytes and a
+ * match copied from up to 64KB back in the output. Matches are found with a single-probe hash table, which favours
+ * speed over ratio in the same way as the reference LZ4 fast compressor. Bytes preceding the block in the source array
+ * are treated as history, so that a preset dictionary can be referenced by matches in the block.
+ */
+final class Lz4Block {
+
+    static final int MAX_OFFSET = 65535;
+
+    private static final int MIN_MATCH = 4;
+    private static final int LAST_LITERALS = 5;
+    private static final int MF_LIMIT = 12;
+    private static final int HASH_LOG = 12;
+    private static final int SKIP_STRENGTH = 6;
+    private static final int RUN_MASK = 0x0F;
+
+    private Lz4Block() {
+    }
+
+    /**
+     * Returns the maximum compressed size of a block of the given length.
+     */
+    static int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * Creates an empty hash table for {@link #compress}.
+     */
+    static int[] newTable() {
+        int[] table = new int[1 << HASH_LOG];
+        Arrays.fill(table, -1);
+        return table;
+    }
+
+    /**
+     * Creates a hash table holding the positions of the given history for {@link #compress}.
+     */
+    static int[] newTable(byte[] history) {
+        int[] table = newTable();
+        for (int i = 0; i + MIN_MATCH <= history.length; i++) {
+            table[hash(readInt(history, i))] = i;
+        }
+        return table;
+    }
+
+    /**
+     * Compresses the bytes of the source array between {@code start} and {@code end}.
+     *
+     * @param src   the source array, holding history preceding {@code start}
+     * @param start the start of the block
+     * @param end   the end of the block
+     * @param dst   the target array, at least {@link #maxCompressedLength} bytes long
+     * @param table the hash table, holding positions preceding {@code start}; it's overwritten by compression
+     * @return the compressed length
+     */
+    static int compress(byte[] src, int start, int end, byte[] dst, int[] table) {
+        int anchor = start;
+        int dp = 0;
+
+        if (end - start >= MF_LIMIT + 1) {
+            final int matchLimit = end - LAST_LITERALS;
+            final int mfLimit = end - MF_LIMIT;
+            int i = start;
+            while (i < mfLimit) {
+                final int sequence = readInt(src, i);
+                final int h = hash(sequence);
+                int ref = table[h];
+                table[h] = i;
+                if (ref < 0 || i - ref > MAX_OFFSET || readInt(src, ref) != sequence) {
+                    // Step further the longer no match is found, so incompressible data is skipped quickly.
+                    i += 1 + ((i - anchor) >>> SKIP_STRENGTH);
+                    continue;
+                }
+
+                // Extend the match backward over pending literals and forward up to the last literals.
+                while (i > anchor && ref > 0 && src[i - 1] == src[ref - 1]) {
+                    i--;
+                    ref--;
+                }
+                int length = MIN_MATCH;
+                while (i + length < matchLimit && src[i + length] == src[ref + length]) {
+                    length++;
+                }
+
+                dp = writeSequence(src, anchor, i - anchor, dst, dp, i - ref, length - MIN_MATCH);
+                i += length;
+                anchor = i;
+            }
+        }
+
+        // The block always ends with literals.
+        final int literals = end - anchor;
+        dst[dp++] = (byte) (Math.min(literals, RUN_MASK) << 4);
+        dp = writeLength(literals, dst, dp);
+        System.arraycopy(src, anchor, dst, dp, literals);
+        return dp + literals;
+    }
+
+    /**
+     * Decompresses a block into the given target array, which must be exactly the decompressed length.
+     *
+     * @param src        the source array
+     * @param start      the start of the block
+     * @param end        the end of the block
+     * @param dictionary the dictionary with which the block was compressed
+     * @param dst        the target array
+     * @throws IOException if the block is malformed
+     */
+    static void decompress(byte[] src, int start, int end, byte[] dictionary, byte[] dst) throws IOException {
+        try {
+            int sp = start;
+            int dp = 0;
+            while (true) {
+                final int token = src[sp++] & 0xFF;
+
+                int literals = token >>> 4;
+                if (literals == RUN_MASK) {
+                    int b;
+                    do {
+                        b = src[sp++] & 0xFF;
+                        literals += b;
+                    } while (b == 255);
+                }
+                if (literals > end - sp || literals > dst.length - dp) {
+                    throw new IOException("Malformed compressed block");
+                }
+                System.arraycopy(src, sp, dst, dp, literals);
+                sp += literals;
+                dp += literals;
+                if (sp == end) {
+                    break;
+                }
+
+                final int offset = (src[sp] & 0xFF) | (src[sp + 1] & 0xFF) << 8;
+                sp += 2;
+                int length = token & RUN_MASK;
+                if (length == RUN_MASK) {
+                    int b;
+                    do {
+                        b = src[sp++] & 0xFF;
+                        length += b;
+                    } while (b == 255);
+                }
+                length += MIN_MATCH;
+                if (offset == 0 || offset > dp + dictionary.length || length > dst.length - dp) {
+                    throw new IOException("Malformed compressed block");
+                }
+
+                // Copy the part of the match that falls in the dictionary, then the part that falls in the block.
+                int ref = dp - offset;
+                if (ref < 0) {
+                    final int count = Math.min(length, -ref);
+                    System.arraycopy(dictionary, dictionary.length + ref, dst, dp, count);
+                    dp += count;
+                    length -= count;
+                    ref = 0;
+                }
+                if (offset >= length) {
+                    System.arraycopy(dst, ref, dst, dp, length);
+                    dp += length;
+                } else {
+                    // The match overlaps the bytes it produces, so it must be copied byte by byte.
+                    for (int i = 0; i < length; i++) {
+                        dst[dp++] = dst[ref + i];
+                    }
+                }
+            }
+            if (dp != dst.length) {
+                throw new IOException("Malformed compressed block");
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Malformed compressed block", e);
+        }
+    }
+
+    private static int writeSequence(byte[] src, int anchor, int literals, byte[] dst, int dp, int offset, int length) {
+        dst[dp++] = (byte) (Math.min(literals, RUN_MASK) << 4 | Math.min(length, RUN_MASK));
+        dp = writeLength(literals, dst, dp);
+        System.arraycopy(src, anchor, dst, dp, literals);
+        dp += literals;
+        dst[dp++] = (byte) offset;
+        dst[dp++] = (byte) (offset >>> 8);
+        return writeLength(length, dst, dp);
+    }
+
+    /**
+     * Writes the remainder of a length that doesn't fit in its token.
+     */
+    private static int writeLength(int length, byte[] dst, int dp) {
+        if (length >= RUN_MASK) {
+            int remaining = length - RUN_MASK;
+            while (remaining >= 255) {
+                dst[dp++] = (byte) 255;
+                remaining -= 255;
+            }
+            dst[dp++] = (byte) remaining;
+        }
+        return dp;
+    }
+
+    private static int readInt(byte[] bytes, int i) {
+        return (bytes[i] & 0xFF)
+                | (bytes[i + 1] & 0xFF) << 8
+                | (bytes[i + 2] & 0xFF) << 16
+                | (bytes[i + 3] & 0xFF) << 24;
+    }
+
+    private static int hash(int sequence) {
+        return (sequence * -1640531535) >>> (32 - HASH_LOG);
+    }
+}
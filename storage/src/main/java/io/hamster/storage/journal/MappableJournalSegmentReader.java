@@ -4,32 +4,69 @@ import io.hamster.storage.StorageException;
 import io.hamster.storage.journal.index.JournalIndex;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.function.Consumer;
 
 /**
  * Mappable log segment reader.
+ * <p>
+ * Reads through a {@link MappedJournalSegmentReader} while the segment is mapped and falls back to a
+ * {@link FileChannelJournalSegmentReader} with its own channel otherwise.
  */
 class MappableJournalSegmentReader<E> implements JournalReader<E> {
 
     private final JournalSegment<E> segment;
-    private final FileChannel channel;
     private final int maxEntrySize;
     private final JournalIndex index;
     private final JournalCodec<E> codec;
+    private FileChannel channel;
     private JournalReader<E> reader;
 
     MappableJournalSegmentReader(
-            FileChannel channel,
             JournalSegment<E> segment,
+            ByteBuffer buffer,
             JournalCodec<E> codec,
             JournalIndex index,
             int maxEntrySize) {
-        this.channel = channel;
         this.segment = segment;
         this.maxEntrySize = maxEntrySize;
         this.index = index;
         this.codec = codec;
-        this.reader = new FileChannelJournalSegmentReader<>(channel, segment, maxEntrySize, index, codec);
+        if (buffer != null) {
+            this.reader = new MappedJournalSegmentReader<>(buffer, segment, maxEntrySize, index, codec);
+        } else {
+            this.channel = segment.openChannel();
+            this.reader = new FileChannelJournalSegmentReader<>(channel, segment, maxEntrySize, index, codec);
+        }
+    }
+
+    /**
+     * Converts the reader to a mapped reader using the given buffer.
+     *
+     * @param buffer the mapped buffer
+     */
+    void map(ByteBuffer buffer) {
+        if (!(reader instanceof MappedJournalSegmentReader)) {
+            JournalReader<E> reader = this.reader;
+            this.reader = new MappedJournalSegmentReader<>(buffer, segment, maxEntrySize, index, codec);
+            this.reader.reset(reader.getNextIndex());
+            reader.close();
+            closeChannel();
+        }
+    }
+
+    /**
+     * Converts the reader to an unmapped reader.
+     */
+    void unmap() {
+        if (reader instanceof MappedJournalSegmentReader) {
+            JournalReader<E> reader = this.reader;
+            this.channel = segment.openChannel();
+            this.reader = new FileChannelJournalSegmentReader<>(channel, segment, maxEntrySize, index, codec);
+            this.reader.reset(reader.getNextIndex());
+            reader.close();
+        }
     }
 
     @Override
@@ -62,6 +99,16 @@ class MappableJournalSegmentReader<E> implements JournalReader<E> {
         return reader.next();
     }
 
+    @Override
+    public RawEntry nextRaw() {
+        return reader.nextRaw();
+    }
+
+    @Override
+    public int readBatch(int maxEntries, int maxBytes, Consumer<Indexed<E>> consumer) {
+        return reader.readBatch(maxEntries, maxBytes, consumer);
+    }
+
     @Override
     public void reset() {
         reader.reset();
@@ -72,13 +119,23 @@ class MappableJournalSegmentReader<E> implements JournalReader<E> {
         reader.reset(index);
     }
 
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new StorageException(e);
+            } finally {
+                channel = null;
+            }
+        }
+    }
+
     @Override
     public void close() {
         reader.close();
         try {
-            channel.close();
-        } catch (IOException e) {
-            throw new StorageException(e);
+            closeChannel();
         } finally {
             segment.closeReader(this);
         }
@@ -4,17 +4,26 @@ import io.hamster.storage.StorageException;
 import io.hamster.storage.journal.index.JournalIndex;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.List;
 
-public class MappableJournalSegmentWriter<E> implements JournalWriter<E> {
+/**
+ * Mappable segment writer.
+ * <p>
+ * Writes through the segment's {@link FileChannel} by default and switches to a {@link MappedJournalSegmentWriter}
+ * while the segment is {@link #map() mapped}.
+ */
+public class MappableJournalSegmentWriter<E> implements JournalSegmentWriter<E> {
 
     private final FileChannel channel;
     private final JournalSegment<E> journalSegment;
     private final JournalCodec<E> codec;
+    private final JournalIndex index;
+    private final int maxEntrySize;
 
-    private JournalWriter<E> writer;
-    private int maxEntrySize;
+    private volatile JournalSegmentWriter<E> writer;
 
 
     public MappableJournalSegmentWriter(FileChannel channel,
@@ -26,11 +35,68 @@ public class MappableJournalSegmentWriter<E> implements JournalWriter<E> {
         this.channel = channel;
         this.journalSegment = journalSegment;
         this.codec = codec;
+        this.index = index;
+        this.maxEntrySize = maxEntrySize;
         this.writer = new FileChannelJournalSegmentWriter<>(channel, journalSegment, codec, maxEntrySize, index);
     }
 
+    /**
+     * Creates a writer positioned after a known last entry, without scanning the segment.
+     */
+    MappableJournalSegmentWriter(FileChannel channel,
+                                 JournalSegment<E> journalSegment,
+                                 JournalCodec<E> codec,
+                                 JournalIndex index,
+                                 int maxEntrySize,
+                                 long lastIndex,
+                                 int lastPosition,
+                                 int nextPosition
+    ) {
+        this.channel = channel;
+        this.journalSegment = journalSegment;
+        this.codec = codec;
+        this.index = index;
+        this.maxEntrySize = maxEntrySize;
+        this.writer = new FileChannelJournalSegmentWriter<>(channel, journalSegment, codec, maxEntrySize, index,
+                lastIndex, lastPosition, nextPosition);
+    }
+
+    /**
+     * Maps the segment file into memory and switches to the mapped writer.
+     *
+     * @return the mapped buffer
+     */
+    MappedByteBuffer map() {
+        JournalSegmentWriter<E> writer = this.writer;
+        if (writer instanceof MappedJournalSegmentWriter) {
+            return ((MappedJournalSegmentWriter<E>) writer).buffer();
+        }
+
+        try {
+            writer.close();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, journalSegment.descriptor().maxSegmentSize());
+            this.writer = new MappedJournalSegmentWriter<>(buffer, journalSegment, codec, maxEntrySize, index,
+                    writer.getLastIndex(), writer.getLastPosition(), writer.getNextPosition());
+            return buffer;
+        } catch (IOException e) {
+            throw new StorageException(e);
+        }
+    }
+
+    /**
+     * Switches back to the {@link FileChannel} writer.
+     */
+    void unmap() {
+        JournalSegmentWriter<E> writer = this.writer;
+        if (writer instanceof MappedJournalSegmentWriter) {
+            writer.close();
+            this.writer = new FileChannelJournalSegmentWriter<>(channel, journalSegment, codec, maxEntrySize, index,
+                    writer.getLastIndex(), writer.getLastPosition(), writer.getNextPosition());
+        }
+    }
+
     MappedByteBuffer buffer() {
-        JournalWriter<E> writer = this.writer;
+        JournalSegmentWriter<E> writer = this.writer;
         if (writer instanceof MappedJournalSegmentWriter) {
             return ((MappedJournalSegmentWriter<E>) writer).buffer();
         }
@@ -52,11 +118,41 @@ public class MappableJournalSegmentWriter<E> implements JournalWriter<E> {
         return writer.getNextIndex();
     }
 
+    @Override
+    public int getLastPosition() {
+        return writer.getLastPosition();
+    }
+
+    @Override
+    public int getNextPosition() {
+        return writer.getNextPosition();
+    }
+
     @Override
     public <T extends E> Indexed<T> append(T entry) {
         return writer.append(entry);
     }
 
+    @Override
+    public <T extends E> List<Indexed<T>> appendBatch(List<T> entries) {
+        return writer.appendBatch(entries);
+    }
+
+    @Override
+    public void appendRaw(long index, ByteBuffer entry) {
+        writer.appendRaw(index, entry);
+    }
+
+    @Override
+    public void appendRaw(RawEntry entry) {
+        writer.appendRaw(entry);
+    }
+
+    @Override
+    public int appendRawBatch(List<RawEntry> entries) {
+        return writer.appendRawBatch(entries);
+    }
+
     @Override
     public void reset(long index) {
         writer.reset(index);
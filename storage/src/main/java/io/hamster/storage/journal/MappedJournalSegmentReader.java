@@ -0,0 +1,248 @@
+package io.hamster.storage.journal;
+
+import io.hamster.storage.StorageException;
+import io.hamster.storage.journal.index.JournalIndex;
+import io.hamster.storage.journal.index.Position;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+/**
+ * Memory-mapped segment reader.
+ * <p>
+ * Reads entries straight out of a read-only view of the segment writer's mapped buffer, so readers share a single
+ * mapping and never copy or refill. {@link #hasNext()} only locates and verifies the next entry; entries are decoded
+ * when they are returned by {@link #next()}, and never when they are returned by {@link #nextRaw()} or skipped.
+ * {@link #readBatch(int, int, Consumer)} locates, verifies and decodes consecutive entries in place.
+ */
+class MappedJournalSegmentReader<E> implements JournalReader<E> {
+
+    private final ByteBuffer buffer;
+    private final int maxEntrySize;
+    private final JournalIndex index;
+    private final JournalCodec<E> codec;
+    private final Position indexPosition = new Position();
+    private final EntryChecksum entryChecksum;
+    private final int checksumSalt;
+    private final JournalSegment<E> segment;
+    private final long firstIndex;
+    private long currentIndex;
+    private int currentPosition;
+    private int currentLength;
+    private Indexed<E> currentEntry;
+    private int nextPosition;
+    private int nextLength;
+    private int nextChecksum;
+
+    MappedJournalSegmentReader(
+            ByteBuffer buffer,
+            JournalSegment<E> segment,
+            int maxEntrySize,
+            JournalIndex index,
+            JournalCodec<E> codec) {
+        this.buffer = buffer.asReadOnlyBuffer();
+        this.maxEntrySize = maxEntrySize;
+        this.index = index;
+        this.codec = codec;
+        this.segment = segment;
+        this.entryChecksum = segment.descriptor().checksumType().newChecksum();
+        this.checksumSalt = segment.descriptor().checksumSalt();
+        this.firstIndex = segment.index();
+        reset();
+    }
+
+    @Override
+    public long getFirstIndex() {
+        return firstIndex;
+    }
+
+    @Override
+    public long getCurrentIndex() {
+        return currentIndex >= firstIndex ? currentIndex : 0;
+    }
+
+    @Override
+    public Indexed<E> getCurrentEntry() {
+        // The current entry is decoded lazily if it was read raw or skipped.
+        if (currentEntry == null && currentIndex >= firstIndex && currentPosition >= 0) {
+            currentEntry = decode(currentIndex, currentPosition, currentLength);
+        }
+        return currentEntry;
+    }
+
+    @Override
+    public long getNextIndex() {
+        return currentIndex + 1;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (nextLength == 0) {
+            readNext();
+        }
+        return nextLength > 0;
+    }
+
+    @Override
+    public Indexed<E> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        final int position = nextPosition;
+        final int length = nextLength;
+        advance();
+        currentEntry = decode(currentIndex, position, length);
+        return currentEntry;
+    }
+
+    @Override
+    public RawEntry nextRaw() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        final int checksum = nextChecksum;
+        final ByteBuffer slice = slice(nextPosition, nextLength);
+        advance();
+        return new RawEntry(currentIndex, checksum, slice);
+    }
+
+    @Override
+    public int readBatch(int maxEntries, int maxBytes, Consumer<Indexed<E>> consumer) {
+        int entries = 0;
+        long bytes = 0;
+        if (nextLength == 0) {
+            readNext();
+        }
+        while (entries < maxEntries && bytes < maxBytes && nextLength > 0) {
+            final int position = nextPosition;
+            final int length = nextLength;
+            advance();
+            currentEntry = decode(currentIndex, position, length);
+            consumer.accept(currentEntry);
+            entries++;
+            bytes += length;
+            if (entries < maxEntries && bytes < maxBytes) {
+                readNext();
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Moves the reader past the next entry without decoding it.
+     */
+    private void advance() {
+        currentIndex++;
+        currentPosition = nextPosition;
+        currentLength = nextLength;
+        currentEntry = null;
+        nextPosition += Integer.BYTES + Integer.BYTES + nextLength;
+        nextLength = 0;
+    }
+
+    @Override
+    public void reset() {
+        currentIndex = firstIndex - 1;
+        currentPosition = -1;
+        currentLength = 0;
+        currentEntry = null;
+        nextPosition = JournalSegmentDescriptor.BYTES;
+        nextLength = 0;
+    }
+
+    @Override
+    public void reset(long index) {
+        reset();
+
+        Position position = this.index.lookup(index - 1, indexPosition);
+        if (position != null) {
+            currentIndex = position.index() - 1;
+            nextPosition = position.position();
+        }
+
+        // Entries up to the last index written to the segment are known to be intact, so they're skipped by their
+        // headers alone. Any remaining entries are verified before they're skipped.
+        final long skipIndex = Math.min(index - 1, segment.lastIndex());
+        while (getNextIndex() <= skipIndex && skipNext()) {
+            advance();
+        }
+        while (getNextIndex() < index && hasNext()) {
+            advance();
+        }
+    }
+
+    /**
+     * Reads the length of the next entry without verifying its checksum.
+     *
+     * @return indicates whether the next entry has a valid length
+     */
+    private boolean skipNext() {
+        if (nextPosition + Integer.BYTES + Integer.BYTES > buffer.capacity()) {
+            return false;
+        }
+        final int length = buffer.getInt(nextPosition);
+        if (length <= 0 || length > maxEntrySize) {
+            return false;
+        }
+        nextLength = length;
+        return true;
+    }
+
+    /**
+     * Locates and verifies the next entry in the segment.
+     */
+    private void readNext() {
+        nextLength = 0;
+
+        // Read the length of the entry.
+        final int start = nextPosition + Integer.BYTES + Integer.BYTES;
+        if (start > buffer.capacity()) {
+            return;
+        }
+        final int length = buffer.getInt(nextPosition);
+
+        // If the length is zero or invalid then there is no next entry.
+        if (length <= 0 || length > maxEntrySize || buffer.capacity() - start < length) {
+            return;
+        }
+
+        // Compare the stored checksum, unsalted, with the checksum of the entry bytes, computed in place.
+        final int checksum = buffer.getInt(nextPosition + Integer.BYTES) ^ checksumSalt;
+        buffer.limit(start + length).position(start);
+        final int computed = entryChecksum.compute(buffer);
+        buffer.limit(buffer.capacity());
+        if (checksum == computed) {
+            nextLength = length;
+            nextChecksum = checksum;
+        }
+    }
+
+    /**
+     * Returns a read-only slice of the entry stored at the given position.
+     */
+    private ByteBuffer slice(int position, int length) {
+        final int start = position + Integer.BYTES + Integer.BYTES;
+        buffer.limit(start + length).position(start);
+        ByteBuffer slice = buffer.slice();
+        buffer.limit(buffer.capacity());
+        return slice;
+    }
+
+    /**
+     * Decodes the entry stored at the given position in place.
+     */
+    private Indexed<E> decode(long index, int position, int length) {
+        try {
+            return new Indexed<>(index, codec.decode(slice(position, length)), length);
+        } catch (IOException e) {
+            throw new StorageException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        // The mapping is shared with the segment writer, which owns it.
+    }
+}
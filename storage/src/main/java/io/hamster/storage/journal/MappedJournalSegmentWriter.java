@@ -1,16 +1,82 @@
 package io.hamster.storage.journal;
 
+import io.hamster.storage.StorageException;
+import io.hamster.storage.journal.index.JournalIndex;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 
-public class MappedJournalSegmentWriter<E> implements JournalWriter<E> {
+/**
+ * Segment writer.
+ * <p>
+ * Entries are encoded directly into the memory-mapped segment file using the same format as the
+ * {@link FileChannelJournalSegmentWriter}. The header slot following an entry is zeroed before the entry's own
+ * header is written, so that stale bytes beyond the tail of the segment are never mistaken for entries, even by
+ * readers of the mapping concurrent with the writer.
+ */
+public class MappedJournalSegmentWriter<E> implements JournalSegmentWriter<E> {
 
     private final MappedByteBuffer mappedBuffer;
     private final ByteBuffer buffer;
+    private final JournalSegment segment;
+    private final int maxEntrySize;
+    private final JournalIndex index;
+    private final JournalCodec<E> codec;
+    private final EntryChecksum entryChecksum;
+    private final int checksumSalt;
+    private final long firstIndex;
+    private long lastIndex;
+    private int lastPosition = -1;
+    private Indexed<E> lastEntry;
 
-    MappedJournalSegmentWriter(MappedByteBuffer buffer) {
+    MappedJournalSegmentWriter(
+            MappedByteBuffer buffer,
+            JournalSegment segment,
+            JournalCodec<E> codec,
+            int maxEntrySize,
+            JournalIndex index) {
         this.mappedBuffer = buffer;
         this.buffer = buffer.slice();
+        this.segment = segment;
+        this.entryChecksum = segment.descriptor().checksumType().newChecksum();
+        this.checksumSalt = segment.descriptor().checksumSalt();
+        this.maxEntrySize = maxEntrySize;
+        this.codec = codec;
+        this.index = index;
+        this.firstIndex = segment.index();
+        this.lastIndex = firstIndex - 1;
+        reset(0);
+    }
+
+    /**
+     * Creates a writer positioned after a known last entry, without scanning the segment.
+     */
+    MappedJournalSegmentWriter(
+            MappedByteBuffer buffer,
+            JournalSegment segment,
+            JournalCodec<E> codec,
+            int maxEntrySize,
+            JournalIndex index,
+            long lastIndex,
+            int lastPosition,
+            int nextPosition) {
+        this.mappedBuffer = buffer;
+        this.buffer = buffer.slice();
+        this.segment = segment;
+        this.entryChecksum = segment.descriptor().checksumType().newChecksum();
+        this.checksumSalt = segment.descriptor().checksumSalt();
+        this.maxEntrySize = maxEntrySize;
+        this.codec = codec;
+        this.index = index;
+        this.firstIndex = segment.index();
+        this.lastIndex = lastIndex;
+        this.lastPosition = lastPosition;
+        this.buffer.position(nextPosition);
     }
 
     /**
@@ -24,50 +90,333 @@ public class MappedJournalSegmentWriter<E> implements JournalWriter<E> {
 
     @Override
     public long getLastIndex() {
-        return 0;
+        return lastIndex;
     }
 
     @Override
     public Indexed<E> getLastEntry() {
-        return null;
+        // The last entry is decoded lazily when the writer was restored without scanning the segment.
+        if (lastEntry == null && lastIndex >= firstIndex) {
+            ByteBuffer slice = buffer.duplicate();
+            slice.position(lastPosition);
+            final int length = slice.getInt();
+            slice.position(lastPosition + Integer.BYTES + Integer.BYTES).limit(slice.position() + length);
+            try {
+                lastEntry = new Indexed<>(lastIndex, codec.decode(slice.slice()), length);
+            } catch (IOException e) {
+                throw new StorageException(e);
+            }
+        }
+        return lastEntry;
     }
 
     @Override
     public long getNextIndex() {
-        return 0;
+        return lastIndex + 1;
+    }
+
+    @Override
+    public int getLastPosition() {
+        return lastPosition;
+    }
+
+    @Override
+    public int getNextPosition() {
+        return buffer.position();
     }
 
     @Override
     public <T extends E> Indexed<T> append(T entry) {
+        // Store the entry index.
+        final long index = getNextIndex();
+
+        // Ensure there's enough space left in the buffer to store the entry header.
+        final int position = buffer.position();
+        if (buffer.remaining() < Integer.BYTES + Integer.BYTES) {
+            throw new BufferOverflowException();
+        }
+
+        // Encode the entry directly into the mapped buffer, leaving room for the header.
+        buffer.position(position + Integer.BYTES + Integer.BYTES);
+        try {
+            codec.encode(entry, buffer);
+        } catch (BufferOverflowException e) {
+            buffer.position(position);
+            // If an entry of the maximum size would have fit, the entry itself is too large.
+            if (buffer.remaining() >= maxEntrySize + Integer.BYTES + Integer.BYTES) {
+                throw new StorageException.TooLarge("Entry size exceeds maximum allowed bytes (" + maxEntrySize + ")");
+            }
+            throw e;
+        } catch (IOException e) {
+            buffer.position(position);
+            throw new StorageException(e);
+        }
+
+        final int end = buffer.position();
+        final int length = end - (position + Integer.BYTES + Integer.BYTES);
+
+        // If the entry length exceeds the maximum entry size then throw an exception.
+        if (length > maxEntrySize) {
+            // The header hasn't been written yet, so resetting the position discards the entry.
+            buffer.position(position);
+            throw new StorageException.TooLarge("Entry size " + length + " exceeds maximum allowed bytes (" + maxEntrySize + ")");
+        }
 
-        return null;
+        // Compute the checksum over the encoded bytes in place.
+        buffer.position(position + Integer.BYTES + Integer.BYTES).limit(end);
+        final int checksum = entryChecksum.compute(buffer);
+        buffer.limit(buffer.capacity());
+
+        // Zero the following header before publishing this entry's header, so a concurrent reader that finds the
+        // entry never finds stale bytes after it. The length is written last since it marks the entry as present.
+        zeroHeader(end);
+        buffer.putInt(position + Integer.BYTES, checksum ^ checksumSalt);
+        buffer.putInt(position, length);
+        buffer.position(end);
+
+        // Update the last entry with the correct index/term/length.
+        Indexed<E> indexedEntry = new Indexed<>(index, entry, length);
+        this.index.index(index, position);
+        this.lastIndex = index;
+        this.lastPosition = position;
+        this.lastEntry = indexedEntry;
+        return (Indexed<T>) indexedEntry;
+    }
+
+    /**
+     * Appends entries to the segment until the segment is full.
+     *
+     * @throws BufferOverflowException if not even the first entry fits in the segment
+     */
+    @Override
+    public <T extends E> List<Indexed<T>> appendBatch(List<T> entries) {
+        List<Indexed<T>> appended = new ArrayList<>(entries.size());
+        for (T entry : entries) {
+            try {
+                appended.add(append(entry));
+            } catch (BufferOverflowException e) {
+                if (appended.isEmpty()) {
+                    throw e;
+                }
+                break;
+            }
+        }
+        return appended;
     }
 
     @Override
     public void append(Indexed<E> entry) {
+        seek(entry.index());
+        append(entry.entry());
+    }
+
+    /**
+     * Prepares the writer for appending the entry at the given index.
+     */
+    private void seek(long index) {
         final long nextIndex = getNextIndex();
 
+        // If the entry's index is greater than the next index in the segment, skip some entries.
+        if (index > nextIndex) {
+            throw new IndexOutOfBoundsException("Entry index is not sequential");
+        }
+        // If the entry's index is less than the next index in the segment ,truncate the segment
+        if (index < nextIndex) {
+            truncate(index - 1);
+        }
+    }
 
+    @Override
+    public void appendRaw(long index, ByteBuffer entry) {
+        appendRaw(index, entry, false, 0);
+    }
 
+    @Override
+    public void appendRaw(RawEntry entry) {
+        appendRaw(entry.index(), entry.buffer(), true, entry.checksum());
+    }
+
+    /**
+     * Copies an encoded entry into the mapped buffer, computing and optionally verifying its checksum.
+     */
+    private void appendRaw(long index, ByteBuffer entry, boolean verify, int expectedChecksum) {
+        seek(index);
+
+        // If the entry length exceeds the maximum entry size then throw an exception.
+        final int length = entry.remaining();
+        if (length > maxEntrySize) {
+            throw new StorageException.TooLarge("Entry size " + length + " exceeds maximum allowed bytes (" + maxEntrySize + ")");
+        }
+
+        // Ensure there's enough space left in the buffer to store the entry.
+        final int position = buffer.position();
+        if (buffer.remaining() < length + Integer.BYTES + Integer.BYTES) {
+            throw new BufferOverflowException();
+        }
+
+        // Copy the entry bytes and compute the checksum over them in place.
+        final int start = position + Integer.BYTES + Integer.BYTES;
+        buffer.position(start);
+        buffer.put(entry.duplicate());
+        final int end = buffer.position();
+        buffer.position(start).limit(end);
+        final int checksum = entryChecksum.compute(buffer);
+        buffer.limit(buffer.capacity());
+
+        if (verify && checksum != expectedChecksum) {
+            // The header hasn't been written yet, so resetting the position discards the entry.
+            buffer.position(position);
+            throw new StorageException.InvalidChecksum("Checksum mismatch for entry " + index);
+        }
+
+        // Zero the following header before publishing this entry's header, so a concurrent reader that finds the
+        // entry never finds stale bytes after it. The length is written last since it marks the entry as present.
+        zeroHeader(end);
+        buffer.putInt(position + Integer.BYTES, checksum ^ checksumSalt);
+        buffer.putInt(position, length);
+        buffer.position(end);
+
+        // The last entry is decoded lazily if it's requested.
+        this.index.index(index, position);
+        this.lastIndex = index;
+        this.lastPosition = position;
+        this.lastEntry = null;
+    }
+
+    /**
+     * Appends encoded entries to the segment until the segment is full.
+     *
+     * @throws BufferOverflowException if not even the first entry fits in the segment
+     */
+    @Override
+    public int appendRawBatch(List<RawEntry> entries) {
+        int appended = 0;
+        for (RawEntry entry : entries) {
+            if (appended > 0 && entry.index() != getNextIndex()) {
+                throw new IndexOutOfBoundsException("Entry index is not sequential");
+            }
+            try {
+                appendRaw(entry);
+            } catch (BufferOverflowException e) {
+                if (appended == 0) {
+                    throw e;
+                }
+                break;
+            }
+            appended++;
+        }
+        return appended;
     }
 
     @Override
     public void reset(long index) {
+        long nextIndex = firstIndex;
+        lastIndex = firstIndex - 1;
+        lastPosition = -1;
+        lastEntry = null;
+
+        // Clear the buffer indexes.
+        buffer.position(JournalSegmentDescriptor.BYTES);
+
+        // Record the current buffer position.
+        int position = buffer.position();
 
+        // Read the entry length.
+        buffer.mark();
+
+        try {
+            int length = buffer.getInt();
+
+            // If the length is non-zero, read the entry.
+            while (length > 0 && length <= maxEntrySize && (index == 0 || nextIndex <= index)) {
+
+                // Read the checksum of the entry, unsalted.
+                final int checksum = buffer.getInt() ^ checksumSalt;
+
+                // Compute the checksum for the entry bytes.
+                final int start = buffer.position();
+                if (start + length > buffer.capacity()) {
+                    break;
+                }
+                buffer.limit(start + length);
+                final int computed = entryChecksum.compute(buffer);
+                buffer.limit(buffer.capacity());
+
+                // If the stored checksum equals the computed checksum, decode the entry.
+                if (checksum != computed) {
+                    break;
+                }
+                buffer.position(start);
+                ByteBuffer slice = buffer.slice();
+                slice.limit(length);
+                E entry = codec.decode(slice);
+                this.lastEntry = new Indexed<>(nextIndex, entry, length);
+                this.lastIndex = nextIndex;
+                this.lastPosition = position;
+                this.index.index(nextIndex, position);
+                nextIndex++;
+
+                // Update the current position for indexing.
+                position = start + length;
+                buffer.position(position);
+                buffer.mark();
+                length = buffer.getInt();
+            }
+
+            // Reset the buffer to the previous mark.
+            buffer.reset();
+        } catch (BufferUnderflowException e) {
+            buffer.reset();
+        } catch (IOException e) {
+            throw new StorageException(e);
+        } finally {
+            buffer.limit(buffer.capacity());
+        }
     }
 
     @Override
     public void truncate(long index) {
+        // If the index is greater than or equal to the last index, skip the truncate.
+        if (index >= getLastIndex()) {
+            return;
+        }
+
+        // Reset the last entry.
+        lastEntry = null;
+        lastIndex = firstIndex - 1;
+        lastPosition = -1;
 
+        // Truncate the index.
+        this.index.truncate(index);
+
+        if (index < segment.index()) {
+            buffer.position(JournalSegmentDescriptor.BYTES);
+        } else {
+            // Reset the writer to the given index.
+            reset(index);
+        }
+
+        // Zero the header following the new last entry.
+        zeroHeader(buffer.position());
+    }
+
+    /**
+     * Zeroes the entry header at the given position, if the segment has room for one.
+     */
+    private void zeroHeader(int position) {
+        if (buffer.capacity() - position >= Integer.BYTES + Integer.BYTES) {
+            buffer.putLong(position, 0);
+        }
     }
 
     @Override
     public void flush() {
-
+        mappedBuffer.force();
     }
 
     @Override
     public void close() {
-
+        // The mapping is released once it is no longer referenced by any reader.
+        flush();
     }
 }
@@ -0,0 +1,109 @@
+package io.hamster.storage.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+
+/**
+ * Raw journal entry.
+ * <p>
+ * A raw entry exposes the encoded bytes of an entry as they are stored in the journal, so entries can be forwarded
+ * without being decoded and encoded again. The buffer is a read-only view of the bytes read by the reader that
+ * returned the entry, rather than a copy. It remains valid as the reader is advanced, reset or closed, but its contents
+ * are only guaranteed until the entry is truncated or compacted from the journal.
+ * <p>
+ * The buffer may be borrowed from the journal's buffer pool, in which case it's returned to the pool once every raw
+ * entry referencing it has been {@link #release() released}. Entries that are never released leave their buffer to
+ * the garbage collector instead.
+ */
+public class RawEntry {
+    private final long index;
+    private final int checksum;
+    private final ByteBuffer buffer;
+    private LentBuffer lent;
+
+    public RawEntry(long index, int checksum, ByteBuffer buffer) {
+        this(index, checksum, buffer, null);
+    }
+
+    /**
+     * @param lent the pooled buffer of which {@code buffer} is a view, to which the entry holds a reference
+     */
+    RawEntry(long index, int checksum, ByteBuffer buffer, LentBuffer lent) {
+        this.index = index;
+        this.checksum = checksum;
+        this.buffer = buffer;
+        this.lent = lent;
+    }
+
+    /**
+     * Returns the entry index.
+     *
+     * @return The entry index.
+     */
+    public long index() {
+        return index;
+    }
+
+    /**
+     * Returns the serialized entry size.
+     *
+     * @return The serialized entry size.
+     */
+    public int size() {
+        return buffer.remaining();
+    }
+
+    /**
+     * Returns the checksum of the serialized entry, computed with the segment's {@link ChecksumType}.
+     *
+     * @return The checksum of the serialized entry.
+     */
+    public int checksum() {
+        return checksum;
+    }
+
+    /**
+     * Returns a read-only buffer holding the serialized entry.
+     *
+     * @return A read-only buffer holding the serialized entry.
+     */
+    public ByteBuffer buffer() {
+        return buffer;
+    }
+
+    /**
+     * Releases the entry's reference to its buffer, allowing a pooled buffer to be reused once no other entry
+     * references it.
+     * <p>
+     * Neither the entry's buffer nor anything read from it without being copied may be used once the entry has been
+     * released. Releasing an entry more than once has no effect.
+     */
+    public void release() {
+        LentBuffer lent = this.lent;
+        if (lent != null) {
+            this.lent = null;
+            lent.release();
+        }
+    }
+
+    /**
+     * Decodes the entry with the given codec.
+     *
+     * @param codec The codec with which to decode the entry.
+     * @return The decoded entry.
+     */
+    public <E> Indexed<E> decode(JournalCodec<E> codec) throws IOException {
+        return new Indexed<>(index, codec.decode(buffer.duplicate()), buffer.remaining());
+    }
+
+    @Override
+    public String toString() {
+        return toStringHelper(this)
+                .add("index", index)
+                .add("size", size())
+                .add("checksum", checksum)
+                .toString();
+    }
+}
@@ -0,0 +1,116 @@
+package io.hamster.storage.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Readahead for sequential segment scans.
+ * <p>
+ * Segment readers that detect a sequential scan read the segment in windows of the readahead size, and read the window
+ * following the one being consumed in the background on the journal's readahead thread.
+ */
+final class Readahead {
+
+    static final Readahead DISABLED = new Readahead(null, 0);
+
+    private static final long SHUTDOWN_TIMEOUT = 5000;
+
+    private final String name;
+    private final int size;
+    private ExecutorService executor;
+    private boolean closed;
+
+    Readahead(String name, int size) {
+        this.name = name;
+        this.size = size;
+    }
+
+    /**
+     * Returns whether readahead is enabled.
+     *
+     * @return whether readahead is enabled
+     */
+    boolean isEnabled() {
+        return size > 0;
+    }
+
+    /**
+     * Returns the size of the windows in which sequential scans read a segment.
+     *
+     * @return the readahead size in bytes
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Reads the segment from the given position into the given buffer in the background.
+     *
+     * @param channel  the channel from which to read
+     * @param buffer   the cleared buffer into which to read
+     * @param position the position from which to read
+     * @return a future completed with the flipped buffer, or {@code null} if the read could not be scheduled
+     */
+    CompletableFuture<ByteBuffer> read(FileChannel channel, ByteBuffer buffer, long position) {
+        ExecutorService executor = executor();
+        if (executor == null) {
+            return null;
+        }
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    while (buffer.hasRemaining()) {
+                        if (channel.read(buffer, position + buffer.position()) <= 0) {
+                            break;
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+                buffer.flip();
+                return buffer;
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            return null;
+        }
+    }
+
+    private synchronized ExecutorService executor() {
+        if (executor == null && !closed) {
+            executor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "hamster-journal-" + name + "-readahead");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * Stops the readahead thread once pending reads are complete.
+     * <p>
+     * The thread is not interrupted, since interrupting a thread blocked in a channel read closes the channel.
+     */
+    void close() {
+        ExecutorService executor;
+        synchronized (this) {
+            closed = true;
+            executor = this.executor;
+        }
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -11,9 +11,24 @@ import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static com.google.common.base.Preconditions.*;
 
@@ -28,6 +43,9 @@ public class SegmentedJournal<E> implements Journal<E> {
         return new Builder<>();
     }
 
+    private static final int ZERO_FILL_BUFFER_SIZE = 1024 * 1024;
+    private static final long EXECUTOR_SHUTDOWN_TIMEOUT = 5000;
+
     private final Logger log = LoggerFactory.getLogger(getClass());
 
     private final String name;
@@ -40,12 +58,32 @@ public class SegmentedJournal<E> implements Journal<E> {
     private final int maxEntrySize;
     private final int maxSegmentSize;
     private final double indexDensity;
-    private final boolean flushOnCommit;
+    private final FlushPolicy flushPolicy;
+    private final boolean verifyIndexFiles;
+    private final Duration segmentIdleTimeout;
+    private final ScheduledExecutorService idleSegmentCloser;
+    private final ScheduledExecutorService flusher;
+    private final int preallocationPosition;
+    private final boolean zeroFillSegments;
+    private final ExecutorService allocator;
+    private volatile CompletableFuture<File> standbyFile;
+    private final int maxFreeSegments;
+    private final BufferPool bufferPool;
+    private final Readahead readahead;
+    private final ChecksumType checksumType;
+    private final Deque<File> freeSegments = new ArrayDeque<>();
+    private long freeSegmentSequence;
+    private final Set<JournalSegment<E>> compactingSegments = Sets.newConcurrentHashSet();
+    private final Set<JournalSegmentListener> segmentListeners = Sets.newConcurrentHashSet();
+    private ExecutorService compactor;
+    private ExecutorService sealer;
     private JournalSegment<E> currentSegment;
     private final SegmentedJournalWriter<E> writer;
     private final Collection<SegmentedJournalReader> readers = Sets.newConcurrentHashSet();
 
     private volatile long commitIndex;
+    private final Object waitMonitor = new Object();
+    private volatile int waiters;
     private volatile boolean open = true;
 
     public SegmentedJournal(
@@ -54,7 +92,15 @@ public class SegmentedJournal<E> implements Journal<E> {
             File directory,
             JournalCodec<E> codec,
             double indexDensity,
-            boolean flushOnCommit,
+            FlushPolicy flushPolicy,
+            boolean verifyIndexFiles,
+            Duration segmentIdleTimeout,
+            double preallocationThreshold,
+            boolean zeroFillSegments,
+            int maxFreeSegments,
+            boolean directBuffers,
+            int readaheadSize,
+            ChecksumType checksumType,
             int maxSegmentSize,
             int maxEntrySize) {
         this.name = name;
@@ -63,17 +109,95 @@ public class SegmentedJournal<E> implements Journal<E> {
 
         this.codec = codec;
         this.indexDensity = indexDensity;
-        this.flushOnCommit = flushOnCommit;
+        this.flushPolicy = checkNotNull(flushPolicy, "flushPolicy cannot be null");
+        this.verifyIndexFiles = verifyIndexFiles;
+        this.segmentIdleTimeout = checkNotNull(segmentIdleTimeout, "segmentIdleTimeout cannot be null");
         this.maxSegmentSize = maxSegmentSize;
         this.maxEntrySize = maxEntrySize;
+        this.preallocationPosition = (int) (maxSegmentSize * preallocationThreshold);
+        this.zeroFillSegments = zeroFillSegments;
+        this.maxFreeSegments = maxFreeSegments;
+        this.bufferPool = new BufferPool(directBuffers);
+        this.checksumType = checkNotNull(checksumType, "checksumType cannot be null");
+        this.readahead = readaheadSize > 0 ? new Readahead(name, readaheadSize) : Readahead.DISABLED;
+        this.allocator = preallocationThreshold > 0 ? startAllocator() : null;
         open();
         this.writer = new SegmentedJournalWriter<>(this);
+        this.idleSegmentCloser = segmentIdleTimeout.isZero() ? null : startIdleSegmentCloser();
+        this.flusher = flushPolicy.mode() == FlushPolicy.Mode.PERIODIC ? startFlusher() : null;
+    }
+
+    /**
+     * Starts a background thread that prepares standby segment files.
+     */
+    private ExecutorService startAllocator() {
+        return Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "hamster-journal-" + name + "-allocator");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts a dedicated thread that periodically flushes the journal.
+     */
+    private ScheduledExecutorService startFlusher() {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "hamster-journal-" + name + "-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = flushPolicy.interval().toMillis();
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                writer.flush();
+            } catch (Exception e) {
+                log.warn("Failed to flush journal", e);
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+        return executor;
+    }
+
+    /**
+     * Starts a background thread that periodically closes idle sealed segments.
+     */
+    private ScheduledExecutorService startIdleSegmentCloser() {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "hamster-journal-" + name + "-segment-closer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(segmentIdleTimeout.toMillis() / 2, 1);
+        executor.scheduleWithFixedDelay(this::closeIdleSegments, period, period, TimeUnit.MILLISECONDS);
+        return executor;
+    }
+
+    /**
+     * Closes sealed segments that have not been accessed within the segment idle timeout.
+     */
+    private void closeIdleSegments() {
+        try {
+            long idleTimeout = segmentIdleTimeout.toMillis();
+            for (JournalSegment<E> segment : segments.values()) {
+                if (segment != currentSegment && segment.closeIfIdle(idleTimeout)) {
+                    log.debug("Closed idle segment: {}", segment);
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Failed to close idle segments", e);
+        }
     }
 
     /**
      * Opens the segments.
      */
     private void open() {
+        // Delete any standby segment file left behind by a previous instance.
+        deleteStandbyFile();
+
+        // Restore the free segment files left behind by a previous instance.
+        loadFreeSegments();
+
         // Load existing log segments from disk.
         for (JournalSegment<E> segment : loadSegments()) {
             segments.put(segment.descriptor().index(), segment);
@@ -86,6 +210,7 @@ public class SegmentedJournal<E> implements Journal<E> {
                     .withId(1)
                     .withIndex(1)
                     .withMaxSegmentSize(maxSegmentSize)
+                    .withChecksumType(checksumType)
                     .build();
 
             currentSegment = createSegment(descriptor);
@@ -97,40 +222,194 @@ public class SegmentedJournal<E> implements Journal<E> {
     private JournalSegment<E> createSegment(JournalSegmentDescriptor descriptor) {
         File segmentFile = JournalSegmentFile.createSegmentFile(name, directory, descriptor.id());
 
-        RandomAccessFile randomFile = null;
-        FileChannel channel = null;
-        try {
-            randomFile = new RandomAccessFile(segmentFile, "rw");
-            randomFile.setLength(descriptor.maxSegmentSize());
-            channel = randomFile.getChannel();
+        // Reuse a free segment file or the standby segment file if one is available, otherwise allocate the file now.
+        // A recycled file still holds the entries of the deleted segment, but the checksums of those entries are salted
+        // with the deleted segment's descriptor, so they don't validate in the new segment.
+        if (!reuseFreeSegment(segmentFile, descriptor.maxSegmentSize()) && !promoteStandbyFile(segmentFile)) {
+            allocateFile(segmentFile, descriptor.maxSegmentSize());
+        }
 
+        try (FileChannel channel = openChannel(segmentFile)) {
             ByteBuffer buffer = ByteBuffer.allocate(JournalSegmentDescriptor.BYTES);
             descriptor.copyTo(buffer);
             buffer.flip();
-            channel.write(buffer);
+            channel.write(buffer, 0);
+        } catch (IOException e) {
+            throw new StorageException(e);
+        }
+
+        // The new segment is known to be empty, so it doesn't need to be scanned.
+        JournalSegment<E> segment = newSegment(new JournalSegmentFile(segmentFile), descriptor,
+                JournalSegmentIndexFile.empty(descriptor));
+        log.debug("Created segment: {}", segment);
+        return segment;
+    }
 
+    /**
+     * Allocates a segment file of the given size.
+     * <p>
+     * Any previous contents of the file are discarded. If zero-filling is enabled, the file is written with zeros so
+     * its extents are allocated before entries are written to it.
+     */
+    private void allocateFile(File file, int size) {
+        try (RandomAccessFile randomFile = new RandomAccessFile(file, "rw")) {
+            randomFile.setLength(0);
+            randomFile.setLength(size);
+            if (zeroFillSegments) {
+                FileChannel channel = randomFile.getChannel();
+                ByteBuffer zeros = ByteBuffer.allocateDirect(Math.min(size, ZERO_FILL_BUFFER_SIZE));
+                long position = 0;
+                while (position < size) {
+                    zeros.clear().limit((int) Math.min(zeros.capacity(), size - position));
+                    position += channel.write(zeros, position);
+                }
+                channel.force(false);
+            }
         } catch (IOException e) {
             throw new StorageException(e);
-        } finally {
-            try {
-                if (channel != null) {
-                    channel.close();
+        }
+    }
+
+    /**
+     * Prepares a standby segment file in the background once the current segment is filled past the preallocation
+     * threshold, so that rolling over to the next segment doesn't have to allocate a file.
+     *
+     * @param position the position of the last entry in the current segment
+     */
+    void checkPreallocation(int position) {
+        if (allocator != null && standbyFile == null && position >= preallocationPosition && !hasFreeSegment()) {
+            File file = JournalSegmentFile.createStandbyFile(name, directory);
+            standbyFile = CompletableFuture.supplyAsync(() -> {
+                allocateFile(file, maxSegmentSize);
+                return file;
+            }, allocator);
+        }
+    }
+
+    /**
+     * Renames the standby segment file, if one has been prepared, to the given segment file.
+     *
+     * @return indicates whether the standby segment file was used
+     */
+    private boolean promoteStandbyFile(File segmentFile) {
+        CompletableFuture<File> standbyFile = this.standbyFile;
+        if (standbyFile == null) {
+            return false;
+        }
+        this.standbyFile = null;
+        try {
+            File file = standbyFile.join();
+            Files.move(file.toPath(), segmentFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (Exception e) {
+            log.warn("Failed to use standby segment file", e);
+            return false;
+        }
+    }
+
+    /**
+     * Restores the free segment files found in the journal directory, deleting those that don't fit in the pool.
+     */
+    private void loadFreeSegments() {
+        File[] files = directory.listFiles(file -> file.isFile() && JournalSegmentFile.isFreeFile(name, file));
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(JournalSegmentFile::freeFileSequence));
+        synchronized (freeSegments) {
+            for (File file : files) {
+                freeSegmentSequence = Math.max(freeSegmentSequence, JournalSegmentFile.freeFileSequence(file));
+                if (freeSegments.size() < maxFreeSegments && file.length() == maxSegmentSize) {
+                    freeSegments.add(file);
+                } else {
+                    deleteFile(file);
                 }
+            }
+        }
+    }
+
+    /**
+     * Returns whether a free segment file is available.
+     */
+    private boolean hasFreeSegment() {
+        synchronized (freeSegments) {
+            return !freeSegments.isEmpty();
+        }
+    }
+
+    /**
+     * Renames a free segment file, if one is available, to the given segment file.
+     *
+     * @return indicates whether a free segment file was used
+     */
+    private boolean reuseFreeSegment(File segmentFile, int size) {
+        File file;
+        synchronized (freeSegments) {
+            file = freeSegments.pollLast();
+        }
+        if (file == null || file.length() != size) {
+            if (file != null) {
+                deleteFile(file);
+            }
+            return false;
+        }
+        try {
+            Files.move(file.toPath(), segmentFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            log.warn("Failed to reuse free segment file", e);
+            deleteFile(file);
+            return false;
+        }
+    }
 
-                if (randomFile != null) {
-                    randomFile.close();
+    /**
+     * Deletes a closed segment, moving its file to the free segment pool if segment recycling is enabled and the pool
+     * isn't full.
+     *
+     * @param segment the segment to delete
+     */
+    private void deleteSegment(JournalSegment<E> segment) {
+        if (maxFreeSegments > 0 && segment.descriptor().maxSegmentSize() == maxSegmentSize) {
+            synchronized (freeSegments) {
+                if (freeSegments.size() < maxFreeSegments) {
+                    File file = JournalSegmentFile.createFreeFile(name, directory, ++freeSegmentSequence);
+                    segment.recycle(file);
+                    freeSegments.add(file);
+                    return;
                 }
-            } catch (IOException e) {
-                //ignore
             }
         }
-        JournalSegment<E> segment = newSegment(new JournalSegmentFile(segmentFile), descriptor);
-        log.debug("Created segment: {}", segment);
-        return segment;
+        segment.delete();
+    }
+
+    private void deleteFile(File file) {
+        try {
+            Files.deleteIfExists(file.toPath());
+        } catch (IOException e) {
+            log.warn("Failed to delete file {}", file, e);
+        }
+    }
+
+    /**
+     * Deletes the standby segment file.
+     */
+    private void deleteStandbyFile() {
+        deleteFile(JournalSegmentFile.createStandbyFile(name, directory));
     }
 
     private JournalSegment<E> newSegment(JournalSegmentFile journalSegmentFile, JournalSegmentDescriptor descriptor) {
-        return new JournalSegment<>(journalSegmentFile, descriptor, codec, indexDensity, maxEntrySize);
+        return newSegment(journalSegmentFile, descriptor, null);
+    }
+
+    private JournalSegment<E> newSegment(
+            JournalSegmentFile journalSegmentFile,
+            JournalSegmentDescriptor descriptor,
+            JournalSegmentIndexFile indexFile) {
+        return new JournalSegment<>(journalSegmentFile, descriptor, storageLevel, codec, indexDensity, maxEntrySize,
+                bufferPool, readahead, indexFile);
     }
 
     /**
@@ -140,6 +419,52 @@ public class SegmentedJournal<E> implements Journal<E> {
      */
     void setCommitIndex(long index) {
         this.commitIndex = index;
+        signalWaiters();
+    }
+
+    /**
+     * Wakes up readers waiting for entries to be appended or committed.
+     */
+    void signalWaiters() {
+        if (waiters > 0) {
+            synchronized (waitMonitor) {
+                waitMonitor.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Waits until the given condition is met, the timeout elapses or the journal is closed.
+     * <p>
+     * The condition is checked each time entries are appended or committed, so callers don't have to poll.
+     *
+     * @param condition    the condition for which to wait
+     * @param timeoutNanos the maximum time to wait in nanoseconds
+     * @return indicates whether the condition was met
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    boolean await(BooleanSupplier condition, long timeoutNanos) throws InterruptedException {
+        final long deadline = System.nanoTime() + timeoutNanos;
+        synchronized (waitMonitor) {
+            // The waiter count is incremented before checking the condition, so an append that lands after the check
+            // is guaranteed to see the waiter and signal it.
+            waiters++;
+            try {
+                while (open) {
+                    if (condition.getAsBoolean()) {
+                        return true;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(waitMonitor, remaining);
+                }
+                return false;
+            } finally {
+                waiters--;
+            }
+        }
     }
 
     /**
@@ -157,7 +482,34 @@ public class SegmentedJournal<E> implements Journal<E> {
      * @return Indicates whether {@code flushOnCommit} is enabled for the log.
      */
     boolean isFlushOnCommit() {
-        return flushOnCommit;
+        return flushPolicy.mode() == FlushPolicy.Mode.COMMIT;
+    }
+
+    /**
+     * Returns the journal name.
+     *
+     * @return The journal name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the directory in which the journal's files are stored.
+     *
+     * @return The journal directory.
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Returns the journal flush policy.
+     *
+     * @return The journal flush policy.
+     */
+    FlushPolicy getFlushPolicy() {
+        return flushPolicy;
     }
 
     @Override
@@ -183,6 +535,97 @@ public class SegmentedJournal<E> implements Journal<E> {
         return reader;
     }
 
+    /**
+     * Returns a stream of the entries in the journal.
+     *
+     * @return A stream of the entries in the journal.
+     * @see #stream(long, long)
+     */
+    public Stream<Indexed<E>> stream() {
+        return stream(0, Long.MAX_VALUE);
+    }
+
+    /**
+     * Returns a stream of the entries in the given range.
+     * <p>
+     * The stream covers the entries written when the stream is created. Its spliterator splits on segment boundaries,
+     * so a parallel stream verifies and decodes segments concurrently, and {@link Stream#forEachOrdered(Consumer)}
+     * can be used to consume entries in index order. The segments covered by the stream are held open until they have
+     * been read, so a stream that is not fully consumed must be closed.
+     *
+     * @param fromIndex The first index to read.
+     * @param toIndex   The last index to read.
+     * @return A stream of the entries in the given range.
+     */
+    public Stream<Indexed<E>> stream(long fromIndex, long toIndex) {
+        JournalSpliterator.Scan<E> scan = new JournalSpliterator.Scan<>();
+        List<JournalSegment<E>> scanSegments = new ArrayList<>();
+        final long lastIndex;
+        synchronized (this) {
+            assertOpen();
+            lastIndex = Math.min(toIndex, writer.getLastIndex());
+            Long firstKey = segments.floorKey(fromIndex);
+            if (firstKey == null) {
+                firstKey = segments.firstKey();
+            }
+            if (firstKey <= lastIndex) {
+                for (JournalSegment<E> segment : segments.subMap(firstKey, true, lastIndex, true).values()) {
+                    segment.acquire();
+                    scan.add(segment);
+                    scanSegments.add(segment);
+                }
+            }
+        }
+        return StreamSupport.stream(new JournalSpliterator<>(scan, scanSegments, fromIndex, lastIndex), false)
+                .onClose(scan);
+    }
+
+    /**
+     * Reads the entries in the given range in parallel.
+     * <p>
+     * Entries are passed to the consumer concurrently from the threads of the given pool, in no particular order.
+     *
+     * @param fromIndex The first index to read.
+     * @param toIndex   The last index to read.
+     * @param pool      The pool in which to read the entries.
+     * @param consumer  The consumer to which to pass the entries.
+     * @see #parallelScan(long, long, ForkJoinPool, Consumer, boolean)
+     */
+    public void parallelScan(long fromIndex, long toIndex, ForkJoinPool pool, Consumer<Indexed<E>> consumer) {
+        parallelScan(fromIndex, toIndex, pool, consumer, false);
+    }
+
+    /**
+     * Reads the entries in the given range in parallel.
+     * <p>
+     * Segments are verified and decoded concurrently in the given pool. If {@code ordered} is set, entries are passed
+     * to the consumer one at a time in index order; otherwise they're passed concurrently in no particular order.
+     * The method returns once all the entries have been consumed.
+     *
+     * @param fromIndex The first index to read.
+     * @param toIndex   The last index to read.
+     * @param pool      The pool in which to read the entries.
+     * @param consumer  The consumer to which to pass the entries.
+     * @param ordered   Whether to pass the entries to the consumer in index order.
+     * @throws StorageException if an entry could not be read
+     */
+    public void parallelScan(
+            long fromIndex,
+            long toIndex,
+            ForkJoinPool pool,
+            Consumer<Indexed<E>> consumer,
+            boolean ordered) {
+        checkNotNull(pool, "pool cannot be null");
+        checkNotNull(consumer, "consumer cannot be null");
+        try (Stream<Indexed<E>> stream = stream(fromIndex, toIndex).parallel()) {
+            if (ordered) {
+                pool.submit(() -> stream.forEachOrdered(consumer)).join();
+            } else {
+                pool.submit(() -> stream.forEach(consumer)).join();
+            }
+        }
+    }
+
     /**
      * Returns the segment for the given index.
      *
@@ -222,10 +665,16 @@ public class SegmentedJournal<E> implements Journal<E> {
     synchronized JournalSegment<E> getNextSegment() {
         assertOpen();
         JournalSegment lastSegment = getLastSegment();
+
+        // Seal the current segment so it can be reopened without being scanned. The segment's index is persisted in
+        // the background so rolling over to the next segment doesn't wait on the disk.
+        currentSegment.sealAsync(sealer(), this::segmentSealed);
+
         JournalSegmentDescriptor descriptor = JournalSegmentDescriptor.builder()
                 .withId(lastSegment != null ? lastSegment.descriptor().id() + 1 : 1)
                 .withIndex(currentSegment.lastIndex() + 1)
                 .withMaxSegmentSize(maxSegmentSize)
+                .withChecksumType(checksumType)
                 .build();
 
         currentSegment = createSegment(descriptor);
@@ -242,7 +691,7 @@ public class SegmentedJournal<E> implements Journal<E> {
     synchronized void removeSegment(JournalSegment segment) {
         segments.remove(segment.index());
         segment.close();
-        segment.delete();
+        deleteSegment(segment);
         resetCurrentSegment();
     }
 
@@ -253,11 +702,13 @@ public class SegmentedJournal<E> implements Journal<E> {
         JournalSegment<E> lastSegment = getLastSegment();
         if (lastSegment != null) {
             currentSegment = lastSegment;
+            currentSegment.unseal();
         } else {
             JournalSegmentDescriptor descriptor = JournalSegmentDescriptor.builder()
                     .withId(1)
                     .withIndex(1)
                     .withMaxSegmentSize(maxSegmentSize)
+                    .withChecksumType(checksumType)
                     .build();
 
             currentSegment = createSegment(descriptor);
@@ -298,21 +749,149 @@ public class SegmentedJournal<E> implements Journal<E> {
      * @param index The index up to which to compact the journal.
      */
     public void compact(long index) {
+        for (JournalSegment<E> segment : detachSegments(index)) {
+            segment.close();
+            deleteSegment(segment);
+        }
+    }
+
+    /**
+     * Compacts the journal up to the given index without deleting segments on the caller's thread.
+     * <p>
+     * The compacted segments are removed from the journal and readers are reset to the new head immediately, while the
+     * segment files are deleted on a background thread once all readers have released them.
+     *
+     * @param index The index up to which to compact the journal.
+     * @return A future to be completed once the compacted segments have been deleted.
+     */
+    public CompletableFuture<Void> compactAsync(long index) {
+        List<JournalSegment<E>> compacted = detachSegments(index);
+        if (compacted.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        compactingSegments.addAll(compacted);
+        Executor executor = compactor();
+        CompletableFuture<?>[] futures = new CompletableFuture[compacted.size()];
+        for (int i = 0; i < futures.length; i++) {
+            JournalSegment<E> segment = compacted.get(i);
+            futures[i] = segment.whenReleased().thenRunAsync(() -> retireSegment(segment), executor);
+        }
+        return CompletableFuture.allOf(futures);
+    }
+
+    /**
+     * Removes the segments preceding the segment containing the given index and resets readers to the new head.
+     *
+     * @param index The index up to which to compact the journal.
+     * @return The removed segments.
+     */
+    private List<JournalSegment<E>> detachSegments(long index) {
         Map.Entry<Long, JournalSegment<E>> segmentEntry = segments.floorEntry(index);
-        if (segmentEntry != null) {
-            SortedMap<Long, JournalSegment<E>> compactSegments = segments.headMap(segmentEntry.getValue().index());
-            if (!compactSegments.isEmpty()) {
-                log.debug("{} - Compacting {} segment(s)", name, compactSegments.size());
-                for (JournalSegment<E> segment : compactSegments.values()) {
-                    segment.close();
-                    segment.delete();
-                }
+        if (segmentEntry == null) {
+            return Collections.emptyList();
+        }
+        SortedMap<Long, JournalSegment<E>> compactSegments = segments.headMap(segmentEntry.getValue().index());
+        List<JournalSegment<E>> compacted = new ArrayList<>(compactSegments.values());
+        if (!compacted.isEmpty()) {
+            log.debug("{} - Compacting {} segment(s)", name, compacted.size());
+        }
+        compactSegments.clear();
+        resetHead(segmentEntry.getValue().index());
+        return compacted;
+    }
+
+    /**
+     * Closes and deletes a compacted segment, unless it has already been deleted.
+     */
+    private void retireSegment(JournalSegment<E> segment) {
+        if (compactingSegments.remove(segment)) {
+            segment.close();
+            deleteSegment(segment);
+            log.debug("Deleted compacted segment: {}", segment);
+        }
+    }
+
+    /**
+     * Returns an executor that deletes compacted segments on a low priority background thread.
+     * <p>
+     * Once the journal is closed, segments are deleted on the calling thread instead.
+     */
+    private synchronized Executor compactor() {
+        if (compactor == null) {
+            compactor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "hamster-journal-" + name + "-compactor");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            });
+        }
+        ExecutorService compactor = this.compactor;
+        return runnable -> {
+            try {
+                compactor.execute(runnable);
+            } catch (RejectedExecutionException e) {
+                runnable.run();
+            }
+        };
+    }
+
+    /**
+     * Adds a listener to be notified when segments are sealed.
+     * <p>
+     * Segments are sealed as the journal rolls over to a new segment. Segments sealed while the journal is opened are
+     * not reported.
+     *
+     * @param listener the listener to add
+     */
+    public void addSegmentListener(JournalSegmentListener listener) {
+        segmentListeners.add(checkNotNull(listener, "listener cannot be null"));
+    }
+
+    /**
+     * Removes a segment listener.
+     *
+     * @param listener the listener to remove
+     */
+    public void removeSegmentListener(JournalSegmentListener listener) {
+        segmentListeners.remove(listener);
+    }
+
+    /**
+     * Notifies the segment listeners that a segment has been sealed.
+     */
+    private void segmentSealed(long firstIndex, long lastIndex) {
+        for (JournalSegmentListener listener : segmentListeners) {
+            try {
+                listener.onSealed(firstIndex, lastIndex);
+            } catch (RuntimeException e) {
+                log.warn("Segment listener failed", e);
             }
-            compactSegments.clear();
-            resetHead(segmentEntry.getValue().index());
         }
     }
 
+    /**
+     * Returns an executor that persists the indexes of sealed segments on a background thread.
+     * <p>
+     * Once the journal is closed, segments are sealed on the calling thread instead.
+     */
+    private synchronized Executor sealer() {
+        if (sealer == null) {
+            sealer = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "hamster-journal-" + name + "-sealer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        ExecutorService sealer = this.sealer;
+        return runnable -> {
+            try {
+                sealer.execute(runnable);
+            } catch (RejectedExecutionException e) {
+                runnable.run();
+            }
+        };
+    }
+
     /**
      * Resets journal readers to the given head.
      *
@@ -362,7 +941,7 @@ public class SegmentedJournal<E> implements Journal<E> {
 
         for (JournalSegment<E> segment : segments.values()) {
             segment.close();
-            segment.delete();
+            deleteSegment(segment);
         }
 
         segments.clear();
@@ -371,6 +950,7 @@ public class SegmentedJournal<E> implements Journal<E> {
                 .withId(1)
                 .withIndex(index)
                 .withMaxSegmentSize(maxSegmentSize)
+                .withChecksumType(checksumType)
                 .build();
         currentSegment = createSegment(descriptor);
         segments.put(index, currentSegment);
@@ -389,6 +969,9 @@ public class SegmentedJournal<E> implements Journal<E> {
 
     /**
      * Loads all segments from disk.
+     * <p>
+     * Sealed segments are restored from their footers and index files when possible and are only opened once they are
+     * read. The last segment is unsealed since it may still be written to, and is never restored from its index file.
      *
      * @return A collection of segments for the log.
      */
@@ -396,12 +979,12 @@ public class SegmentedJournal<E> implements Journal<E> {
         // Ensure log directories are created.
         directory.mkdirs();
 
-        TreeMap<Long, JournalSegment<E>> segments = new TreeMap<>();
+        TreeMap<Long, JournalSegmentFile> files = new TreeMap<>();
+        TreeMap<Long, JournalSegmentDescriptor> descriptors = new TreeMap<>();
         for (File file : directory.listFiles(File::isFile)) {
 
             // If the file looks like a segment file, attempt to load the segment.
             if (JournalSegmentFile.isSegmentFile(name, file)) {
-                JournalSegmentFile segmentFile = new JournalSegmentFile(file);
                 ByteBuffer buffer = ByteBuffer.allocate(JournalSegmentDescriptor.BYTES);
                 try (FileChannel channel = openChannel(file)) {
                     channel.read(buffer);
@@ -410,12 +993,41 @@ public class SegmentedJournal<E> implements Journal<E> {
                     throw new StorageException(e);
                 }
                 JournalSegmentDescriptor descriptor = new JournalSegmentDescriptor(buffer);
-                JournalSegment<E> segment = newSegment(new JournalSegmentFile(file), descriptor);
-                // Add the segment to the segments list.
-                log.debug("Found segment: {} ({})", segment.descriptor().id(), segmentFile.file().getName());
-                segments.put(descriptor.index(), segment);
+                files.put(descriptor.index(), new JournalSegmentFile(file));
+                descriptors.put(descriptor.index(), descriptor);
             }
         }
+
+        TreeMap<Long, JournalSegment<E>> segments = new TreeMap<>();
+        for (Map.Entry<Long, JournalSegmentFile> entry : files.entrySet()) {
+            JournalSegmentFile segmentFile = entry.getValue();
+            JournalSegmentDescriptor descriptor = descriptors.get(entry.getKey());
+            boolean last = entry.getKey().equals(files.lastKey());
+
+            JournalSegmentIndexFile indexFile = null;
+            if (!last) {
+                try (FileChannel channel = openChannel(segmentFile.file())) {
+                    indexFile = JournalSegmentIndexFile.read(segmentFile.indexFile(), descriptor, channel,
+                            maxEntrySize, verifyIndexFiles);
+                } catch (IOException e) {
+                    throw new StorageException(e);
+                }
+            }
+
+            JournalSegment<E> segment = newSegment(segmentFile, descriptor, indexFile);
+            if (last) {
+                segment.unseal();
+            } else if (indexFile == null) {
+                // The segment had to be scanned, so seal it to avoid scanning it again. Its index is persisted in the
+                // background, like the index of a segment sealed on rollover.
+                log.debug("Rebuilt index for segment: {} ({})", descriptor.id(), segmentFile.file().getName());
+                segment.sealAsync(sealer(), null);
+            }
+
+            // Add the segment to the segments list.
+            log.debug("Found segment: {} ({})", segment.descriptor().id(), segmentFile.file().getName());
+            segments.put(descriptor.index(), segment);
+        }
         return segments.values();
     }
 
@@ -429,17 +1041,79 @@ public class SegmentedJournal<E> implements Journal<E> {
 
     @Override
     public void close() {
+        if (idleSegmentCloser != null) {
+            idleSegmentCloser.shutdownNow();
+        }
+        // Let a running flush complete rather than interrupting it, which would close the segment's channel.
+        if (flusher != null) {
+            flusher.shutdown();
+            try {
+                flusher.awaitTermination(EXECUTOR_SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (allocator != null && !allocator.isShutdown()) {
+            allocator.shutdownNow();
+            try {
+                allocator.awaitTermination(EXECUTOR_SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            standbyFile = null;
+            deleteStandbyFile();
+        }
+        ExecutorService compactor;
+        ExecutorService sealer;
+        synchronized (this) {
+            compactor = this.compactor;
+            sealer = this.sealer;
+        }
+        // Wait for sealed segments to be persisted so they're reopened without being scanned.
+        if (sealer != null) {
+            sealer.shutdown();
+            try {
+                sealer.awaitTermination(EXECUTOR_SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (compactor != null) {
+            compactor.shutdown();
+        }
+        // Closing the remaining compacted segments releases them, so they're deleted on this thread.
+        compactingSegments.forEach(JournalSegment::close);
+        if (compactor != null) {
+            try {
+                compactor.awaitTermination(EXECUTOR_SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (currentSegment != null) {
+            writer.close();
+        }
+        readahead.close();
         segments.values().forEach(segment -> {
             log.debug("Closing segment: {}", segment);
             segment.close();
         });
         currentSegment = null;
+        bufferPool.clear();
         open = false;
+        signalWaiters();
     }
 
     public static class Builder<E> implements io.hamster.utils.Builder<SegmentedJournal<E>> {
 
-        private static final boolean DEFAULT_FLUSH_ON_COMMIT = false;
+        private static final boolean DEFAULT_VERIFY_INDEX_FILES = false;
+        private static final Duration DEFAULT_SEGMENT_IDLE_TIMEOUT = Duration.ofMinutes(1);
+        private static final double DEFAULT_PREALLOCATION_THRESHOLD = 0;
+        private static final boolean DEFAULT_ZERO_FILL_SEGMENTS = false;
+        private static final int DEFAULT_MAX_FREE_SEGMENTS = 0;
+        private static final boolean DEFAULT_DIRECT_BUFFERS = false;
+        private static final int DEFAULT_READAHEAD_SIZE = 0;
+        private static final ChecksumType DEFAULT_CHECKSUM_TYPE = ChecksumType.CRC32;
         private static final String DEFAULT_NAME = "hamster";
         private static final String DEFAULT_DIRECTORY = System.getProperty("user.dir");
         private static final int DEFAULT_MAX_SEGMENT_SIZE = 1024 * 1024 * 32;
@@ -453,7 +1127,15 @@ public class SegmentedJournal<E> implements Journal<E> {
         private double indexDensity = DEFAULT_INDEX_DENSITY;
         private int maxEntrySize = DEFAULT_MAX_ENTRY_SIZE;
         private int maxSegmentSize = DEFAULT_MAX_SEGMENT_SIZE;
-        private boolean flushOnCommit = DEFAULT_FLUSH_ON_COMMIT;
+        private FlushPolicy flushPolicy = FlushPolicy.never();
+        private boolean verifyIndexFiles = DEFAULT_VERIFY_INDEX_FILES;
+        private Duration segmentIdleTimeout = DEFAULT_SEGMENT_IDLE_TIMEOUT;
+        private double preallocationThreshold = DEFAULT_PREALLOCATION_THRESHOLD;
+        private boolean zeroFillSegments = DEFAULT_ZERO_FILL_SEGMENTS;
+        private int maxFreeSegments = DEFAULT_MAX_FREE_SEGMENTS;
+        private boolean directBuffers = DEFAULT_DIRECT_BUFFERS;
+        private int readaheadSize = DEFAULT_READAHEAD_SIZE;
+        private ChecksumType checksumType = DEFAULT_CHECKSUM_TYPE;
 
         protected Builder() {
 
@@ -593,7 +1275,171 @@ public class SegmentedJournal<E> implements Journal<E> {
          * @return The storage builder.
          */
         public Builder<E> withFlushOnCommit(boolean flushOnCommit) {
-            this.flushOnCommit = flushOnCommit;
+            if (flushOnCommit) {
+                this.flushPolicy = FlushPolicy.onCommit();
+            } else if (flushPolicy.mode() == FlushPolicy.Mode.COMMIT) {
+                this.flushPolicy = FlushPolicy.never();
+            }
+            return this;
+        }
+
+        /**
+         * Sets the journal flush policy, returning the builder for method chaining.
+         * <p>
+         * The flush policy determines when entries written to the journal are flushed to disk. Writers can wait for
+         * entries to be flushed with {@link JournalWriter#whenDurable(long)}.
+         * <p>
+         * By default, flushing is left to the operating system.
+         *
+         * @param flushPolicy The journal flush policy.
+         * @return The storage builder.
+         */
+        public Builder<E> withFlushPolicy(FlushPolicy flushPolicy) {
+            this.flushPolicy = checkNotNull(flushPolicy, "flushPolicy cannot be null");
+            return this;
+        }
+
+        /**
+         * Sets whether to verify the checksum of sealed segments against their index files on startup, returning the
+         * builder for method chaining.
+         * <p>
+         * Sealed segments are reopened from their index files without scanning their entries. The index file is always
+         * checked against the last entry of its segment. When verification is enabled, the checksum of all entries in
+         * the segment is verified as well, at the cost of reading every sealed segment on startup.
+         *
+         * @param verifyIndexFiles Whether to verify segment checksums against index files on startup.
+         * @return The storage builder.
+         */
+        public Builder<E> withVerifyIndexFiles(boolean verifyIndexFiles) {
+            this.verifyIndexFiles = verifyIndexFiles;
+            return this;
+        }
+
+        /**
+         * Sets the time after which idle sealed segments are closed, returning the builder for method chaining.
+         * <p>
+         * Sealed segments are opened lazily when they are read and closed again once they have not been read for the
+         * idle timeout, releasing their file handles. A zero timeout keeps sealed segments open once they are read.
+         * <p>
+         * By default, the segment idle timeout is one minute.
+         *
+         * @param segmentIdleTimeout The time after which idle sealed segments are closed.
+         * @return The storage builder.
+         * @throws IllegalArgumentException if the {@code segmentIdleTimeout} is negative
+         */
+        public Builder<E> withSegmentIdleTimeout(Duration segmentIdleTimeout) {
+            checkNotNull(segmentIdleTimeout, "segmentIdleTimeout cannot be null");
+            checkArgument(!segmentIdleTimeout.isNegative(), "segmentIdleTimeout cannot be negative");
+            this.segmentIdleTimeout = segmentIdleTimeout;
+            return this;
+        }
+
+        /**
+         * Sets the segment preallocation threshold, returning the builder for method chaining.
+         * <p>
+         * Once the current segment is filled past the given fraction of the maximum segment size, the file for the next
+         * segment is allocated on a background thread, so that rolling over to the next segment doesn't allocate a file
+         * on the append path. A threshold of {@code 0} disables preallocation.
+         * <p>
+         * By default, segments are not preallocated.
+         *
+         * @param preallocationThreshold The fraction of the current segment after which the next segment is allocated.
+         * @return The storage builder.
+         * @throws IllegalArgumentException if the threshold is not between 0 and 1
+         */
+        public Builder<E> withPreallocationThreshold(double preallocationThreshold) {
+            checkArgument(preallocationThreshold >= 0 && preallocationThreshold <= 1,
+                    "preallocationThreshold must be between 0 and 1");
+            this.preallocationThreshold = preallocationThreshold;
+            return this;
+        }
+
+        /**
+         * Sets whether to zero-fill segment files when they are allocated, returning the builder for method chaining.
+         * <p>
+         * Zero-filling a segment file allocates its extents up front so that the first writes to the segment don't fault
+         * on sparse regions of the file. It is best combined with {@link #withPreallocationThreshold(double)} so that
+         * segment files are zero-filled in the background.
+         *
+         * @param zeroFillSegments Whether to zero-fill segment files when they are allocated.
+         * @return The storage builder.
+         */
+        public Builder<E> withZeroFillSegments(boolean zeroFillSegments) {
+            this.zeroFillSegments = zeroFillSegments;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of free segment files to keep for reuse, returning the builder for method chaining.
+         * <p>
+         * When segment recycling is enabled, the files of compacted or truncated segments are kept in a free pool of up
+         * to the given size, and new segments are created by renaming a free file instead of allocating a new one.
+         * A value of {@code 0} disables segment recycling. Recycled files aren't cleaned: the entries of a deleted segment
+         * are checksummed with a salt derived from its descriptor, so they can't be recovered as part of a new segment.
+         * <p>
+         * By default, segments are not recycled.
+         *
+         * @param maxFreeSegments The maximum number of free segment files to keep.
+         * @return The storage builder.
+         * @throws IllegalArgumentException if the number of free segments is negative
+         */
+        public Builder<E> withMaxFreeSegments(int maxFreeSegments) {
+            checkArgument(maxFreeSegments >= 0, "maxFreeSegments cannot be negative");
+            this.maxFreeSegments = maxFreeSegments;
+            return this;
+        }
+
+        /**
+         * Sets whether segment readers use direct buffers, returning the builder for method chaining.
+         * <p>
+         * Readers and writers borrow their buffers from a pool shared by the journal and return them when they're
+         * closed. Direct buffers keep the buffered segment data off the heap and save a copy on each channel read.
+         * Writers always stage entries in direct buffers, since every entry they buffer is written to the channel.
+         * <p>
+         * By default, readers use heap buffers.
+         *
+         * @param directBuffers Whether to use direct buffers.
+         * @return The storage builder.
+         */
+        public Builder<E> withDirectBuffers(boolean directBuffers) {
+            this.directBuffers = directBuffers;
+            return this;
+        }
+
+        /**
+         * Sets the readahead size for sequential segment scans, returning the builder for method chaining.
+         * <p>
+         * A segment reader that reads through a segment sequentially, such as a lagging follower catching up on old
+         * segments, switches to reading the segment in windows of the readahead size and reads the next window in the
+         * background while entries are read from the current one. Readahead only applies to segments that are read
+         * through a file channel rather than a memory mapping. A value of {@code 0} disables readahead.
+         * <p>
+         * By default, readahead is disabled.
+         *
+         * @param readaheadSize The readahead size in bytes.
+         * @return The storage builder.
+         * @throws IllegalArgumentException if the readahead size is negative
+         */
+        public Builder<E> withReadaheadSize(int readaheadSize) {
+            checkArgument(readaheadSize >= 0, "readaheadSize cannot be negative");
+            this.readaheadSize = readaheadSize;
+            return this;
+        }
+
+        /**
+         * Sets the type of the checksums of journal entries, returning the builder for method chaining.
+         * <p>
+         * The checksum type is recorded in each segment, so it only applies to segments created after the journal is
+         * opened. Existing segments keep the checksum type with which they were written.
+         * <p>
+         * By default, entries are checksummed with {@link ChecksumType#CRC32}.
+         *
+         * @param checksumType The entry checksum type.
+         * @return The storage builder.
+         * @throws NullPointerException if the checksum type is null
+         */
+        public Builder<E> withChecksumType(ChecksumType checksumType) {
+            this.checksumType = checkNotNull(checksumType, "checksumType cannot be null");
             return this;
         }
 
@@ -605,7 +1451,15 @@ public class SegmentedJournal<E> implements Journal<E> {
                     directory,
                     codec,
                     indexDensity,
-                    flushOnCommit,
+                    flushPolicy,
+                    verifyIndexFiles,
+                    segmentIdleTimeout,
+                    preallocationThreshold,
+                    zeroFillSegments,
+                    maxFreeSegments,
+                    directBuffers,
+                    readaheadSize,
+                    checksumType,
                     maxSegmentSize,
                     maxEntrySize
             );
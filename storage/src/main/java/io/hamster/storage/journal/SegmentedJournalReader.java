@@ -1,6 +1,8 @@
 package io.hamster.storage.journal;
 
 import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 public class SegmentedJournalReader<E> implements JournalReader<E> {
 
@@ -20,14 +22,17 @@ public class SegmentedJournalReader<E> implements JournalReader<E> {
      * Initializes the reader to the given index.
      */
     private void initialize(long index) {
-        currentSegment = journal.getSegment(index);
+        currentSegment = journal.getSegment(index - 1);
         currentSegment.acquire();
         currentReader = currentSegment.createReader();
-        long nextIndex = getNextIndex();
-        while (index > nextIndex && hasNext()) {
-            next();
-            nextIndex = getNextIndex();
-        }
+        currentReader.reset(readableIndex(index));
+    }
+
+    /**
+     * Limits the given index to the entries the reader may read in its mode.
+     */
+    private long readableIndex(long index) {
+        return mode == Mode.COMMITS ? Math.min(index, journal.getCommitIndex() + 1) : index;
     }
 
 
@@ -72,44 +77,107 @@ public class SegmentedJournalReader<E> implements JournalReader<E> {
         return (nextIndex <= commitIndex) && hasNextEntry();
     }
 
+    /**
+     * Waits for the next entry to become readable.
+     * <p>
+     * Rather than polling {@link #hasNext()}, the calling thread is woken up by the journal writer when entries are
+     * appended or, for {@link Mode#COMMITS} readers, committed.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit    the time unit of the timeout
+     * @return indicates whether a next entry is available
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public boolean awaitNext(long timeout, TimeUnit unit) throws InterruptedException {
+        return hasNext() || journal.await(this::isNextWritten, unit.toNanos(timeout));
+    }
+
+    /**
+     * Returns whether the next entry has been written and is readable, without reading from the segment until the
+     * writer has moved past the reader.
+     */
+    private boolean isNextWritten() {
+        return getNextIndex() <= journal.writer().getWrittenIndex() && hasNext();
+    }
+
     private boolean hasNextEntry() {
-        if (currentReader.hasNext()) {
-            return true;
-        }
+        return currentReader.hasNext() || (nextSegment() && currentReader.hasNext());
+    }
 
+    /**
+     * Moves the reader to the next segment if it directly follows the entries read from the current segment.
+     *
+     * @return indicates whether the reader moved to the next segment
+     */
+    private boolean nextSegment() {
         JournalSegment<E> nextSegment = journal.getNextSegment(currentSegment.index());
         if (nextSegment != null && nextSegment.index() == getNextIndex()) {
             previousEntry = currentReader.getCurrentEntry();
+            currentReader.close();
             currentSegment.release();
             currentSegment = nextSegment;
             currentSegment.acquire();
             currentReader = currentSegment.createReader();
-
-            return currentReader.hasNext();
+            return true;
         }
         return false;
     }
 
-
     @Override
     public Indexed<E> next() {
-        if (!currentReader.hasNext()) {
-            JournalSegment<E> nextSegment = journal.getNextSegment(currentSegment.index());
-            if (nextSegment != null && nextSegment.index() == getNextIndex()) {
-                previousEntry = currentReader.getCurrentEntry();
-                currentSegment.release();
-                currentSegment = nextSegment;
-                currentSegment.acquire();
-                currentReader = currentSegment.createReader();
-                return currentReader.next();
-            } else {
-                throw new NoSuchElementException();
+        if (!currentReader.hasNext() && !nextSegment()) {
+            throw new NoSuchElementException();
+        }
+        return currentReader.next();
+    }
+
+    @Override
+    public RawEntry nextRaw() {
+        if (!currentReader.hasNext() && !nextSegment()) {
+            throw new NoSuchElementException();
+        }
+        return currentReader.nextRaw();
+    }
+
+    /**
+     * Reads a batch of entries, crossing segment boundaries as needed.
+     * <p>
+     * The commit index is checked once for the whole batch, and entries are read by the segment readers in bulk.
+     */
+    @Override
+    public int readBatch(int maxEntries, int maxBytes, Consumer<Indexed<E>> consumer) {
+        if (mode == Mode.COMMITS) {
+            maxEntries = (int) Math.min(maxEntries, Math.max(0, journal.getCommitIndex() - getNextIndex() + 1));
+        }
+        BatchConsumer<E> batch = new BatchConsumer<>(consumer);
+        while (batch.entries < maxEntries && batch.bytes < maxBytes) {
+            if (!currentReader.hasNext() && !nextSegment()) {
+                break;
             }
-        } else {
-            previousEntry = currentReader.getCurrentEntry();
-            return currentReader.next();
+            currentReader.readBatch(maxEntries - batch.entries,
+                    (int) Math.min(Integer.MAX_VALUE, maxBytes - batch.bytes), batch);
+        }
+        return batch.entries;
+    }
+
+    /**
+     * Consumer that counts the entries and bytes passed to a batch consumer.
+     */
+    private static final class BatchConsumer<E> implements Consumer<Indexed<E>> {
+        private final Consumer<Indexed<E>> consumer;
+        private int entries;
+        private long bytes;
+
+        private BatchConsumer(Consumer<Indexed<E>> consumer) {
+            this.consumer = consumer;
         }
 
+        @Override
+        public void accept(Indexed<E> entry) {
+            consumer.accept(entry);
+            entries++;
+            bytes += entry.size();
+        }
     }
 
     @Override
@@ -125,52 +193,37 @@ public class SegmentedJournalReader<E> implements JournalReader<E> {
     @Override
     public void reset(long index) {
 
-        // If the current segment is not open, it has been replaced. Reset the segments.
-        if (!currentSegment.isOpen()) {
+        // If the current segment is not open or has been compacted, it has been replaced. Reset the segments.
+        if (!currentSegment.isOpen() || currentSegment.index() < journal.getFirstSegment().index()) {
             reset();
         }
 
-        if (index < currentReader.getNextIndex()) {
-            rewind(index);
-        } else if (index > currentReader.getNextIndex()) {
-            forward(index);
-        } else {
-            currentReader.reset(index);
-        }
-    }
-
-    /**
-     * Fast forwards the journal to the given index.
-     */
-    private void forward(long index) {
-        while (index > currentReader.getNextIndex() && hasNext()) {
-            next();
-        }
+        seek(readableIndex(index));
     }
 
     /**
-     * Rewinds the journal to the given index.
+     * Moves the reader to the given index without decoding any entries.
+     * <p>
+     * The segment holding the entry preceding the index is looked up in the segment map, and the segment reader seeks
+     * to the index through the segment's sparse index, skipping the entries in between by their headers.
      */
-    private void rewind(long index) {
-
-        if (currentSegment.index() >= index) {
-            //Why not use index , but index-1  , because get the previous entry
-            JournalSegment<E> segment = journal.getSegment(index - 1);
-            if (segment != null) {
-                currentReader.close();
-                currentSegment.release();
-                currentSegment = segment;
-                currentSegment.acquire();
-                currentReader = currentSegment.createReader();
-            }
+    private void seek(long index) {
+        JournalSegment<E> segment = journal.getSegment(index - 1);
+        if (segment != currentSegment) {
+            currentReader.close();
+            currentSegment.release();
+            currentSegment = segment;
+            currentSegment.acquire();
+            currentReader = currentSegment.createReader();
         }
         currentReader.reset(index);
-        previousEntry = currentReader.getCurrentEntry();
+        previousEntry = null;
     }
 
     @Override
     public void close() {
         currentReader.close();
+        currentSegment.release();
         journal.closeReader(this);
     }
 }
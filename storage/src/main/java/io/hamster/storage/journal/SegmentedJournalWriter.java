@@ -1,18 +1,36 @@
 package io.hamster.storage.journal;
 
+import io.hamster.storage.StorageException;
+
 import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
 
 public class SegmentedJournalWriter<E> implements JournalWriter<E> {
 
     private final SegmentedJournal<E> journal;
+    private final FlushPolicy flushPolicy;
+    private final NavigableMap<Long, List<CompletableFuture<Long>>> durabilityFutures = new TreeMap<>();
+    private final Object flushLock = new Object();
     private JournalSegment<E> currentSegment;
-    private MappableJournalSegmentWriter<E> currentWriter;
+    private volatile MappableJournalSegmentWriter<E> currentWriter;
+    private volatile long writtenIndex;
+    private volatile long durableIndex;
+    private long truncations;
 
     public SegmentedJournalWriter(SegmentedJournal<E> journal) {
         this.journal = journal;
+        this.flushPolicy = journal.getFlushPolicy();
         this.currentSegment = journal.getLastSegment();
         currentSegment.acquire();
         this.currentWriter = currentSegment.writer();
+        this.writtenIndex = currentWriter.getLastIndex();
+        this.durableIndex = writtenIndex;
     }
 
     @Override
@@ -30,22 +48,41 @@ public class SegmentedJournalWriter<E> implements JournalWriter<E> {
         return currentWriter.getNextIndex();
     }
 
+    /**
+     * Returns the index of the last entry written to the journal.
+     * <p>
+     * Unlike {@link #getLastIndex()}, this may be read safely from threads other than the writer's.
+     *
+     * @return the index of the last entry written to the journal
+     */
+    long getWrittenIndex() {
+        return writtenIndex;
+    }
+
+    /**
+     * Returns the index up to which entries have been flushed to disk.
+     *
+     * @return the index up to which entries have been flushed to disk
+     */
+    public long getDurableIndex() {
+        return durableIndex;
+    }
+
     @Override
     public <T extends E> Indexed<T> append(T entry) {
+        Indexed<T> indexed;
         try {
-            return currentWriter.append(entry);
+            indexed = currentWriter.append(entry);
         } catch (BufferOverflowException e) {
             //First entry can not write , the entry size is too large
             if (currentSegment.index() == currentWriter.getNextIndex()) {
                 throw e;
             }
-            currentWriter.flush();
-            currentSegment.release();
-            currentSegment = journal.getNextSegment();
-            currentSegment.acquire();
-            currentWriter = currentSegment.writer();
-            return currentWriter.append(entry);
+            nextSegment();
+            indexed = currentWriter.append(entry);
         }
+        written();
+        return indexed;
     }
 
     @Override
@@ -57,12 +94,205 @@ public class SegmentedJournalWriter<E> implements JournalWriter<E> {
             if (currentSegment.index() == currentWriter.getNextIndex()) {
                 throw e;
             }
+            nextSegment();
+            currentWriter.append(entry);
+        }
+        written();
+    }
+
+    @Override
+    public <T extends E> List<Indexed<T>> appendBatch(List<T> entries) {
+        List<Indexed<T>> appended = new ArrayList<>(entries.size());
+        try {
+            while (appended.size() < entries.size()) {
+                try {
+                    appended.addAll(currentWriter.appendBatch(entries.subList(appended.size(), entries.size())));
+                } catch (BufferOverflowException e) {
+                    //First entry can not write , the entry size is too large
+                    if (currentSegment.index() == currentWriter.getNextIndex()) {
+                        throw e;
+                    }
+                    nextSegment();
+                    continue;
+                }
+                // The segment writer stops short of the batch only when the segment is full.
+                if (appended.size() < entries.size()) {
+                    nextSegment();
+                }
+            }
+        } finally {
+            written();
+        }
+        return appended;
+    }
+
+    @Override
+    public void appendRaw(long index, ByteBuffer entry) {
+        seek(index);
+        try {
+            currentWriter.appendRaw(index, entry);
+        } catch (BufferOverflowException e) {
+            //First entry can not write , the entry size is too large
+            if (currentSegment.index() == currentWriter.getNextIndex()) {
+                throw e;
+            }
+            nextSegment();
+            currentWriter.appendRaw(index, entry);
+        }
+        written();
+    }
+
+    @Override
+    public void appendRaw(RawEntry entry) {
+        seek(entry.index());
+        try {
+            currentWriter.appendRaw(entry);
+        } catch (BufferOverflowException e) {
+            //First entry can not write , the entry size is too large
+            if (currentSegment.index() == currentWriter.getNextIndex()) {
+                throw e;
+            }
+            nextSegment();
+            currentWriter.appendRaw(entry);
+        }
+        written();
+    }
+
+    @Override
+    public int appendRawBatch(List<RawEntry> entries) {
+        if (entries.isEmpty()) {
+            return 0;
+        }
+        seek(entries.get(0).index());
+        int appended = 0;
+        try {
+            while (appended < entries.size()) {
+                try {
+                    appended += currentWriter.appendRawBatch(entries.subList(appended, entries.size()));
+                } catch (BufferOverflowException e) {
+                    //First entry can not write , the entry size is too large
+                    if (currentSegment.index() == currentWriter.getNextIndex()) {
+                        throw e;
+                    }
+                    nextSegment();
+                    continue;
+                }
+                // The segment writer stops short of the batch only when the segment is full.
+                if (appended < entries.size()) {
+                    nextSegment();
+                }
+            }
+        } finally {
+            written();
+        }
+        return appended;
+    }
+
+    /**
+     * Truncates the journal if the entry at the given index replaces written entries.
+     * <p>
+     * Entries received from a leader may overwrite entries in earlier segments, so the journal is truncated here
+     * rather than by the segment writer, which only truncates its own segment.
+     */
+    private void seek(long index) {
+        if (index < getNextIndex()) {
+            truncate(index - 1);
+        }
+    }
+
+    /**
+     * Rolls the writer over to a new segment.
+     * <p>
+     * The segment writer is replaced under the flush lock, so a concurrent {@link #flush()} never flushes the writer of
+     * a segment that's being sealed.
+     */
+    private void nextSegment() {
+        final long index;
+        final long truncations = truncations();
+        synchronized (flushLock) {
             currentWriter.flush();
+            index = currentWriter.getLastIndex();
             currentSegment.release();
             currentSegment = journal.getNextSegment();
             currentSegment.acquire();
             currentWriter = currentSegment.writer();
-            currentWriter.append(entry);
+        }
+        markDurable(index, truncations);
+    }
+
+    /**
+     * Records the last written index and flushes the journal if required by the flush policy.
+     */
+    private void written() {
+        long index = currentWriter.getLastIndex();
+        writtenIndex = index;
+        journal.signalWaiters();
+        journal.checkPreallocation(currentWriter.getLastPosition());
+        if (flushPolicy.mode() == FlushPolicy.Mode.ENTRIES && index - durableIndex >= flushPolicy.entries()) {
+            flush();
+        }
+    }
+
+    /**
+     * Records the last written index after entries were removed from the tail of the journal.
+     */
+    private void truncated() {
+        synchronized (durabilityFutures) {
+            truncations++;
+            writtenIndex = currentWriter.getLastIndex();
+            if (durableIndex > writtenIndex) {
+                durableIndex = writtenIndex;
+            }
+        }
+    }
+
+    private long truncations() {
+        synchronized (durabilityFutures) {
+            return truncations;
+        }
+    }
+
+    /**
+     * Marks entries up to the given index as durable, completing the futures waiting for them.
+     *
+     * @param index       the index up to which entries have been flushed
+     * @param truncations the number of truncations when the flushed index was read
+     */
+    private void markDurable(long index, long truncations) {
+        List<CompletableFuture<Long>> futures = new ArrayList<>();
+        synchronized (durabilityFutures) {
+            // If the journal was truncated in the meantime, the flushed entries may no longer be in the journal.
+            if (truncations != this.truncations || index <= durableIndex) {
+                return;
+            }
+            durableIndex = index;
+            Map<Long, List<CompletableFuture<Long>>> durable = durabilityFutures.headMap(index, true);
+            durable.values().forEach(futures::addAll);
+            durable.clear();
+        }
+        futures.forEach(future -> future.complete(index));
+    }
+
+    /**
+     * Returns a future to be completed once entries up to the given index have been flushed to disk.
+     * <p>
+     * The future is completed by whichever thread flushes the journal, according to the journal's {@link FlushPolicy}.
+     * With {@link FlushPolicy#never()}, futures are only completed when the journal rolls over to a new segment or is
+     * flushed explicitly.
+     *
+     * @param index The index up to which entries must be durable.
+     * @return A future to be completed with the durable index once it is greater than or equal to {@code index}.
+     */
+    @Override
+    public CompletableFuture<Long> whenDurable(long index) {
+        synchronized (durabilityFutures) {
+            long durableIndex = this.durableIndex;
+            if (index <= durableIndex) {
+                return CompletableFuture.completedFuture(durableIndex);
+            }
+            CompletableFuture<Long> future = new CompletableFuture<>();
+            durabilityFutures.computeIfAbsent(index, i -> new ArrayList<>(1)).add(future);
+            return future;
         }
     }
 
@@ -70,7 +300,7 @@ public class SegmentedJournalWriter<E> implements JournalWriter<E> {
     public void commit(long index) {
         if (index > journal.getCommitIndex()) {
             journal.setCommitIndex(index);
-            if (journal.isFlushOnCommit()) {
+            if (flushPolicy.mode() == FlushPolicy.Mode.COMMIT) {
                 flush();
             }
         }
@@ -79,10 +309,13 @@ public class SegmentedJournalWriter<E> implements JournalWriter<E> {
     @Override
     public void reset(long index) {
         if (index > currentSegment.index()) {
-            currentSegment.release();
-            currentSegment = journal.resetSegments(index);
-            currentSegment.acquire();
-            currentWriter = currentSegment.writer();
+            synchronized (flushLock) {
+                currentSegment.release();
+                currentSegment = journal.resetSegments(index);
+                currentSegment.acquire();
+                currentWriter = currentSegment.writer();
+                truncated();
+            }
         } else {
             truncate(index - 1);
         }
@@ -95,28 +328,58 @@ public class SegmentedJournalWriter<E> implements JournalWriter<E> {
             throw new IndexOutOfBoundsException("Cannot truncate committed index: " + index);
         }
 
-        while (index < currentSegment.index() && currentSegment != journal.getFirstSegment()) {
-            currentSegment.release();
-            journal.removeSegment(currentSegment);
-            currentSegment = journal.getLastSegment();
-            currentSegment.acquire();
-            currentWriter = currentSegment.writer();
-        }
+        synchronized (flushLock) {
+            while (index < currentSegment.index() && currentSegment != journal.getFirstSegment()) {
+                currentSegment.release();
+                journal.removeSegment(currentSegment);
+                currentSegment = journal.getLastSegment();
+                currentSegment.acquire();
+                currentWriter = currentSegment.writer();
+            }
 
-        // Truncate the current index.
-        currentWriter.truncate(index);
+            // Truncate the current index.
+            currentWriter.truncate(index);
+            truncated();
+        }
 
         // Reset segment readers.
         journal.resetTail(index + 1);
     }
 
+    /**
+     * Flushes written entries to disk.
+     * <p>
+     * The journal may be flushed concurrently with appends, e.g. by the periodic flusher thread. Flushes are serialized
+     * with rolling over to a new segment, truncating and closing the writer by the flush lock, so the flushed segment
+     * writer is never replaced or closed while it's being flushed.
+     */
     @Override
     public void flush() {
-
+        final long index;
+        final long truncations;
+        synchronized (durabilityFutures) {
+            index = writtenIndex;
+            truncations = this.truncations;
+        }
+        if (index > durableIndex) {
+            synchronized (flushLock) {
+                currentWriter.flush();
+            }
+            markDurable(index, truncations);
+        }
     }
 
     @Override
     public void close() {
-        currentWriter.close();
+        synchronized (flushLock) {
+            flush();
+            currentWriter.close();
+        }
+        List<CompletableFuture<Long>> futures = new ArrayList<>();
+        synchronized (durabilityFutures) {
+            durabilityFutures.values().forEach(futures::addAll);
+            durabilityFutures.clear();
+        }
+        futures.forEach(future -> future.completeExceptionally(new StorageException("Journal closed")));
     }
 }
@@ -0,0 +1,102 @@
+package io.hamster.storage.journal;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * xxHash64 checksum, truncated to its lower 32 bits.
+ * <p>
+ * The hash is computed with a seed of {@code 0}, reading the buffer in little-endian order as specified by xxHash.
+ */
+final class XxHash64Checksum implements EntryChecksum {
+
+    private static final long PRIME1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME3 = 0x165667B19E3779F9L;
+    private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+    @Override
+    public int compute(ByteBuffer buffer) {
+        return (int) hash(buffer);
+    }
+
+    /**
+     * Computes the 64-bit hash of the remaining bytes in the given buffer.
+     */
+    static long hash(ByteBuffer buffer) {
+        final boolean bigEndian = buffer.order() == ByteOrder.BIG_ENDIAN;
+        final int limit = buffer.limit();
+        final int length = limit - buffer.position();
+        int position = buffer.position();
+        long hash;
+
+        if (length >= 32) {
+            long v1 = PRIME1 + PRIME2;
+            long v2 = PRIME2;
+            long v3 = 0;
+            long v4 = -PRIME1;
+            do {
+                v1 = round(v1, getLong(buffer, position, bigEndian));
+                v2 = round(v2, getLong(buffer, position + 8, bigEndian));
+                v3 = round(v3, getLong(buffer, position + 16, bigEndian));
+                v4 = round(v4, getLong(buffer, position + 24, bigEndian));
+                position += 32;
+            } while (position <= limit - 32);
+
+            hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            hash = mergeRound(hash, v1);
+            hash = mergeRound(hash, v2);
+            hash = mergeRound(hash, v3);
+            hash = mergeRound(hash, v4);
+        } else {
+            hash = PRIME5;
+        }
+
+        hash += length;
+
+        while (position <= limit - 8) {
+            hash ^= round(0, getLong(buffer, position, bigEndian));
+            hash = Long.rotateLeft(hash, 27) * PRIME1 + PRIME4;
+            position += 8;
+        }
+        if (position <= limit - 4) {
+            hash ^= (getInt(buffer, position, bigEndian) & 0xFFFFFFFFL) * PRIME1;
+            hash = Long.rotateLeft(hash, 23) * PRIME2 + PRIME3;
+            position += 4;
+        }
+        while (position < limit) {
+            hash ^= (buffer.get(position) & 0xFFL) * PRIME5;
+            hash = Long.rotateLeft(hash, 11) * PRIME1;
+            position++;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= PRIME2;
+        hash ^= hash >>> 29;
+        hash *= PRIME3;
+        hash ^= hash >>> 32;
+        return hash;
+    }
+
+    private static long round(long acc, long input) {
+        acc += input * PRIME2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * PRIME1;
+    }
+
+    private static long mergeRound(long acc, long value) {
+        acc ^= round(0, value);
+        return acc * PRIME1 + PRIME4;
+    }
+
+    private static long getLong(ByteBuffer buffer, int position, boolean bigEndian) {
+        final long value = buffer.getLong(position);
+        return bigEndian ? Long.reverseBytes(value) : value;
+    }
+
+    private static int getInt(ByteBuffer buffer, int position, boolean bigEndian) {
+        final int value = buffer.getInt(position);
+        return bigEndian ? Integer.reverseBytes(value) : value;
+    }
+}
@@ -20,6 +20,18 @@ public interface JournalIndex {
      */
     Position lookup(long index);
 
+    /**
+     * Looks up the position of the given index, storing the result in the given holder.
+     *
+     * @param index the index to lookup
+     * @param holder the position to update with the result of the lookup
+     * @return the given holder, or {@code null} if no position exists for the index or a lesser index
+     */
+    default Position lookup(long index, Position holder) {
+        Position position = lookup(index);
+        return position != null ? holder.set(position.index(), position.position()) : null;
+    }
+
     /**
      * Truncates the index to the given index.
      *
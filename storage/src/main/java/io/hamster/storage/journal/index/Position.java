@@ -21,14 +21,26 @@ import static com.google.common.base.MoreObjects.toStringHelper;
  * Journal index position.
  */
 public class Position {
-  private final long index;
-  private final int position;
+  private long index;
+  private int position;
+
+  public Position() {
+  }
 
   public Position(long index, int position) {
     this.index = index;
     this.position = position;
   }
 
+  /**
+   * Updates the position in place so that holders can be reused across lookups.
+   */
+  Position set(long index, int position) {
+    this.index = index;
+    this.position = position;
+    return this;
+  }
+
   public long index() {
     return index;
   }
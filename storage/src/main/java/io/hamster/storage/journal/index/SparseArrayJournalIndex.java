@@ -0,0 +1,115 @@
+package io.hamster.storage.journal.index;
+
+import java.util.Arrays;
+
+/**
+ * Sparse index backed by primitive arrays.
+ * <p>
+ * Indexes are appended in ascending order, so entries are kept in a pair of growable {@code long[]}/{@code int[]}
+ * arrays and looked up with a binary search. Neither indexing nor lookups into a caller-owned {@link Position}
+ * allocate.
+ */
+public class SparseArrayJournalIndex implements JournalIndex {
+
+    private static final int MIN_DENSITY = 1000;
+    private static final int INITIAL_CAPACITY = 16;
+    private final int density;
+    private long[] indexes = new long[INITIAL_CAPACITY];
+    private int[] positions = new int[INITIAL_CAPACITY];
+    private int size;
+
+    public SparseArrayJournalIndex(double density) {
+        this.density = (int) Math.ceil(MIN_DENSITY / (density * MIN_DENSITY));
+    }
+
+    /**
+     * Returns the number of indexed positions.
+     *
+     * @return the number of indexed positions
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the index stored at the given slot.
+     *
+     * @param slot the slot in the index
+     * @return the index stored at the given slot
+     */
+    public long indexAt(int slot) {
+        return indexes[slot];
+    }
+
+    /**
+     * Returns the position stored at the given slot.
+     *
+     * @param slot the slot in the index
+     * @return the position stored at the given slot
+     */
+    public int positionAt(int slot) {
+        return positions[slot];
+    }
+
+    @Override
+    public void index(long index, int position) {
+        if (index % density == 0) {
+            // Fast path: indexes are appended in ascending order.
+            if (size == 0 || index > indexes[size - 1]) {
+                ensureCapacity(size + 1);
+                indexes[size] = index;
+                positions[size] = position;
+                size++;
+                return;
+            }
+
+            // The index is being rewritten, e.g. when a segment is rescanned.
+            int slot = Arrays.binarySearch(indexes, 0, size, index);
+            if (slot >= 0) {
+                positions[slot] = position;
+            } else {
+                slot = -(slot + 1);
+                ensureCapacity(size + 1);
+                System.arraycopy(indexes, slot, indexes, slot + 1, size - slot);
+                System.arraycopy(positions, slot, positions, slot + 1, size - slot);
+                indexes[slot] = index;
+                positions[slot] = position;
+                size++;
+            }
+        }
+    }
+
+    @Override
+    public Position lookup(long index) {
+        int slot = floor(index);
+        return slot >= 0 ? new Position(indexes[slot], positions[slot]) : null;
+    }
+
+    @Override
+    public Position lookup(long index, Position holder) {
+        int slot = floor(index);
+        return slot >= 0 ? holder.set(indexes[slot], positions[slot]) : null;
+    }
+
+    @Override
+    public void truncate(long index) {
+        int slot = Arrays.binarySearch(indexes, 0, size, index);
+        size = slot >= 0 ? slot + 1 : -(slot + 1);
+    }
+
+    /**
+     * Returns the slot of the greatest index less than or equal to the given index, or {@code -1} if none exists.
+     */
+    private int floor(long index) {
+        int slot = Arrays.binarySearch(indexes, 0, size, index);
+        return slot >= 0 ? slot : -(slot + 1) - 1;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > indexes.length) {
+            int newCapacity = Math.max(capacity, indexes.length << 1);
+            indexes = Arrays.copyOf(indexes, newCapacity);
+            positions = Arrays.copyOf(positions, newCapacity);
+        }
+    }
+}
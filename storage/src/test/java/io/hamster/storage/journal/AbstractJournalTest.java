@@ -1,18 +1,32 @@
 package io.hamster.storage.journal;
 
+import com.google.common.collect.Sets;
+import io.hamster.storage.StorageException;
 import io.hamster.storage.StorageLevel;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 
+import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
 
 import org.junit.Test;
 
@@ -27,7 +41,7 @@ public abstract class AbstractJournalTest {
     private static final Path PATH = Paths.get("target/test-logs/");
 
     private final int maxSegmentSize;
-    private final int entriesPerSegment;
+    protected final int entriesPerSegment;
 
     protected AbstractJournalTest(int maxSegmentSize) throws IOException {
         this.maxSegmentSize = maxSegmentSize;
@@ -244,6 +258,29 @@ public abstract class AbstractJournalTest {
         }
     }
 
+    @Test
+    public void testTruncateReopen() throws Exception {
+        int i = 10;
+        try (Journal<TestEntry> journal = createJournal()) {
+            JournalWriter<TestEntry> writer = journal.writer();
+            for (int j = 1; j <= i; j++) {
+                assertEquals(j, writer.append(new TestEntry(32)).index());
+            }
+            writer.truncate(i - 2);
+            writer.flush();
+        }
+
+        try (Journal<TestEntry> journal = createJournal()) {
+            JournalReader<TestEntry> reader = journal.openReader(1);
+            for (int j = 1; j <= i - 2; j++) {
+                assertTrue(reader.hasNext());
+                assertEquals(j, reader.next().index());
+            }
+            assertFalse(reader.hasNext());
+            assertEquals(i - 1, journal.writer().append(new TestEntry(32)).index());
+        }
+    }
+
     @Test
     @SuppressWarnings("unchecked")
     public void testWriteReadEntries() throws Exception {
@@ -308,6 +345,879 @@ public abstract class AbstractJournalTest {
         }
     }
 
+    @Test
+    public void testCompressedEntries() throws Exception {
+        // Alternate entries that compress with entries that are stored as encoded.
+        Random random = new Random(0);
+        List<byte[]> entries = new ArrayList<>();
+        for (int i = 0; i < entriesPerSegment * 6; i++) {
+            byte[] bytes = new byte[ENTRY.bytes().length];
+            if (i % 2 == 1) {
+                random.nextBytes(bytes);
+            }
+            entries.add(bytes);
+        }
+
+        SegmentedJournal.Builder<TestEntry> builder = SegmentedJournal.<TestEntry>builder()
+                .withName("test")
+                .withDirectory(PATH.toFile())
+                .withCodec(new CompressingJournalCodec<>(CODEC, 0))
+                .withStorageLevel(storageLevel())
+                .withMaxSegmentSize(maxSegmentSize)
+                .withIndexDensity(.2);
+        try (Journal<TestEntry> journal = builder.build()) {
+            JournalWriter<TestEntry> writer = journal.writer();
+            for (byte[] bytes : entries) {
+                writer.append(new TestEntry(bytes));
+            }
+        }
+
+        try (Journal<TestEntry> journal = builder.build()) {
+            JournalReader<TestEntry> reader = journal.openReader(1);
+            for (int i = 0; i < entries.size(); i++) {
+                assertTrue(reader.hasNext());
+                Indexed<TestEntry> entry = reader.next();
+                assertEquals(i + 1, entry.index());
+                assertArrayEquals(entries.get(i), entry.entry().bytes());
+            }
+            assertFalse(reader.hasNext());
+            assertTrue(journal.writer().getLastEntry().size() > ENTRY.bytes().length);
+        }
+    }
+
+    @Test
+    public void testReadRawEntries() throws Exception {
+        try (Journal<TestEntry> journal = createJournal()) {
+            JournalWriter<TestEntry> writer = journal.writer();
+            JournalReader<TestEntry> reader = journal.openReader(1);
+
+            for (int i = 1; i <= entriesPerSegment * 3; i++) {
+                writer.append(ENTRY);
+            }
+
+            for (int i = 1; i <= entriesPerSegment * 3; i++) {
+                assertTrue(reader.hasNext());
+                RawEntry raw = reader.nextRaw();
+                assertEquals(i, raw.index());
+                assertEquals(i, reader.getCurrentIndex());
+                assertTrue(raw.buffer().isReadOnly());
+
+                CRC32 crc32 = new CRC32();
+                crc32.update(raw.buffer().duplicate());
+                assertEquals((int) crc32.getValue(), raw.checksum());
+                assertArrayEquals(ENTRY.bytes(), raw.decode(CODEC).entry().bytes());
+
+                // The current entry is decoded lazily.
+                assertEquals(i, reader.getCurrentEntry().index());
+                assertEquals(raw.size(), reader.getCurrentEntry().size());
+            }
+            assertFalse(reader.hasNext());
+        }
+    }
+
+    @Test
+    public void testRawEntriesOutliveReads() throws Exception {
+        final int count = entriesPerSegment * 3;
+        try (Journal<TestEntry> journal = createJournal()) {
+            JournalWriter<TestEntry> writer = journal.writer();
+            for (int i = 1; i <= count; i++) {
+                byte[] bytes = new byte[ENTRY.bytes().length];
+                Arrays.fill(bytes, (byte) i);
+                writer.append(new TestEntry(bytes));
+            }
+
+            // Raw entries are kept across further reads, which refill the reader's buffers.
+            List<RawEntry> entries = new ArrayList<>();
+            try (JournalReader<TestEntry> reader = journal.openReader(1)) {
+                while (reader.hasNext()) {
+                    entries.add(reader.nextRaw());
+                }
+            }
+            assertEquals(count, entries.size());
+
+            // Other readers borrow buffers from the same pool.
+            try (JournalReader<TestEntry> reader = journal.openReader(1)) {
+                while (reader.hasNext()) {
+                    reader.next();
+                }
+            }
+
+            for (int i = 1; i <= count; i++) {
+                byte[] bytes = new byte[ENTRY.bytes().length];
+                Arrays.fill(bytes, (byte) i);
+                assertArrayEquals(bytes, entries.get(i - 1).decode(CODEC).entry().bytes());
+            }
+        }
+    }
+
+    @Test
+    public void testAppendRaw() throws Exception {
+        ByteBuffer encoded = ByteBuffer.allocate(1024);
+        CODEC.encode(ENTRY, encoded);
+        encoded.flip();
+        final int count = entriesPerSegment * 3;
+
+        try (SegmentedJournal<TestEntry> journal = createJournal();
+             SegmentedJournal<TestEntry> follower = SegmentedJournal.<TestEntry>builder()
+                     .withName("follower")
+                     .withDirectory(PATH.toFile())
+                     .withCodec(CODEC)
+                     .withStorageLevel(storageLevel())
+                     .withMaxSegmentSize(maxSegmentSize)
+                     .build()) {
+            JournalWriter<TestEntry> writer = journal.writer();
+            for (int i = 1; i <= count; i++) {
+                writer.appendRaw(i, encoded);
+                assertEquals(0, encoded.position());
+            }
+            assertEquals(count, writer.getLastIndex());
+            assertEquals(count, writer.getLastEntry().index());
+            assertArrayEquals(ENTRY.bytes(), writer.getLastEntry().entry().bytes());
+
+            // Appending an entry at a written index replaces the tail of the journal.
+            writer.appendRaw(2, encoded);
+            assertEquals(2, writer.getLastIndex());
+            for (int i = 3; i <= count; i++) {
+                writer.appendRaw(i, encoded);
+            }
+
+            // Copy the entries to the follower without decoding them.
+            List<RawEntry> entries = new ArrayList<>();
+            try (JournalReader<TestEntry> reader = journal.openReader(1)) {
+                while (reader.hasNext()) {
+                    RawEntry entry = reader.nextRaw();
+                    ByteBuffer copy = ByteBuffer.allocate(entry.size());
+                    copy.put(entry.buffer().duplicate()).flip();
+                    entries.add(new RawEntry(entry.index(), entry.checksum(), copy));
+                }
+            }
+            assertEquals(count, entries.size());
+
+            JournalWriter<TestEntry> followerWriter = follower.writer();
+            assertEquals(count, followerWriter.appendRawBatch(entries));
+            assertEquals(count, followerWriter.getLastIndex());
+            try (JournalReader<TestEntry> reader = follower.openReader(1)) {
+                for (int i = 1; i <= count; i++) {
+                    assertTrue(reader.hasNext());
+                    Indexed<TestEntry> entry = reader.next();
+                    assertEquals(i, entry.index());
+                    assertArrayEquals(ENTRY.bytes(), entry.entry().bytes());
+                }
+                assertFalse(reader.hasNext());
+            }
+
+            // Entries with a checksum that doesn't match their bytes are rejected.
+            RawEntry last = entries.get(count - 1);
+            try {
+                followerWriter.appendRaw(new RawEntry(count + 1, last.checksum() + 1, last.buffer()));
+                fail();
+            } catch (StorageException.InvalidChecksum e) {
+            }
+            assertEquals(count, followerWriter.getLastIndex());
+            followerWriter.appendRaw(new RawEntry(count + 1, last.checksum(), last.buffer()));
+            assertEquals(count + 1, followerWriter.getLastIndex());
+        }
+    }
+
+    @Test
+    public void testReadBatch() throws Exception {
+        try (Journal<TestEntry> journal = createJournal()) {
+            JournalWriter<TestEntry> writer = journal.writer();
+            JournalReader<TestEntry> reader = journal.openReader(1);
+            JournalReader<TestEntry> committedReader = journal.openReader(1, JournalReader.Mode.COMMITS);
+
+            for (int i = 1; i <= entriesPerSegment * 4; i++) {
+                writer.append(ENTRY);
+            }
+            writer.commit(entriesPerSegment * 2);
+
+            List<Indexed<TestEntry>> entries = new ArrayList<>();
+            assertEquals(entriesPerSegment + 1, reader.readBatch(entriesPerSegment + 1, Integer.MAX_VALUE, entries::add));
+            assertEquals(entriesPerSegment + 1, reader.getCurrentIndex());
+
+            // The byte limit is reached by the entry that exceeds it.
+            int size = entries.get(0).size();
+            assertEquals(2, reader.readBatch(Integer.MAX_VALUE, size + 1, entries::add));
+            assertEquals(entriesPerSegment * 3 - 3, reader.readBatch(Integer.MAX_VALUE, Integer.MAX_VALUE, entries::add));
+            assertEquals(0, reader.readBatch(Integer.MAX_VALUE, Integer.MAX_VALUE, entries::add));
+            for (int i = 0; i < entries.size(); i++) {
+                assertEquals(i + 1, entries.get(i).index());
+            }
+
+            assertEquals(entriesPerSegment * 2, committedReader.readBatch(Integer.MAX_VALUE, Integer.MAX_VALUE, entry -> {
+            }));
+            assertEquals(entriesPerSegment * 2, committedReader.getCurrentEntry().index());
+            assertFalse(committedReader.hasNext());
+        }
+    }
+
+    @Test
+    public void testSeekWithoutDecoding() throws Exception {
+        AtomicInteger decoded = new AtomicInteger();
+        try (SegmentedJournal<TestEntry> journal = SegmentedJournal.<TestEntry>builder()
+                .withName("test")
+                .withDirectory(PATH.toFile())
+                .withCodec(new TestEntryCodec() {
+                    @Override
+                    public TestEntry decode(ByteBuffer buffer) {
+                        decoded.incrementAndGet();
+                        return super.decode(buffer);
+                    }
+                })
+                .withStorageLevel(storageLevel())
+                .withMaxSegmentSize(maxSegmentSize)
+                .build()) {
+            JournalWriter<TestEntry> writer = journal.writer();
+            for (int i = 1; i <= entriesPerSegment * 10; i++) {
+                writer.append(ENTRY);
+            }
+
+            long index = entriesPerSegment * 7 + 1;
+            JournalReader<TestEntry> reader = journal.openReader(index);
+            assertEquals(index, reader.getNextIndex());
+            reader.reset(entriesPerSegment * 3);
+            assertEquals(entriesPerSegment * 3, reader.getNextIndex());
+            reader.reset(index);
+            assertEquals(index, reader.getNextIndex());
+            assertEquals(0, decoded.get());
+
+            assertEquals(index - 1, reader.getCurrentEntry().index());
+            assertEquals(index, reader.next().index());
+            assertEquals(2, decoded.get());
+        }
+    }
+
+    @Test
+    public void testAppendBatch() throws Exception {
+        try (Journal<TestEntry> journal = createJournal()) {
+            JournalWriter<TestEntry> writer = journal.writer();
+            JournalReader<TestEntry> reader = journal.openReader(1);
+
+            List<TestEntry> entries = new ArrayList<>();
+            for (int i = 1; i <= entriesPerSegment * 3 + 1; i++) {
+                entries.add(ENTRY);
+            }
+
+            List<Indexed<TestEntry>> appended = writer.appendBatch(entries);
+            assertEquals(entries.size(), appended.size());
+            for (int i = 0; i < appended.size(); i++) {
+                assertEquals(i + 1, appended.get(i).index());
+            }
+            assertEquals(entries.size(), writer.getLastIndex());
+            assertEquals(entries.size(), writer.getLastEntry().index());
+
+            for (int i = 1; i <= entries.size(); i++) {
+                assertTrue(reader.hasNext());
+                Indexed<TestEntry> entry = reader.next();
+                assertEquals(i, entry.index());
+                assertEquals(32, entry.entry().bytes().length);
+            }
+            assertFalse(reader.hasNext());
+
+            writer.truncate(entriesPerSegment);
+            appended = writer.appendBatch(entries.subList(0, 2));
+            assertEquals(entriesPerSegment + 1, appended.get(0).index());
+            assertEquals(entriesPerSegment + 2, writer.getLastIndex());
+            reader.reset(entriesPerSegment + 1);
+            assertEquals(entriesPerSegment + 1, reader.next().index());
+            assertEquals(entriesPerSegment + 2, reader.next().index());
+            assertFalse(reader.hasNext());
+        }
+    }
+
+    @Test
+    public void testReopenWithIndexFiles() throws Exception {
+        final int entries = entriesPerSegment * 3 + 1;
+        try (Journal<TestEntry> journal = createJournal()) {
+            JournalWriter<TestEntry> writer = journal.writer();
+            for (int i = 1; i <= entries; i++) {
+                writer.append(ENTRY);
+            }
+        }
+
+        // Sealed segments are indexed, the last segment is not.
+        for (int i = 1; i <= 3; i++) {
+            assertTrue(Files.exists(PATH.resolve("test-" + i + ".idx")));
+        }
+        assertFalse(Files.exists(PATH.resolve("test-4.idx")));
+
+        // The checksums accumulated as the entries were written match the sealed segments.
+        for (int i = 1; i <= 3; i++) {
+            ByteBuffer index = ByteBuffer.wrap(Files.readAllBytes(PATH.resolve("test-" + i + ".idx")));
+            try (FileChannel channel = FileChannel.open(PATH.resolve("test-" + i + ".log"), StandardOpenOption.READ)) {
+                assertEquals(JournalSegmentIndexFile.checksum(channel, index.getInt(32)), index.getInt(36));
+            }
+        }
+
+        // A corrupt index file falls back to scanning the segment.
+        Files.write(PATH.resolve("test-2.idx"), new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+
+        try (Journal<TestEntry> journal = createJournal()) {
+            JournalWriter<TestEntry> writer = journal.writer();
+            assertEquals(entries, writer.getLastIndex());
+            assertEquals(entries, writer.getLastEntry().index());
+
+            JournalReader<TestEntry> reader = journal.openReader(1);
+            for (int i = 1; i <= entries; i++) {
+                assertTrue(reader.hasNext());
+                assertEquals(i, reader.next().index());
+            }
+            assertFalse(reader.hasNext());
+
+            reader.reset(entriesPerSegment * 2);
+            assertEquals(entriesPerSegment * 2, reader.next().index());
+
+            // Truncating into a sealed segment unseals it.
+            writer.truncate(entriesPerSegment);
+            assertFalse(Files.exists(PATH.resolve("test-1.idx")));
+            assertFalse(Files.exists(PATH.resolve("test-2.idx")));
+            writer.append(ENTRY);
+            writer.append(ENTRY);
+        }
+
+        try (Journal<TestEntry> journal = createJournal()) {
+            assertEquals(entriesPerSegment + 2, journal.writer().getLastIndex());
+            JournalReader<TestEntry> reader = journal.openReader(1);
+            for (int i = 1; i <= entriesPerSegment + 2; i++) {
+                assertTrue(reader.hasNext());
+                assertEquals(i, reader.next().index());
+            }
+            assertFalse(reader.hasNext());
+        }
+    }
+
+    @Test
+    public void testLazySealedSegments() throws Exception {
+        final int entries = entriesPerSegment * 3 + 1;
+        try (SegmentedJournal<TestEntry> journal = createJournal()) {
+            JournalWriter<TestEntry> writer = journal.writer();
+            for (int i = 1; i <= entries; i++) {
+                writer.append(ENTRY);
+            }
+            journal.getFirstSegment().whenSealed().get(10, TimeUnit.SECONDS);
+            assertTrue(journal.getFirstSegment().descriptor().sealed());
+            assertFalse(journal.getLastSegment().descriptor().sealed());
+        }
+
+        try (SegmentedJournal<TestEntry> journal = SegmentedJournal.<TestEntry>builder()
+                .withName("test")
+                .withDirectory(PATH.toFile())
+                .withCodec(CODEC)
+                .withStorageLevel(storageLevel())
+                .withMaxSegmentSize(maxSegmentSize)
+                .withIndexDensity(.2)
+                .withSegmentIdleTimeout(Duration.ofMillis(10))
+                .build()) {
+            JournalSegment<TestEntry> first = journal.getFirstSegment();
+            assertTrue(first.descriptor().sealed());
+            assertFalse(first.isLoaded());
+            assertEquals(entriesPerSegment, first.lastIndex());
+
+            JournalReader<TestEntry> reader = journal.openReader(1);
+            assertTrue(first.isLoaded());
+            for (int i = 1; i <= entries; i++) {
+                assertTrue(reader.hasNext());
+                assertEquals(i, reader.next().index());
+            }
+            reader.close();
+
+            // Idle sealed segments are closed in the background and reopened when read again.
+            long deadline = System.currentTimeMillis() + 10000;
+            while (first.isLoaded() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertFalse(first.isLoaded());
+            assertEquals(entriesPerSegment, first.lastIndex());
+
+            reader = journal.openReader(1);
+            assertEquals(1, reader.next().index());
+            reader.close();
+
+            // Truncating into a sealed segment unseals it.
+            journal.writer().truncate(1);
+            assertFalse(first.descriptor().sealed());
+            journal.writer().append(ENTRY);
+            assertEquals(2, journal.writer().getLastIndex());
+        }
+
+        try (Journal<TestEntry> journal = createJournal()) {
+            assertEquals(2, journal.writer().getLastIndex());
+        }
+    }
+
+    @Test
+    public void testSegmentListener() throws Exception {
+        final int entries = entriesPerSegment * 3 + 1;
+        List<long[]> sealed = new ArrayList<>();
+        try (SegmentedJournal<TestEntry> journal = createJournal()) {
+            journal.addSegmentListener((firstIndex, lastIndex) -> {
+                synchronized (sealed) {
+                    sealed.add(new long[]{firstIndex, lastIndex});
+                }
+            });
+            JournalWriter<TestEntry> writer = journal.writer();
+            for (int i = 1; i <= entries; i++) {
+                writer.append(ENTRY);
+            }
+        }
+
+        // Closing the journal waits for the segments to be sealed.
+        assertEquals(3, sealed.size());
+        for (int i = 0; i < sealed.size(); i++) {
+            assertEquals(i * entriesPerSegment + 1, sealed.get(i)[0]);
+            assertEquals((i + 1) * entriesPerSegment, sealed.get(i)[1]);
+        }
+    }
+
+    @Test
+    public void testFlushPolicy() throws Exception {
+        try (SegmentedJournal<TestEntry> journal = SegmentedJournal.<TestEntry>builder()
+                .withName("test")
+                .withDirectory(PATH.toFile())
+                .withCodec(CODEC)
+                .withStorageLevel(storageLevel())
+                .withMaxSegmentSize(maxSegmentSize)
+                .withFlushPolicy(FlushPolicy.everyEntries(2))
+                .build()) {
+            SegmentedJournalWriter<TestEntry> writer = journal.writer();
+            assertTrue(writer.whenDurable(0).isDone());
+
+            writer.append(ENTRY);
+            CompletableFuture<Long> future = writer.whenDurable(1);
+            assertFalse(future.isDone());
+            writer.append(ENTRY);
+            assertTrue(future.get(5, TimeUnit.SECONDS) >= 1);
+
+            writer.append(ENTRY);
+            future = writer.whenDurable(3);
+            writer.truncate(2);
+            assertTrue(writer.getDurableIndex() <= 2);
+            assertFalse(future.isDone());
+            writer.append(ENTRY);
+            writer.flush();
+            assertEquals(3, future.get(5, TimeUnit.SECONDS).longValue());
+
+            future = writer.whenDurable(10);
+            journal.close();
+            assertTrue(future.isCompletedExceptionally());
+        }
+
+        try (SegmentedJournal<TestEntry> journal = SegmentedJournal.<TestEntry>builder()
+                .withName("test")
+                .withDirectory(PATH.toFile())
+                .withCodec(CODEC)
+                .withStorageLevel(storageLevel())
+                .withMaxSegmentSize(maxSegmentSize)
+                .withFlushPolicy(FlushPolicy.periodic(Duration.ofMillis(10)))
+                .build()) {
+            SegmentedJournalWriter<TestEntry> writer = journal.writer();
+            assertEquals(3, writer.getDurableIndex());
+            writer.append(ENTRY);
+            assertEquals(4, writer.whenDurable(4).get(5, TimeUnit.SECONDS).longValue());
+        }
+    }
+
+    @Test
+    public void testPeriodicFlushDuringRollover() throws Exception {
+        SegmentedJournal.Builder<TestEntry> builder = SegmentedJournal.<TestEntry>builder()
+                .withName("test")
+                .withDirectory(PATH.toFile())
+                .withCodec(CODEC)
+                .withStorageLevel(storageLevel())
+                .withMaxSegmentSize(maxSegmentSize)
+                .withFlushPolicy(FlushPolicy.periodic(Duration.ofMillis(1)));
+        long lastIndex;
+        try (SegmentedJournal<TestEntry> journal = builder.build()) {
+            // The flusher runs while the writer rolls over to new segments and truncates them.
+            SegmentedJournalWriter<TestEntry> writer = journal.writer();
+            for (int round = 0; round < 5; round++) {
+                for (int i = 0; i < entriesPerSegment * 3; i++) {
+                    writer.append(ENTRY);
+                }
+                writer.truncate(writer.getLastIndex() - entriesPerSegment * 2);
+            }
+            lastIndex = writer.getLastIndex();
+            assertEquals(lastIndex, writer.whenDurable(lastIndex).get(5, TimeUnit.SECONDS).longValue());
+        }
+
+        try (SegmentedJournal<TestEntry> journal = builder.build()) {
+            assertEquals(lastIndex, journal.writer().getLastIndex());
+        }
+    }
+
+    @Test
+    public void testPreallocateSegments() throws Exception {
+        File standbyFile = new File(PATH.toFile(), "test.standby");
+        try (SegmentedJournal<TestEntry> journal = SegmentedJournal.<TestEntry>builder()
+                .withName("test")
+                .withDirectory(PATH.toFile())
+                .withCodec(CODEC)
+                .withStorageLevel(storageLevel())
+                .withMaxSegmentSize(maxSegmentSize)
+                .withPreallocationThreshold(.5)
+                .withZeroFillSegments(true)
+                .build()) {
+            JournalWriter<TestEntry> writer = journal.writer();
+            for (int i = 1; i <= entriesPerSegment * 5; i++) {
+                assertEquals(i, writer.append(ENTRY).index());
+            }
+            assertEquals(5, journal.getLastSegment().descriptor().id());
+
+            JournalReader<TestEntry> reader = journal.openReader(1);
+            for (int i = 1; i <= entriesPerSegment * 5; i++) {
+                assertTrue(reader.hasNext());
+                assertEquals(i, reader.next().index());
+            }
+            assertFalse(reader.hasNext());
+            reader.close();
+        }
+        assertFalse(standbyFile.exists());
+
+        // A leftover standby file must not be mistaken for a segment.
+        assertTrue(standbyFile.createNewFile());
+        try (SegmentedJournal<TestEntry> journal = createJournal()) {
+            assertFalse(standbyFile.exists());
+            assertEquals(entriesPerSegment * 5, journal.writer().getLastIndex());
+        }
+    }
+
+    @Test
+    public void testRecycleSegments() throws Exception {
+        File freeFile = new File(PATH.toFile(), "test-2.free");
+        SegmentedJournal.Builder<TestEntry> builder = SegmentedJournal.<TestEntry>builder()
+                .withName("test")
+                .withDirectory(PATH.toFile())
+                .withCodec(CODEC)
+                .withStorageLevel(storageLevel())
+                .withMaxSegmentSize(maxSegmentSize)
+                .withMaxFreeSegments(2);
+        try (SegmentedJournal<TestEntry> journal = builder.build()) {
+            JournalWriter<TestEntry> writer = journal.writer();
+            for (int i = 1; i <= entriesPerSegment * 5; i++) {
+                assertEquals(i, writer.append(ENTRY).index());
+            }
+            journal.compact(entriesPerSegment * 3 + 1);
+            assertTrue(freeFile.exists());
+
+            // New segments reuse the free files as soon as the compacted segments are deleted.
+            writer.append(ENTRY);
+            assertFalse(freeFile.exists());
+            assertEquals(entriesPerSegment * 5 + 1, writer.getLastIndex());
+        }
+
+        try (SegmentedJournal<TestEntry> journal = builder.build()) {
+            assertEquals(entriesPerSegment * 5 + 1, journal.writer().getLastIndex());
+            JournalReader<TestEntry> reader = journal.openReader(entriesPerSegment * 3 + 1);
+            for (long i = entriesPerSegment * 3 + 1; i <= entriesPerSegment * 5 + 1; i++) {
+                assertTrue(reader.hasNext());
+                assertEquals(i, reader.next().index());
+            }
+            assertFalse(reader.hasNext());
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testReopenRecycledSegment() throws Exception {
+        File freeFile = new File(PATH.toFile(), "test-2.free");
+        File segmentFile = new File(PATH.toFile(), "test-6.log");
+        SegmentedJournal.Builder<TestEntry> builder = SegmentedJournal.<TestEntry>builder()
+                .withName("test")
+                .withDirectory(PATH.toFile())
+                .withCodec(CODEC)
+                .withStorageLevel(storageLevel())
+                .withMaxSegmentSize(maxSegmentSize)
+                .withMaxFreeSegments(2);
+        byte[] free;
+        int tail;
+        try (SegmentedJournal<TestEntry> journal = builder.build()) {
+            JournalWriter<TestEntry> writer = journal.writer();
+            for (int i = 1; i <= entriesPerSegment * 5; i++) {
+                writer.append(ENTRY);
+            }
+            journal.compact(entriesPerSegment * 3 + 1);
+            free = Files.readAllBytes(freeFile.toPath());
+
+            writer.append(ENTRY);
+            assertFalse(freeFile.exists());
+            tail = journal.getLastSegment().writer().getNextPosition();
+        }
+
+        // Simulate a crash that lost the zeroed header following the tail, leaving the reused file's previous contents.
+        try (FileChannel channel = FileChannel.open(segmentFile.toPath(), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(free, tail, free.length - tail), tail);
+        }
+
+        try (SegmentedJournal<TestEntry> journal = builder.build()) {
+            assertEquals(entriesPerSegment * 5 + 1, journal.writer().getLastIndex());
+            JournalReader<TestEntry> reader = journal.openReader(entriesPerSegment * 5 + 1);
+            assertTrue(reader.hasNext());
+            assertEquals(entriesPerSegment * 5 + 1, reader.next().index());
+            assertFalse(reader.hasNext());
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testCompactAsync() throws Exception {
+        File segmentFile = new File(PATH.toFile(), "test-1.log");
+        try (SegmentedJournal<TestEntry> journal = createJournal()) {
+            JournalWriter<TestEntry> writer = journal.writer();
+            JournalReader<TestEntry> reader = journal.openReader(1);
+            for (int i = 1; i <= entriesPerSegment * 5; i++) {
+                assertEquals(i, writer.append(ENTRY).index());
+            }
+
+            // Hold a reference to the first segment so it can't be deleted.
+            JournalSegment<TestEntry> segment = journal.getFirstSegment();
+            segment.acquire();
+            CompletableFuture<Void> future = journal.compactAsync(entriesPerSegment * 2 + 1);
+            assertEquals(entriesPerSegment * 2 + 1, journal.getFirstSegment().index());
+            assertEquals(entriesPerSegment * 2 + 1, reader.getNextIndex());
+            assertTrue(reader.hasNext());
+            assertEquals(entriesPerSegment * 2 + 1, reader.next().index());
+            assertFalse(future.isDone());
+            assertTrue(segmentFile.exists());
+
+            segment.release();
+            future.get(5, TimeUnit.SECONDS);
+            assertFalse(segmentFile.exists());
+
+            // Segments still referenced when the journal is closed are deleted on close.
+            segment = journal.getFirstSegment();
+            segment.acquire();
+            future = journal.compactAsync(entriesPerSegment * 4 + 1);
+            assertFalse(future.isDone());
+            reader.close();
+            journal.close();
+            future.get(5, TimeUnit.SECONDS);
+            assertFalse(new File(PATH.toFile(), "test-3.log").exists());
+        }
+    }
+
+    @Test
+    public void testDirectBuffersWithLargeEntries() throws Exception {
+        SegmentedJournal.Builder<TestEntry> builder = SegmentedJournal.<TestEntry>builder()
+                .withName("test")
+                .withDirectory(PATH.toFile())
+                .withCodec(CODEC)
+                .withStorageLevel(storageLevel())
+                .withMaxSegmentSize(1024 * 1024)
+                .withDirectBuffers(true);
+
+        // Entries alternate between small entries and entries larger than the initial buffer size.
+        List<TestEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 24; i++) {
+            byte[] bytes = new byte[i % 2 == 0 ? 32 : 1024 * 100 + i];
+            bytes[bytes.length - 1] = (byte) i;
+            entries.add(new TestEntry(bytes));
+        }
+
+        try (SegmentedJournal<TestEntry> journal = builder.build()) {
+            JournalWriter<TestEntry> writer = journal.writer();
+            for (int i = 0; i < entries.size() / 2; i++) {
+                assertEquals(i + 1, writer.append(entries.get(i)).index());
+            }
+            writer.appendBatch(entries.subList(entries.size() / 2, entries.size()));
+            assertEquals(entries.size(), writer.getLastIndex());
+        }
+
+        try (SegmentedJournal<TestEntry> journal = builder.build()) {
+            assertEquals(entries.size(), journal.writer().getLastIndex());
+            assertArrayEquals(entries.get(entries.size() - 1).bytes(), journal.writer().getLastEntry().entry().bytes());
+
+            JournalReader<TestEntry> reader = journal.openReader(1);
+            for (int i = 0; i < entries.size(); i++) {
+                assertTrue(reader.hasNext());
+                Indexed<TestEntry> entry = reader.next();
+                assertEquals(i + 1, entry.index());
+                assertArrayEquals(entries.get(i).bytes(), entry.entry().bytes());
+            }
+            assertFalse(reader.hasNext());
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testReadahead() throws Exception {
+        try (SegmentedJournal<TestEntry> journal = SegmentedJournal.<TestEntry>builder()
+                .withName("test")
+                .withDirectory(PATH.toFile())
+                .withCodec(CODEC)
+                .withStorageLevel(storageLevel())
+                .withMaxSegmentSize(1024 * 64)
+                .withMaxEntrySize(1024)
+                .withReadaheadSize(1024 * 8)
+                .build()) {
+            JournalWriter<TestEntry> writer = journal.writer();
+            for (int i = 1; i <= 300; i++) {
+                assertEquals(i, writer.append(entry(i)).index());
+            }
+
+            // Scan the journal sequentially while appending to its tail.
+            JournalReader<TestEntry> reader = journal.openReader(1);
+            for (int i = 1; i <= 600; i++) {
+                if (i % 2 == 0) {
+                    writer.append(entry(300 + i / 2));
+                }
+                assertTrue(reader.hasNext());
+                Indexed<TestEntry> entry = reader.next();
+                assertEquals(i, entry.index());
+                assertArrayEquals(entry(i).bytes(), entry.entry().bytes());
+            }
+            assertFalse(reader.hasNext());
+
+            // Seeking discards the window being read ahead.
+            reader.reset(150);
+            assertEquals(150, reader.next().index());
+            reader.reset(20);
+            for (int i = 20; i <= 600; i++) {
+                assertEquals(i, reader.next().index());
+            }
+            assertFalse(reader.hasNext());
+            reader.close();
+        }
+    }
+
+    private static TestEntry entry(int index) {
+        byte[] bytes = new byte[100 + index % 400];
+        bytes[0] = (byte) index;
+        bytes[bytes.length - 1] = (byte) (index >> 8);
+        return new TestEntry(bytes);
+    }
+
+    @Test
+    public void testParallelScan() throws Exception {
+        try (SegmentedJournal<TestEntry> journal = createJournal()) {
+            JournalWriter<TestEntry> writer = journal.writer();
+            final int entries = entriesPerSegment * 6;
+            for (int i = 1; i <= entries; i++) {
+                assertEquals(i, writer.append(ENTRY).index());
+            }
+
+            ForkJoinPool pool = new ForkJoinPool(4);
+            try {
+                Set<Long> indexes = Sets.newConcurrentHashSet();
+                journal.parallelScan(1, entries, pool, entry -> assertTrue(indexes.add(entry.index())));
+                assertEquals(entries, indexes.size());
+
+                List<Long> ordered = new ArrayList<>();
+                journal.parallelScan(2, entries - 1, pool, entry -> ordered.add(entry.index()), true);
+                assertEquals(entries - 2, ordered.size());
+                for (int i = 0; i < ordered.size(); i++) {
+                    assertEquals(i + 2, ordered.get(i).longValue());
+                }
+            } finally {
+                pool.shutdown();
+            }
+
+            try (Stream<Indexed<TestEntry>> stream = journal.stream()) {
+                assertEquals((long) entries * (entries + 1) / 2, stream.parallel().mapToLong(Indexed::index).sum());
+            }
+            try (Stream<Indexed<TestEntry>> stream = journal.stream(entries + 1, Long.MAX_VALUE)) {
+                assertEquals(0, stream.count());
+            }
+
+            // Closing an abandoned stream releases its segments, so they can be compacted.
+            try (Stream<Indexed<TestEntry>> stream = journal.stream()) {
+                assertEquals(1, stream.findFirst().get().index());
+            }
+            journal.compactAsync(entries).get(10, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void testScanCorruptEntry() throws Exception {
+        try (SegmentedJournal<TestEntry> journal = createJournal()) {
+            JournalWriter<TestEntry> writer = journal.writer();
+            final int entries = entriesPerSegment * 3;
+            for (int i = 1; i <= entries; i++) {
+                writer.append(ENTRY);
+            }
+
+            // Corrupt the first entry of the first segment, which is followed by other segments.
+            try (FileChannel channel = FileChannel.open(PATH.resolve("test-1.log"), StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.wrap(new byte[]{1, 2, 3, 4}), JournalSegmentDescriptor.BYTES + 8);
+            }
+
+            try (Stream<Indexed<TestEntry>> stream = journal.stream()) {
+                stream.count();
+                fail();
+            } catch (StorageException e) {
+            }
+
+            // Entries following the corrupt segment can still be scanned.
+            try (Stream<Indexed<TestEntry>> stream = journal.stream(entriesPerSegment + 1, entries)) {
+                assertEquals(entries - entriesPerSegment, stream.count());
+            }
+        }
+    }
+
+    @Test
+    public void testChecksumTypes() throws Exception {
+        SegmentedJournal.Builder<TestEntry> builder = SegmentedJournal.<TestEntry>builder()
+                .withName("test")
+                .withDirectory(PATH.toFile())
+                .withCodec(CODEC)
+                .withStorageLevel(storageLevel())
+                .withMaxSegmentSize(maxSegmentSize);
+
+        // Each reopened journal writes its segments with a different checksum type.
+        ChecksumType[] types = ChecksumType.values();
+        for (int i = 0; i < types.length; i++) {
+            try (SegmentedJournal<TestEntry> journal = builder.withChecksumType(types[i]).build()) {
+                JournalWriter<TestEntry> writer = journal.writer();
+                assertEquals(entriesPerSegment * 2 * i, writer.getLastIndex());
+                for (int j = 0; j < entriesPerSegment * 2; j++) {
+                    writer.append(ENTRY);
+                }
+                assertEquals(types[i], journal.getLastSegment().descriptor().checksumType());
+            }
+        }
+
+        try (SegmentedJournal<TestEntry> journal = builder.build()) {
+            JournalReader<TestEntry> reader = journal.openReader(1);
+            for (int i = 1; i <= entriesPerSegment * 2 * types.length; i++) {
+                assertTrue(reader.hasNext());
+                RawEntry entry = reader.nextRaw();
+                assertEquals(i, entry.index());
+                ChecksumType type = journal.getSegment(i).descriptor().checksumType();
+                assertEquals(type.compute(entry.buffer()), entry.checksum());
+            }
+            assertFalse(reader.hasNext());
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testAwaitNext() throws Exception {
+        try (SegmentedJournal<TestEntry> journal = createJournal()) {
+            SegmentedJournalWriter<TestEntry> writer = journal.writer();
+            SegmentedJournalReader<TestEntry> uncommittedReader = journal.openReader(1, JournalReader.Mode.ALL);
+            SegmentedJournalReader<TestEntry> committedReader = journal.openReader(1, JournalReader.Mode.COMMITS);
+            assertFalse(uncommittedReader.awaitNext(10, TimeUnit.MILLISECONDS));
+
+            CompletableFuture<Boolean> uncommitted = CompletableFuture.supplyAsync(() -> awaitNext(uncommittedReader));
+            CompletableFuture<Boolean> committed = CompletableFuture.supplyAsync(() -> awaitNext(committedReader));
+            writer.append(ENTRY);
+            assertTrue(uncommitted.get(5, TimeUnit.SECONDS));
+            assertEquals(1, uncommittedReader.next().index());
+            assertFalse(committed.isDone());
+
+            writer.commit(1);
+            assertTrue(committed.get(5, TimeUnit.SECONDS));
+            assertEquals(1, committedReader.next().index());
+        }
+    }
+
+    private static boolean awaitNext(SegmentedJournalReader<TestEntry> reader) {
+        try {
+            return reader.awaitNext(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     @Test
     public void testReadAfterCompact() throws Exception {
         try (SegmentedJournal<TestEntry> journal = createJournal()) {
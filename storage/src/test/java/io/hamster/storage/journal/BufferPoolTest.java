@@ -0,0 +1,58 @@
+package io.hamster.storage.journal;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Buffer pool test.
+ */
+public class BufferPoolTest {
+
+    @Test
+    public void testSizeClasses() throws Exception {
+        BufferPool pool = new BufferPool(false);
+        assertEquals(BufferPool.MIN_CAPACITY, pool.acquire(1).capacity());
+        assertEquals(BufferPool.MIN_CAPACITY, pool.acquire(BufferPool.MIN_CAPACITY).capacity());
+        assertEquals(BufferPool.MIN_CAPACITY * 2, pool.acquire(BufferPool.MIN_CAPACITY + 1).capacity());
+        assertEquals(1024 * 1024 * 2, pool.acquire(1024 * 1024 + 8).capacity());
+    }
+
+    @Test
+    public void testReuseBuffers() throws Exception {
+        BufferPool pool = new BufferPool(true);
+        ByteBuffer buffer = pool.acquire(1024 * 64);
+        assertTrue(buffer.isDirect());
+        buffer.putInt(1);
+        pool.release(buffer);
+
+        ByteBuffer reused = pool.acquire(1024 * 40);
+        assertSame(buffer, reused);
+        assertEquals(0, reused.position());
+        assertEquals(reused.capacity(), reused.limit());
+        assertNotSame(buffer, pool.acquire(1024 * 64));
+
+        // Heap buffers are pooled separately from direct buffers.
+        ByteBuffer heap = ByteBuffer.allocate(1024 * 64);
+        pool.release(heap);
+        assertTrue(pool.acquire(1024 * 64).isDirect());
+        assertSame(heap, pool.acquire(1024 * 64, false));
+
+        pool.release(buffer);
+        pool.clear();
+        assertNotSame(buffer, pool.acquire(1024 * 64));
+    }
+
+    @Test
+    public void testInitialCapacity() throws Exception {
+        assertEquals(1024 * 64, BufferPool.initialCapacity(1024 * 1024));
+        assertEquals((1024 + 8) * 2, BufferPool.initialCapacity(1024));
+        assertFalse(new BufferPool(false).acquire(BufferPool.initialCapacity(1024)).isDirect());
+    }
+}
@@ -0,0 +1,69 @@
+package io.hamster.storage.journal;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checksum type test.
+ */
+public class ChecksumTypeTest {
+
+    private static final byte[] CHECK = "123456789".getBytes(StandardCharsets.US_ASCII);
+
+    @Test
+    public void testCrc32() throws Exception {
+        assertEquals(0xCBF43926, ChecksumType.CRC32.compute(ByteBuffer.wrap(CHECK)));
+    }
+
+    @Test
+    public void testCrc32c() throws Exception {
+        assertEquals(0xE3069283, ChecksumType.CRC32C.compute(ByteBuffer.wrap(CHECK)));
+        assertEquals(0xE3069283, Crc32cChecksum.createPortable().compute(ByteBuffer.wrap(CHECK)));
+
+        byte[] bytes = new byte[1000];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (i * 31);
+        }
+        assertEquals(Crc32cChecksum.createPortable().compute(ByteBuffer.wrap(bytes)),
+                ChecksumType.CRC32C.compute(ByteBuffer.wrap(bytes)));
+    }
+
+    @Test
+    public void testXxHash64() throws Exception {
+        assertEquals(0xEF46DB3751D8E999L, XxHash64Checksum.hash(ByteBuffer.allocate(0)));
+        assertEquals(0x44BC2CF5AD770999L, XxHash64Checksum.hash(ByteBuffer.wrap("abc".getBytes(StandardCharsets.US_ASCII))));
+        assertEquals((int) 0x44BC2CF5AD770999L,
+                ChecksumType.XXHASH64.compute(ByteBuffer.wrap("abc".getBytes(StandardCharsets.US_ASCII))));
+
+        // The hash doesn't depend on the byte order of the buffer.
+        byte[] bytes = new byte[100];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) i;
+        }
+        assertEquals(XxHash64Checksum.hash(ByteBuffer.wrap(bytes)),
+                XxHash64Checksum.hash(ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN)));
+    }
+
+    @Test
+    public void testNone() throws Exception {
+        assertEquals(0, ChecksumType.NONE.compute(ByteBuffer.wrap(CHECK)));
+    }
+
+    @Test
+    public void testBufferRange() throws Exception {
+        for (ChecksumType type : ChecksumType.values()) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(CHECK.length + 8);
+            buffer.position(4);
+            buffer.put(CHECK);
+            buffer.limit(4 + CHECK.length).position(4);
+            assertEquals(type.compute(ByteBuffer.wrap(CHECK)), type.compute(buffer));
+            assertEquals(4, buffer.position());
+            assertEquals(type, ChecksumType.forId(type.id()));
+        }
+    }
+}
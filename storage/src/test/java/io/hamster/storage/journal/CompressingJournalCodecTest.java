@@ -0,0 +1,153 @@
+package io.hamster.storage.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Compressing journal codec test.
+ */
+public class CompressingJournalCodecTest {
+
+    private static final byte[] DICTIONARY =
+            "{\"type\":\"command\",\"session\":,\"operation\":\"put\",\"key\":\"\",\"value\":\"\"}"
+                    .getBytes(StandardCharsets.UTF_8);
+
+    private static byte[] command(int i) {
+        return ("{\"type\":\"command\",\"session\":" + i + ",\"operation\":\"put\",\"key\":\"key-" + i
+                + "\",\"value\":\"value-" + i + "\"}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] random(Random random, int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private static ByteBuffer encode(JournalCodec<TestEntry> codec, byte[] bytes, boolean direct) throws IOException {
+        final int capacity = bytes.length * 2 + 64;
+        ByteBuffer buffer = direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+        codec.encode(new TestEntry(bytes), buffer);
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void assertRoundTrip(JournalCodec<TestEntry> codec, byte[] bytes) throws IOException {
+        for (boolean direct : new boolean[]{false, true}) {
+            ByteBuffer buffer = encode(codec, bytes, direct);
+            assertArrayEquals(bytes, codec.decode(buffer).bytes());
+            assertEquals(0, buffer.remaining());
+        }
+    }
+
+    @Test
+    public void testCompression() throws Exception {
+        CompressingJournalCodec<TestEntry> codec = new CompressingJournalCodec<>(new TestEntryCodec());
+
+        // Entries under the threshold are stored as encoded.
+        byte[] small = new byte[CompressingJournalCodec.DEFAULT_THRESHOLD - Integer.BYTES - 1];
+        assertEquals(1 + Integer.BYTES + small.length, encode(codec, small, false).remaining());
+        assertRoundTrip(codec, small);
+
+        // Repetitive entries are compressed.
+        byte[] zeros = new byte[4096];
+        assertTrue(encode(codec, zeros, false).remaining() < zeros.length / 50);
+        assertRoundTrip(codec, zeros);
+
+        StringBuilder json = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            json.append(new String(command(i), StandardCharsets.UTF_8));
+        }
+        byte[] commands = json.toString().getBytes(StandardCharsets.UTF_8);
+        assertTrue(encode(codec, commands, false).remaining() * 3 < commands.length);
+        assertRoundTrip(codec, commands);
+
+        // Entries that don't compress are stored as encoded.
+        byte[] random = random(new Random(1), 1024);
+        assertEquals(1 + Integer.BYTES + random.length, encode(codec, random, false).remaining());
+        assertRoundTrip(codec, random);
+    }
+
+    @Test
+    public void testDictionary() throws Exception {
+        CompressingJournalCodec<TestEntry> codec = new CompressingJournalCodec<>(new TestEntryCodec(), 0, DICTIONARY);
+        CompressingJournalCodec<TestEntry> plain = new CompressingJournalCodec<>(new TestEntryCodec(), 0);
+
+        // A single small entry only compresses well against the dictionary.
+        byte[] command = command(1);
+        assertTrue(encode(codec, command, false).remaining() * 2 < encode(plain, command, false).remaining());
+        assertRoundTrip(codec, command);
+
+        // Entries compressed without a dictionary can be decoded by a codec with one, but not the reverse.
+        assertArrayEquals(new byte[256], codec.decode(encode(plain, new byte[256], false)).bytes());
+        try {
+            plain.decode(encode(codec, command, false));
+            fail();
+        } catch (IOException e) {
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        Random random = new Random(0);
+        CompressingJournalCodec<TestEntry> codec = new CompressingJournalCodec<>(new TestEntryCodec(), 0);
+        // Matches may reference the dictionary, or start in the dictionary and continue in the entry.
+        byte[] dictionary = new byte[100000];
+        for (int i = 0; i < dictionary.length; i++) {
+            dictionary[i] = (byte) random.nextInt(4);
+        }
+        CompressingJournalCodec<TestEntry> dictionaryCodec =
+                new CompressingJournalCodec<>(new TestEntryCodec(), 0, dictionary);
+        for (int i = 0; i < 500; i++) {
+            // Mix short and long runs of literals and matches, including matches that overlap their output.
+            byte[] bytes = new byte[random.nextInt(2000)];
+            int position = 0;
+            while (position < bytes.length) {
+                int length = Math.min(bytes.length - position, 1 + random.nextInt(random.nextBoolean() ? 20 : 600));
+                if (position > 0 && random.nextBoolean()) {
+                    int offset = 1 + random.nextInt(Math.min(position, 100));
+                    for (int j = 0; j < length; j++) {
+                        bytes[position + j] = bytes[position + j - offset];
+                    }
+                } else {
+                    for (int j = 0; j < length; j++) {
+                        bytes[position + j] = (byte) random.nextInt(4);
+                    }
+                }
+                position += length;
+            }
+            assertRoundTrip(codec, bytes);
+            assertRoundTrip(dictionaryCodec, bytes);
+        }
+    }
+
+    @Test
+    public void testMalformed() throws Exception {
+        CompressingJournalCodec<TestEntry> codec = new CompressingJournalCodec<>(new TestEntryCodec(), 0);
+        ByteBuffer buffer = encode(codec, new byte[1024], false);
+        for (int length = 1; length < buffer.limit(); length++) {
+            ByteBuffer truncated = buffer.duplicate();
+            truncated.limit(length);
+            try {
+                codec.decode(truncated);
+                fail();
+            } catch (IOException | RuntimeException e) {
+            }
+        }
+
+        buffer.put(0, (byte) 3);
+        try {
+            codec.decode(buffer);
+            fail();
+        } catch (IOException e) {
+        }
+    }
+}
@@ -1,8 +1,24 @@
 package io.hamster.storage.journal;
 
 import io.hamster.storage.StorageLevel;
+import io.hamster.storage.journal.index.SparseJournalIndex;
+import org.junit.Test;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
 
 /**
  * Disk journal test.
@@ -18,4 +34,194 @@ public class DiskJournalTest extends AbstractJournalTest {
         return StorageLevel.DISK;
     }
 
+    @Test
+    public void testAppendToClosedSegmentWriter() throws Exception {
+        JournalWriter<TestEntry> writer;
+        try (SegmentedJournal<TestEntry> journal = createJournal()) {
+            writer = journal.getLastSegment().writer();
+            writer.append(ENTRY);
+        }
+
+        try {
+            writer.append(ENTRY);
+            fail();
+        } catch (IllegalStateException e) {
+        }
+        try {
+            writer.appendBatch(Collections.singletonList(ENTRY));
+            fail();
+        } catch (IllegalStateException e) {
+        }
+    }
+
+    @Test
+    public void testReadBatchFillsWindowOnce() throws Exception {
+        try (SegmentedJournal<TestEntry> journal = createJournal()) {
+            JournalWriter<TestEntry> writer = journal.writer();
+            for (int i = 1; i <= entriesPerSegment * 2; i++) {
+                writer.append(ENTRY);
+            }
+
+            // The whole segment fits in the reader's window, so a batch reading all of its entries fills it once.
+            JournalSegment<TestEntry> segment = journal.getFirstSegment();
+            try (ReadCountingChannel channel = new ReadCountingChannel(segment.openChannel());
+                 FileChannelJournalSegmentReader<TestEntry> reader = new FileChannelJournalSegmentReader<>(
+                         channel, segment, 1024 * 1024, new SparseJournalIndex(.2), new TestEntryCodec())) {
+                List<Indexed<TestEntry>> entries = new ArrayList<>();
+                assertEquals(entriesPerSegment, reader.readBatch(entriesPerSegment, Integer.MAX_VALUE, entries::add));
+                assertEquals(entriesPerSegment, entries.size());
+                for (int i = 0; i < entries.size(); i++) {
+                    assertEquals(i + 1, entries.get(i).index());
+                }
+                assertEquals(1, channel.reads);
+            }
+        }
+    }
+
+    @Test
+    public void testReleaseRawEntries() throws Exception {
+        try (SegmentedJournal<TestEntry> journal = createJournal()) {
+            JournalWriter<TestEntry> writer = journal.writer();
+            for (int i = 1; i <= entriesPerSegment * 2; i++) {
+                writer.append(ENTRY);
+            }
+
+            // Seed the pool with the buffer the reader is going to borrow.
+            JournalSegment<TestEntry> segment = journal.getFirstSegment();
+            BufferPool pool = segment.bufferPool();
+            int capacity = BufferPool.initialCapacity(1024 * 1024);
+            pool.clear();
+            ByteBuffer buffer = pool.acquire(capacity);
+            pool.release(buffer);
+
+            // The buffer lent to a raw entry is returned to the pool once both the reader and the entry release it.
+            RawEntry entry;
+            try (FileChannel channel = segment.openChannel();
+                 FileChannelJournalSegmentReader<TestEntry> reader = new FileChannelJournalSegmentReader<>(
+                         channel, segment, 1024 * 1024, new SparseJournalIndex(.2), new TestEntryCodec())) {
+                entry = reader.nextRaw();
+            }
+            assertNotSame(buffer, pool.acquire(capacity));
+            entry.release();
+            entry.release();
+            assertSame(buffer, pool.acquire(capacity));
+            assertNotSame(buffer, pool.acquire(capacity));
+            pool.release(buffer);
+
+            // Once its raw entries are released, the reader takes the buffer back rather than borrowing another one.
+            try (FileChannel channel = segment.openChannel();
+                 FileChannelJournalSegmentReader<TestEntry> reader = new FileChannelJournalSegmentReader<>(
+                         channel, segment, 1024 * 1024, new SparseJournalIndex(.2), new TestEntryCodec())) {
+                reader.nextRaw().release();
+                reader.reset();
+                assertEquals(1, reader.next().index());
+                assertNotSame(buffer, pool.acquire(capacity));
+            }
+            assertSame(buffer, pool.acquire(capacity));
+            assertNotSame(buffer, pool.acquire(capacity));
+        }
+    }
+
+    /**
+     * File channel counting the positional reads that return bytes.
+     */
+    private static class ReadCountingChannel extends FileChannel {
+        private final FileChannel channel;
+        private int reads;
+
+        ReadCountingChannel(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException {
+            int read = channel.read(dst, position);
+            if (read > 0) {
+                reads++;
+            }
+            return read;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return channel.read(dst);
+        }
+
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+            return channel.read(dsts, offset, length);
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            return channel.write(src);
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            return channel.write(srcs, offset, length);
+        }
+
+        @Override
+        public int write(ByteBuffer src, long position) throws IOException {
+            return channel.write(src, position);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return channel.position();
+        }
+
+        @Override
+        public FileChannel position(long newPosition) throws IOException {
+            channel.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return channel.size();
+        }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException {
+            channel.truncate(size);
+            return this;
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            channel.force(metaData);
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            return channel.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+            return channel.transferFrom(src, position, count);
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+            return channel.map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException {
+            return channel.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return channel.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            channel.close();
+        }
+    }
 }
@@ -25,4 +25,12 @@ public class JournalSegmentFileTest {
         assertTrue(JournalSegmentFile.isSegmentFile("foo", file));
     }
 
+    @Test
+    public void testIndexFile() throws Exception {
+        File file = new JournalSegmentFile(JournalSegmentFile.createSegmentFile("foo", new File(System.getProperty("user.dir")), 1)).indexFile();
+        assertTrue(JournalSegmentFile.isIndexFile("foo", file));
+        assertFalse(JournalSegmentFile.isSegmentFile("foo", file));
+        assertFalse(JournalSegmentFile.isIndexFile("foo", "foo-1.log"));
+    }
+
 }
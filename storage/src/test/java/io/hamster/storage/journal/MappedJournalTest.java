@@ -0,0 +1,21 @@
+package io.hamster.storage.journal;
+
+import io.hamster.storage.StorageLevel;
+
+import java.io.IOException;
+
+/**
+ * Memory mapped journal test.
+ */
+public class MappedJournalTest extends AbstractJournalTest {
+
+    public MappedJournalTest(int maxSegmentSize) throws IOException {
+        super(maxSegmentSize);
+    }
+
+    @Override
+    protected StorageLevel storageLevel() {
+        return StorageLevel.MAPPED;
+    }
+
+}